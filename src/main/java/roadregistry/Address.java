@@ -0,0 +1,113 @@
+package roadregistry;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An address in the assignment format "Number|Street|City|State|Country", kept as its five parts.
+ *
+ * Every part goes through a shared intern table, so the millions of people living in the same few
+ * streets, cities, one state and one country share a single String per distinct value instead of
+ * each carrying the full address text. Text that does not have five parts (it never passes
+ * validation, but callers may still hand it in) is kept as it is.
+ *
+ * @author Group 160
+ * @version final
+ */
+public final class Address {
+
+    private static final Map<String, String> NUMBERS = new ConcurrentHashMap<>();
+    private static final Map<String, String> STREETS = new ConcurrentHashMap<>();
+    private static final Map<String, String> CITIES = new ConcurrentHashMap<>();
+    private static final Map<String, String> STATES = new ConcurrentHashMap<>();
+    private static final Map<String, String> COUNTRIES = new ConcurrentHashMap<>();
+
+    private final String number;
+    private final String street;
+    private final String city;
+    private final String state;
+    private final String country;
+    private final String raw; // only set when the text does not have five parts
+
+    private Address(String number, String street, String city, String state, String country, String raw) {
+        this.number = number;
+        this.street = street;
+        this.city = city;
+        this.state = state;
+        this.country = country;
+        this.raw = raw;
+    }
+
+    /**
+     * Splits address text into its parts
+     * @return the address, or null for null text
+     */
+    public static Address of(String text) {
+        if (text == null) {
+            return null;
+        }
+        String[] parts = text.split("\\|", -1);
+        if (parts.length != 5) {
+            return new Address(null, null, null, null, null, text);
+        }
+        return of(parts[0], parts[1], parts[2], parts[3], parts[4]);
+    }
+
+    public static Address of(String number, String street, String city, String state, String country) {
+        return new Address(intern(NUMBERS, number), intern(STREETS, street), intern(CITIES, city),
+            intern(STATES, state), intern(COUNTRIES, country), null);
+    }
+
+    private static String intern(Map<String, String> table, String value) {
+        String existing = table.putIfAbsent(value, value);
+        return existing == null ? value : existing;
+    }
+
+    /**
+     * @return false for text that was not in the five part format
+     */
+    public boolean isStructured() {
+        return raw == null;
+    }
+
+    public String getNumber() { return number; }
+    public String getStreet() { return street; }
+    public String getCity() { return city; }
+    public String getState() { return state; }
+    public String getCountry() { return country; }
+
+    /**
+     * @return the address in "Number|Street|City|State|Country" format
+     */
+    public String text() {
+        if (raw != null) {
+            return raw;
+        }
+        return number + "|" + street + "|" + city + "|" + state + "|" + country;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Address)) {
+            return false;
+        }
+        Address that = (Address) other;
+        return Objects.equals(raw, that.raw) && Objects.equals(number, that.number)
+            && Objects.equals(street, that.street) && Objects.equals(city, that.city)
+            && Objects.equals(state, that.state) && Objects.equals(country, that.country);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(raw, number, street, city, state, country);
+    }
+
+    @Override
+    public String toString() {
+        return text();
+    }
+}
@@ -0,0 +1,158 @@
+package roadregistry;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import roadregistry.index.PersonIdBloomFilter;
+import roadregistry.store.RegistryStore;
+
+/**
+ * Fast path for "does this personID exist?" in front of a store.
+ *
+ * Keeps a Bloom filter over all stored IDs. When the filter says no, the ID is certainly not stored
+ * and no file is read. Only when it says maybe does the caller need to ask the store.
+ *
+ * The filter is saved next to the data and reused by the next process if the store's data version
+ * still matches. If the data was changed behind our back (another program, a deleted file) the filter
+ * is rebuilt from the store before it is trusted again.
+ *
+ * System properties:
+ *   roadregistry.bloom.fpp        - target false positive rate, default 0.01
+ *   roadregistry.bloom.expected   - minimum number of IDs to size the filter for, default 100000
+ *   roadregistry.bloom.flushEvery - save the filter after this many new IDs, default 1000
+ *
+ * @author Group 160
+ * @version final
+ */
+class PersonExistenceFilter {
+
+    private final RegistryStore store;
+    private final Path file;
+    private final RegistryMetrics metrics;
+    private final double falsePositiveRate;
+    private final long minExpectedInsertions;
+    private final int flushEvery;
+
+    private volatile PersonIdBloomFilter filter; // read without the lock by the gauges
+    private long knownVersion;
+    private long savedVersion = -1; // data version the saved file was written with
+    private int unsavedInsertions;
+
+    /**
+     * @param file where the filter is saved, or null to keep it in memory only
+     */
+    PersonExistenceFilter(RegistryStore store, Path file, RegistryMetrics metrics) {
+        this.store = store;
+        this.file = file;
+        this.metrics = metrics;
+        this.falsePositiveRate = Double.parseDouble(System.getProperty("roadregistry.bloom.fpp", "0.01"));
+        this.minExpectedInsertions = Long.getLong("roadregistry.bloom.expected", 100_000);
+        this.flushEvery = Integer.getInteger("roadregistry.bloom.flushEvery", 1000);
+
+        metrics.gauge("bloom.configuredFpp", () -> falsePositiveRate);
+        // The gauges show the filter as it is; reading metrics never loads or rebuilds one
+        metrics.gauge("bloom.expectedFpp", () -> {
+            PersonIdBloomFilter built = filter;
+            return built == null ? 0.0 : built.expectedFalsePositiveRate();
+        });
+        metrics.gauge("bloom.sizeBytes", () -> {
+            PersonIdBloomFilter built = filter;
+            return built == null ? 0 : built.sizeInBytes();
+        });
+        metrics.gauge("bloom.observedFpp", () -> {
+            long falsePositives = metrics.count("bloom.falsePositives");
+            long absent = falsePositives + metrics.count("bloom.negatives");
+            return absent == 0 ? 0.0 : (double) falsePositives / absent;
+        });
+    }
+
+    /**
+     * @return false if the ID is certainly not stored, true if the store has to be asked
+     */
+    synchronized boolean mightExist(String personID) {
+        metrics.increment("bloom.checks");
+        if (!currentFilter().mightContain(personID)) {
+            metrics.increment("bloom.negatives");
+            return false;
+        }
+        metrics.increment("bloom.possibleHits");
+        return true;
+    }
+
+    /**
+     * Called when mightExist() said maybe but the store did not have the ID
+     */
+    void falsePositive() {
+        metrics.increment("bloom.falsePositives");
+    }
+
+    /**
+     * Called after this process stored a new ID (also a changed ID)
+     */
+    synchronized void added(String personID) {
+        currentFilter().put(personID);
+        unsavedInsertions++;
+        if (unsavedInsertions >= flushEvery) {
+            flush();
+        }
+    }
+
+    /**
+     * Called after every write this process made to the store, so our own writes
+     * are not mistaken for outside changes
+     */
+    synchronized void storeWritten() {
+        if (filter != null) {
+            knownVersion = store.dataVersion();
+        }
+    }
+
+    /**
+     * Saves the filter if it has unsaved IDs or the store was written since the last save
+     * (a session that only adds offences still changes the data version the next start compares)
+     */
+    synchronized void flush() {
+        if (file == null || filter == null || (unsavedInsertions == 0 && savedVersion == knownVersion)) {
+            return;
+        }
+        try {
+            filter.save(file, knownVersion);
+            unsavedInsertions = 0;
+            savedVersion = knownVersion;
+        } catch (IOException e) {
+            System.out.println("Error saving bloom filter: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The filter, loaded or rebuilt first if it is missing, stale or over capacity
+     */
+    private synchronized PersonIdBloomFilter currentFilter() {
+        long version = store.dataVersion();
+        if (filter == null && file != null) {
+            PersonIdBloomFilter.Saved saved = PersonIdBloomFilter.load(file);
+            if (saved != null && saved.dataVersion() == version
+                    && saved.filter().getFalsePositiveRate() == falsePositiveRate) {
+                filter = saved.filter();
+                knownVersion = version;
+                savedVersion = version;
+            }
+        }
+        if (filter == null || version != knownVersion || filter.getInsertions() > filter.getExpectedInsertions()) {
+            rebuild(version);
+        }
+        return filter;
+    }
+
+    private void rebuild(long version) {
+        long[] count = new long[1];
+        store.forEachPerson(person -> count[0]++);
+        PersonIdBloomFilter rebuilt = new PersonIdBloomFilter(Math.max(minExpectedInsertions, count[0] * 2), falsePositiveRate);
+        store.forEachPerson(person -> rebuilt.put(person.personID()));
+        filter = rebuilt;
+        knownVersion = version;
+        unsavedInsertions = 1;
+        metrics.increment("bloom.rebuilds");
+        flush();
+    }
+}
@@ -0,0 +1,55 @@
+package roadregistry;
+
+/**
+ * Immutable snapshot of one stored person, as it is kept by the registry.
+ * Reading a person from a store produces one of these; it does not touch the file system
+ * and carries no demerit map, so it is cheap to create for every lookup.
+ *
+ * @param location    the address, split into interned parts (see {@link Address})
+ * @param isSuspended the flag set by addDemeritPoints (status at the latest offence)
+ * @param status      precomputed points, threshold and next change date, or null if not computed yet
+ *
+ * @author Group 160
+ * @version final
+ */
+public record PersonRecord(String personID, String firstName, String lastName, Address location,
+                           String birthdate, boolean isSuspended, SuspensionStatus status) {
+
+    /**
+     * Record from address text
+     */
+    public PersonRecord(String personID, String firstName, String lastName, String address,
+                        String birthdate, boolean isSuspended, SuspensionStatus status) {
+        this(personID, firstName, lastName, Address.of(address), birthdate, isSuspended, status);
+    }
+
+    /**
+     * Record from address text, without a precomputed status
+     */
+    public PersonRecord(String personID, String firstName, String lastName, String address,
+                        String birthdate, boolean isSuspended) {
+        this(personID, firstName, lastName, Address.of(address), birthdate, isSuspended, null);
+    }
+
+    /**
+     * @return the address in "Number|Street|City|State|Country" format, or null if there is none
+     */
+    public String address() {
+        return location == null ? null : location.text();
+    }
+
+    /**
+     * @return a copy of this record with a different suspension status
+     */
+    public PersonRecord withSuspended(boolean suspended) {
+        return suspended == isSuspended ? this
+            : new PersonRecord(personID, firstName, lastName, location, birthdate, suspended, status);
+    }
+
+    /**
+     * @return a copy of this record with different precomputed status figures
+     */
+    public PersonRecord withStatus(SuspensionStatus newStatus) {
+        return new PersonRecord(personID, firstName, lastName, location, birthdate, isSuspended, newStatus);
+    }
+}
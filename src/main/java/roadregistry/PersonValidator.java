@@ -0,0 +1,148 @@
+package roadregistry;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Field validation rules from the assignment, shared by every operation of the registry.
+ *
+ * @author Group 160
+ * @version final
+ */
+public final class PersonValidator {
+
+    // Date formatter for consistent date handling
+    public static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+    private PersonValidator() {
+    }
+
+    /**
+     * Validates PersonID format according to specification
+     * Must be exactly 10 characters: first 2 are digits (2-9), at least 2 special chars in positions 3-8, last 2 uppercase
+     */
+    public static boolean isValidPersonID(String personID) {
+        if (personID == null || personID.length() != 10) {
+            return false;
+        }
+        for (int i = 0; i < 2; i++) {
+            char c = personID.charAt(i);
+            if (!Character.isDigit(c) || c < '2' || c > '9') {
+                return false;
+            }
+        }
+        int specialCount = 0;
+        for (int i = 2; i < 8; i++) {
+            char c = personID.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                specialCount++;
+            }
+        }
+        if (specialCount < 2) {
+            return false;
+        }
+        for (int i = 8; i < 10; i++) {
+            char c = personID.charAt(i);
+            if (!Character.isUpperCase(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Validates name is not empty or null
+     */
+    public static boolean isValidName(String name) {
+        return name != null && !name.trim().isEmpty();
+    }
+
+    /**
+     * Validates address format: "Number|Street|City|State|Country" where State = "Victoria"
+     * Also checks that Number is numeric and positive (not mentioned in assignment but we want this validaiton)
+     */
+    public static boolean isValidAddress(String address) {
+        if (address == null || address.trim().isEmpty()) {
+            return false;
+        }
+        String[] parts = address.split("\\|");
+        if (parts.length != 5) {
+            return false;
+        }
+        for (String part : parts) {
+            if (part.trim().isEmpty()) {
+                return false;
+            }
+        }
+        try {
+            int number = Integer.parseInt(parts[0].trim());
+            if (number <= 0) {
+                return false;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (!"Victoria".equals(parts[3].trim())) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Validates birthdate format: DD-MM-YYYY and not in the future
+     */
+    public static boolean isValidBirthdate(String birthdate) {
+        return isValidBirthdate(birthdate, LocalDate.now());
+    }
+
+    /**
+     * Validates birthdate format: DD-MM-YYYY and not after the given day
+     */
+    public static boolean isValidBirthdate(String birthdate, LocalDate today) {
+        if (!isValidDateFormat(birthdate)) {
+            return false;
+        }
+        try {
+            LocalDate birth = LocalDate.parse(birthdate, DATE_FORMATTER);
+            return !birth.isAfter(today);
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Validates date format: DD-MM-YYYY
+     */
+    public static boolean isValidDateFormat(String date) {
+        if (date == null || date.trim().isEmpty()) {
+            return false;
+        }
+        try {
+            LocalDate.parse(date, DATE_FORMATTER);
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Calculates age from birthdate string to the day running this function
+     */
+    public static int calculateAge(String birthdate) {
+        return calculateAge(birthdate, LocalDate.now());
+    }
+
+    /**
+     * Calculates age from birthdate string on the given day
+     */
+    public static int calculateAge(String birthdate, LocalDate today) {
+        try {
+            LocalDate birth = LocalDate.parse(birthdate, DATE_FORMATTER);
+            return Period.between(birth, today).getYears();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package roadregistry;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Named counters and gauges of one registry instance.
+ * Counters only go up and are cheap to bump from many threads; gauges are read when a snapshot is taken.
+ *
+ * @author Group 160
+ * @version final
+ */
+public class RegistryMetrics {
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    public void add(String name, long amount) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(amount);
+    }
+
+    /**
+     * @return current value of a counter, 0 if it was never bumped
+     */
+    public long count(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Registers (or replaces) a value that is computed when a snapshot is taken
+     */
+    public void gauge(String name, Supplier<? extends Number> value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * @return all counters and gauges, sorted by name
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> result = new TreeMap<>();
+        counters.forEach((name, counter) -> result.put(name, counter.sum()));
+        gauges.forEach((name, value) -> result.put(name, value.get()));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        snapshot().forEach((name, value) -> text.append(name).append(" = ").append(value).append(System.lineSeparator()));
+        return text.toString();
+    }
+}
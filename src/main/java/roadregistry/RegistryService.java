@@ -0,0 +1,756 @@
+package roadregistry;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import roadregistry.feed.ChangeFeed;
+import roadregistry.feed.RegistryEvent;
+import roadregistry.store.DemeritPoint;
+import roadregistry.store.RegistryStore;
+import roadregistry.store.RegistryStores;
+
+import static roadregistry.PersonValidator.*;
+
+/**
+ * The registry operations from assignment 4, working on immutable {@link PersonRecord}s.
+ * Person is a thin mutable wrapper around this class, other callers (tools, servers)
+ * can use it directly with their own store.
+ *
+ * With a change feed, every change is written to the feed (and forced to disk) before the store, and the
+ * store records the feed offset it has reached. On start, and before the next write if a store write
+ * failed, the changes the store is missing are applied from the feed. So once its events are in the feed
+ * a change is made, even if the caller was told it failed because the store could not be written then.
+ *
+ * @author Group 160
+ * @version final
+ */
+public class RegistryService implements Closeable {
+
+    public static final String SUCCESS = "Success";
+    public static final String FAILED = "Failed";
+
+    public static final String BLOOM_FILE_NAME = "people.bloom";
+
+    private static RegistryService shared;
+
+    private final RegistryStore store;
+    private final RegistryMetrics metrics = new RegistryMetrics();
+    private final PersonExistenceFilter existenceFilter;
+    private final VersionedRegistry versions;
+    private final ChangeFeed changeFeed; // null when changes are not published
+    // Writes are checked and applied one at a time, so two callers cannot both add the same ID
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private boolean storeBehindFeed; // a store write failed after its events went to the feed
+    // Statuses recomputed by reads, saved with the next write so that reads never wait for the write lock
+    private final Map<String, PendingStatus> pendingStatuses = new ConcurrentHashMap<>();
+    private volatile Clock clock = Clock.systemDefaultZone();
+
+    /**
+     * Service whose helper files (bloom filter) are kept in memory only and that publishes no change feed
+     */
+    public RegistryService(RegistryStore store) {
+        this(store, null);
+    }
+
+    /**
+     * @param dataDir where helper files such as the bloom filter and the change feed are kept,
+     *                or null to keep them in memory and publish no feed.
+     *                The feed can be switched off with -Droadregistry.feed.enabled=false.
+     */
+    public RegistryService(RegistryStore store, File dataDir) {
+        this.store = store;
+        this.existenceFilter = new PersonExistenceFilter(store,
+            dataDir == null ? null : new File(dataDir, BLOOM_FILE_NAME).toPath(), metrics);
+        this.versions = new VersionedRegistry(store, metrics);
+        if (dataDir != null && !"false".equals(System.getProperty("roadregistry.feed.enabled"))) {
+            try {
+                this.changeFeed = new ChangeFeed(new File(dataDir, ChangeFeed.FILE_NAME).toPath());
+                applyMissingChanges();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open change feed in " + dataDir, e);
+            }
+        } else {
+            this.changeFeed = null;
+        }
+    }
+
+    /**
+     * Applies the changes the feed has and the store does not yet. A store that never recorded an offset
+     * (written before it did so) is taken to be up to date with the feed.
+     */
+    private void applyMissingChanges() throws IOException {
+        long end = changeFeed.endOffset();
+        long stored = store.feedOffset();
+        if (stored >= 0 && stored < end) {
+            stored = store.keepUpToFeedOffset();
+        }
+        if (stored < 0 || stored > end) {
+            if (stored > end) {
+                System.out.println("Change feed ends before the store's offset " + stored + ", continuing from its end");
+            }
+            store.setFeedOffset(end);
+            storeBehindFeed = false;
+            return;
+        }
+        List<RegistryEvent> batch;
+        while (stored < end && !(batch = changeFeed.read(stored, 1024)).isEmpty()) {
+            if (!applyChanges(batch)) {
+                throw new IOException("Cannot apply the change feed from offset " + stored + " to the store");
+            }
+            metrics.add("feed.reapplied", batch.size());
+            stored = batch.get(batch.size() - 1).nextOffset();
+        }
+        storeBehindFeed = false;
+    }
+
+    /**
+     * Brings the store up to the feed before a new change if an earlier store write failed
+     * @return false if the store is still behind, then no new change may be made
+     */
+    private boolean storeCaughtUp() {
+        if (!storeBehindFeed) {
+            return true;
+        }
+        try {
+            applyMissingChanges();
+            return true;
+        } catch (IOException e) {
+            System.out.println("Store is behind the change feed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Appends the events of one change to the feed, forced to disk, before the store is written
+     * @return the feed offset after them, or -1 when there is no feed
+     */
+    private long logChange(List<RegistryEvent> events) throws IOException {
+        if (changeFeed == null) {
+            return -1;
+        }
+        try {
+            List<RegistryEvent> logged = changeFeed.appendAll(events);
+            return logged.get(logged.size() - 1).nextOffset();
+        } catch (IOException e) {
+            metrics.increment("feed.errors");
+            throw e;
+        }
+    }
+
+    /**
+     * Records in the store that it reached the feed offset after a change, or notes that it is behind
+     * the feed if the store write failed
+     */
+    private boolean stored(boolean saved, long feedOffset) {
+        if (feedOffset >= 0) {
+            if (saved) {
+                store.setFeedOffset(feedOffset);
+            } else {
+                storeBehindFeed = true;
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * The service on top of the store configured for this deployment, see RegistryStores
+     */
+    public static synchronized RegistryService shared() {
+        if (shared == null) {
+            shared = new RegistryService(RegistryStores.defaultStore(), RegistryStores.defaultDataDir());
+            Runtime.getRuntime().addShutdownHook(new Thread(shared::close));
+        }
+        return shared;
+    }
+
+    public RegistryStore getStore() {
+        return store;
+    }
+
+    public RegistryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Changes what "today" is (tests, replays): for status queries and for the date checks of the
+     * operations, a future birthdate or offence and the under-18 address rule
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * @return the feed this service publishes its changes to, or null if it publishes none
+     */
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    /**
+     * Adds a person to the system with comprehensive validation
+     * Validation Rules:
+     * 1. PersonID: exactly 10 characters, first 2 are numbers (2-9),
+     *    at least 2 special characters in positions 3-8, last 2 are uppercase letters
+     * 2. Address: format "Number|Street|City|State|Country" where State must be "Victoria"
+     * 3. Birthdate: format "DD-MM-YYYY" and birthdate must be the date in the past
+     *
+     * @return true if person is successfully added, false otherwise
+     */
+    public boolean addPerson(PersonRecord person) {
+        writeLock.lock();
+        try {
+            if (!storeCaughtUp()) {
+                return false;
+            }
+            versions.syncWithStore();
+            savePendingStatuses();
+            if (!isValidPersonID(person.personID())) {
+                System.out.println("PersonID format is wrong");
+                return false;
+            }
+            if (!isValidName(person.firstName()) || !isValidName(person.lastName())) {
+                System.out.println("Invalid name because it cannot be empty");
+                return false;
+            }
+            if (!isValidAddress(person.address())) {
+                System.out.println("Address format is WRong");
+                return false;
+            }
+            if (!isValidBirthdate(person.birthdate(), today())) {
+                System.out.println("Invalid birthdate format or birthdate input is future date");
+                return false;
+            }
+            if (personExists(person.personID())) {
+                System.out.println("Person with this ID have already existed");
+                return false;
+            }
+            LocalDate birth = LocalDate.parse(person.birthdate(), DATE_FORMATTER);
+            PersonRecord stored = person.withStatus(SuspensionRules.compute(birth, List.of(), today()));
+            long feedOffset = logChange(List.of(RegistryEvent.personAdded(stored)));
+            boolean saved = stored(store.insertPerson(stored), feedOffset);
+            afterWrite(saved, Map.of(stored.personID(), stored), List.of());
+            if (saved) {
+                existenceFilter.added(person.personID());
+            }
+            return saved;
+        } catch (Exception e) {
+            System.out.println("Error while adding person: " + e.getMessage());
+            storeBehindFeed = changeFeed != null;
+            return false;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Updates personal details of an existing person
+     *
+     * Additional Rules:
+     * 1. If person is under 18, their address cannot be changed
+     * 2. If birthday is being changed, no other personal detail can be changed
+     * 3. If first digit of personID is even, the ID cannot be changed
+     * 4. Changing personal details will not affect the suspension status (the isSuspended of the argument is ignored)
+     *
+     * @param oldPersonID the current PersonID to locate the existing record
+     * @return the record as stored after the update, or null if the update was rejected
+     */
+    public PersonRecord updatePersonalDetails(String oldPersonID, PersonRecord person) {
+        writeLock.lock();
+        try {
+            if (!storeCaughtUp()) {
+                return null;
+            }
+            versions.syncWithStore();
+            savePendingStatuses();
+            PersonRecord existing = store.findPerson(oldPersonID);
+            if (existing == null) {
+                System.out.println("Person not found in DB ");
+                return null;
+            }
+
+            if (!isValidPersonID(person.personID())) {
+                System.out.println("Invalid PersonID format");
+                return null;
+            }
+            if (!isValidName(person.firstName()) || !isValidName(person.lastName())) {
+                System.out.println("Invalid name , it cannot be empty");
+                return null;
+            }
+            if (!isValidAddress(person.address())) {
+                System.out.println("Invalid address format");
+                return null;
+            }
+            if (!isValidBirthdate(person.birthdate(), today())) {
+                System.out.println("Invalid birthdate format or birthdate input is future date");
+                return null;
+            }
+
+            // Rule 1: If person is under 18, address cannot be changed
+            int age = calculateAge(existing.birthdate(), today());
+            if (age < 18 && !existing.location().equals(person.location())) {
+                System.out.println("Cannot change an address for person under 18");
+                return null;
+            }
+
+            // Rule 2: If birthday is changing, no other details can change
+            if (!existing.birthdate().equals(person.birthdate())) {
+                if (!existing.personID().equals(person.personID()) ||
+                    !existing.firstName().equals(person.firstName()) ||
+                    !existing.lastName().equals(person.lastName()) ||
+                    !existing.location().equals(person.location())) {
+                    System.out.println("When changing birthday, no others personal detail can be changed");
+                    return null;
+                }
+            }
+
+            // Rule 3: If first digit of ID is even, ID cannot be changed
+            if (!existing.personID().equals(person.personID())) {
+                char firstDigit = existing.personID().charAt(0);
+                if (Character.isDigit(firstDigit) && (firstDigit - '0') % 2 == 0) {
+                    System.out.println("Cannot change ID when first digit is even");
+                    return null;
+                }
+                if (personExists(person.personID())) {
+                    System.out.println("New PersonID already exists in DB so ID cannot be change");
+                    return null;
+                }
+            }
+
+            // Rule 4: Preserve suspension status. The precomputed figures only change with the birthdate (age band).
+            SuspensionStatus status = existing.status();
+            if (!existing.birthdate().equals(person.birthdate())) {
+                status = computeStatus(person, today());
+            }
+            PersonRecord updated = person.withSuspended(existing.isSuspended()).withStatus(status);
+            long feedOffset = logChange(List.of(RegistryEvent.personUpdated(oldPersonID, updated)));
+            boolean saved = stored(store.replacePerson(oldPersonID, updated), feedOffset);
+            Map<String, PersonRecord> changed = new LinkedHashMap<>();
+            changed.put(oldPersonID, null);
+            changed.put(updated.personID(), updated);
+            afterWrite(saved, changed, List.of());
+            if (saved && !oldPersonID.equals(updated.personID())) {
+                existenceFilter.added(updated.personID());
+            }
+            return saved ? updated : null;
+        } catch (Exception e) {
+            System.out.println("We have error when updating personal details " + e.getMessage());
+            storeBehindFeed = changeFeed != null;
+            return null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Adds demerit points for a person with suspension logic
+     *
+     * Rules:
+     * 1. Date offense format must be DD-MM-YYYY and not in the future (offense must happen in the past)
+     * 2. Demerit points must be 1-6 (whole number)
+     * 3. Suspension logic:
+     *    - Under 21: suspended if total points in 2 years > 6
+     *    - Over 21: suspended if total points in 2 years > 12
+     *
+     * @param offenseDate the date of the offense in DD-MM-YYYY format
+     * @param points the demerit points (1-6)
+     * @return "Success" if points added successfully, "Failed" otherwise
+     */
+    public String addDemeritPoints(String personID, String offenseDate, int points) {
+        if (!isValidDateFormat(offenseDate)) {
+            System.out.println("Invalid offense date format, please use DD-MM-YYYY");
+            return FAILED;
+        }
+        LocalDate offense = LocalDate.parse(offenseDate, DATE_FORMATTER);
+        return addDemeritPoints(List.of(new DemeritPoint(personID, offense, points))).get(0);
+    }
+
+    /**
+     * Batch form of addDemeritPoints: checks each offence with the same rules, in list order, as if
+     * they were added one after the other, then writes all accepted offences and updated people with
+     * the store's batch methods (one file write instead of one per offence for the text store).
+     *
+     * @return "Success" or "Failed" for each offence, in list order
+     */
+    public List<String> addDemeritPoints(List<DemeritPoint> offences) {
+        List<String> results = new ArrayList<>(Collections.nCopies(offences.size(), FAILED));
+        writeLock.lock();
+        try {
+            if (!storeCaughtUp()) {
+                return results;
+            }
+            versions.syncWithStore();
+            savePendingStatuses();
+            List<DemeritPoint> accepted = new ArrayList<>();
+            Map<String, PersonRecord> updated = new LinkedHashMap<>();
+            List<RegistryEvent> events = new ArrayList<>();
+            LocalDate today = today();
+            for (int i = 0; i < offences.size(); i++) {
+                DemeritPoint offence = offences.get(i);
+                LocalDate offense = offence.offenseDate();
+                if (offense.isAfter(today)) {
+                    System.out.println("Offense date cannot be in the future, offense must happen in the past ");
+                    continue;
+                }
+                if (offence.points() < 1 || offence.points() > 6) {
+                    System.out.println("Demerit points must be between 1 and 6");
+                    continue;
+                }
+                String personID = offence.personID();
+                PersonRecord existing = updated.containsKey(personID) ? updated.get(personID) : store.findPerson(personID);
+                if (existing == null) {
+                    System.out.println("Person not found");
+                    continue;
+                }
+
+                // Only offences from two years before this one onwards count.
+                // The offence is not in the future, so this also covers the two years up to today.
+                List<DemeritPoint> recent = new ArrayList<>(store.findDemeritPoints(personID, offense.minusYears(2), LocalDate.MAX));
+                for (DemeritPoint earlier : accepted) {
+                    if (earlier.personID().equals(personID) && !earlier.offenseDate().isBefore(offense.minusYears(2))) {
+                        recent.add(earlier);
+                    }
+                }
+                recent.add(offence);
+                int totalPoints = 0;
+                for (DemeritPoint point : recent) {
+                    totalPoints += point.points();
+                }
+                boolean suspended = isSuspended(existing.birthdate(), offense, totalPoints);
+                LocalDate birth = LocalDate.parse(existing.birthdate(), DATE_FORMATTER);
+                PersonRecord person = existing.withSuspended(suspended)
+                    .withStatus(SuspensionRules.compute(birth, recent, today()));
+
+                accepted.add(offence);
+                updated.put(personID, person);
+                results.set(i, SUCCESS);
+                events.add(RegistryEvent.demeritPointsAdded(personID, offense, offence.points()));
+                if (suspended != existing.isSuspended()) {
+                    events.add(RegistryEvent.suspensionChanged(person));
+                }
+            }
+            if (accepted.isEmpty()) {
+                return results;
+            }
+
+            // People first: the offences are written together with the feed offset, which marks the change as stored
+            long feedOffset = logChange(events);
+            boolean saved = store.replacePeople(updated)
+                && (feedOffset < 0 ? store.insertDemeritPoints(accepted) : store.insertDemeritPoints(accepted, feedOffset));
+            if (!saved && feedOffset >= 0) {
+                storeBehindFeed = true;
+            }
+            afterWrite(saved, updated, accepted);
+            if (!saved) {
+                return new ArrayList<>(Collections.nCopies(offences.size(), FAILED));
+            }
+            return results;
+        } catch (Exception e) {
+            System.out.println("we have error when adding demerit points: " + e.getMessage());
+            storeBehindFeed = changeFeed != null;
+            return new ArrayList<>(Collections.nCopies(offences.size(), FAILED));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Applies changes read from a change feed, in feed order: this service's own feed after a crash, or the
+     * feed of another service (the primary of a read replica). The rules were already checked when the changes
+     * were made, so nothing is checked again and nothing is published. The store records the feed offset
+     * reached with every write, before the write is taken over by the caches.
+     *
+     * The events must continue from the store's feed offset. A person change that is already stored is
+     * skipped; offences are added, so they must not be in the store yet.
+     *
+     * @return false if a change could not be written; the changes after it are not applied, so applying
+     * the feed again from the store's {@link RegistryStore#keepUpToFeedOffset()} continues where it stopped
+     */
+    public boolean applyChanges(List<RegistryEvent> events) {
+        writeLock.lock();
+        try {
+            versions.syncWithStore();
+            savePendingStatuses();
+            List<RegistryEvent> offences = new ArrayList<>();
+            for (RegistryEvent event : events) {
+                if (event.type() == RegistryEvent.Type.DEMERIT_POINTS_ADDED) {
+                    offences.add(event);
+                    continue;
+                }
+                // Offences before a person change are written first, so the store sees the feed order
+                if (!applyOffences(offences) || !applyPersonChange(event)) {
+                    return false;
+                }
+                offences = new ArrayList<>();
+            }
+            return applyOffences(offences);
+        } catch (Exception e) {
+            System.out.println("Error applying replicated changes: " + e.getMessage());
+            versions.markStale();
+            return false;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Adds the offences with the feed offset after them. The stored status figures of their people no
+     * longer count every offence, so they are dropped first and computed again when next asked.
+     */
+    private boolean applyOffences(List<RegistryEvent> events) {
+        if (events.isEmpty()) {
+            return true;
+        }
+        List<DemeritPoint> offences = new ArrayList<>();
+        Map<String, PersonRecord> cleared = new LinkedHashMap<>();
+        for (RegistryEvent event : events) {
+            offences.add(new DemeritPoint(event.personID(), event.offenseDate(), event.points()));
+            PersonRecord person = cleared.containsKey(event.personID()) ? null : store.findPerson(event.personID());
+            if (person != null && person.status() != null) {
+                cleared.put(person.personID(), person.withStatus(null));
+            }
+        }
+        long feedOffset = events.get(events.size() - 1).nextOffset();
+        boolean saved = (cleared.isEmpty() || store.replacePeople(cleared))
+            && (feedOffset < 0 ? store.insertDemeritPoints(offences) : store.insertDemeritPoints(offences, feedOffset));
+        afterWrite(saved, cleared, offences);
+        return saved;
+    }
+
+    private boolean applyPersonChange(RegistryEvent event) {
+        PersonRecord person = event.person();
+        String oldPersonID = event.previousPersonID() != null ? event.previousPersonID() : event.personID();
+        if (person.equals(store.findPerson(person.personID()))
+                && (oldPersonID.equals(person.personID()) || store.findPerson(oldPersonID) == null)) {
+            return true; // stored already, e.g. before a crash or in a copy
+        }
+        Map<String, PersonRecord> changed = new LinkedHashMap<>();
+        boolean saved;
+        if (store.findPerson(oldPersonID) != null) {
+            saved = store.replacePerson(oldPersonID, person);
+            changed.put(oldPersonID, null);
+        } else if (store.findPerson(person.personID()) != null) {
+            saved = store.replacePerson(person.personID(), person);
+        } else {
+            saved = store.insertPerson(person);
+        }
+        changed.put(person.personID(), person);
+        if (saved && event.nextOffset() >= 0) {
+            store.setFeedOffset(event.nextOffset());
+        }
+        afterWrite(saved, changed, List.of());
+        if (saved) {
+            existenceFilter.added(person.personID());
+        }
+        return saved;
+    }
+
+    /**
+     * Opens a consistent read-only view of the latest committed data. Reads through it never wait
+     * for writers (only the first snapshot, or the first after another program changed the store,
+     * loads the data). Close it when done.
+     */
+    public RegistrySnapshot snapshot() {
+        if (versions.isStale()) {
+            // Once loaded, a busy writer means the data is being changed by us and will be in sync when it is done
+            if (versions.isLoaded() ? writeLock.tryLock() : lockWrites()) {
+                try {
+                    if (versions.isStale()) {
+                        versions.reload();
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        }
+        return versions.open();
+    }
+
+    private boolean lockWrites() {
+        writeLock.lock();
+        return true;
+    }
+
+    /**
+     * @return the stored person, or null if there is none (read from a snapshot)
+     */
+    public PersonRecord findPerson(String personID) {
+        try (RegistrySnapshot snapshot = snapshot()) {
+            return snapshot.findPerson(personID);
+        }
+    }
+
+    /**
+     * Current suspension figures of a person (points in the last two years, age band threshold).
+     * Answered from the figures stored with the person; they are only recomputed from the demerit history
+     * once their next change date has passed. A recomputed status is not written here, it is saved with
+     * the next write (or on close), so reading never waits for writers.
+     *
+     * @return the status, or null if there is no such person
+     */
+    public SuspensionStatus currentStatus(String personID) {
+        try (RegistrySnapshot snapshot = snapshot()) {
+            return currentStatus(snapshot, personID);
+        }
+    }
+
+    /**
+     * Current suspension figures of a person as of the given snapshot, see {@link #currentStatus(String)}
+     */
+    public SuspensionStatus currentStatus(RegistrySnapshot snapshot, String personID) {
+        LocalDate today = today();
+        PersonRecord person = snapshot.findPerson(personID);
+        if (person == null) {
+            return null;
+        }
+        if (person.status() != null && person.status().isValidOn(today)) {
+            metrics.increment("status.precomputed");
+            return person.status();
+        }
+        PendingStatus pending = pendingStatuses.get(personID);
+        if (pending != null && pending.person().equals(person) && pending.status().isValidOn(today)) {
+            metrics.increment("status.precomputed");
+            return pending.status();
+        }
+        metrics.increment("status.recomputed");
+        SuspensionStatus status = snapshot.statusOn(personID, today);
+        pendingStatuses.put(personID, new PendingStatus(person, status));
+        return status;
+    }
+
+    /**
+     * Saves the statuses recomputed by reads, for the people nobody changed since. Called holding the write lock.
+     */
+    private void savePendingStatuses() {
+        if (pendingStatuses.isEmpty()) {
+            return;
+        }
+        Map<String, PersonRecord> updated = new LinkedHashMap<>();
+        for (PendingStatus pending : pendingStatuses.values()) {
+            String personID = pending.person().personID();
+            pendingStatuses.remove(personID, pending);
+            if (pending.person().equals(store.findPerson(personID))) {
+                updated.put(personID, pending.person().withStatus(pending.status()));
+            }
+        }
+        if (!updated.isEmpty()) {
+            afterWrite(store.replacePeople(updated), updated, List.of());
+        }
+    }
+
+    /**
+     * A status recomputed for the person as it was read
+     */
+    private record PendingStatus(PersonRecord person, SuspensionStatus status) {
+    }
+
+    /**
+     * Historical ("as-of") query: the person's points in the two years up to the given day, the age band
+     * threshold on that day and whether that meant a suspension. Uses the offences and birthdate as they
+     * are recorded now, so an offence entered late also counts for days before it was entered.
+     * Logarithmic in the person's number of offences; no file is read.
+     *
+     * @return the status on that day, or null if there is no such person
+     */
+    public SuspensionStatus statusOn(String personID, LocalDate on) {
+        metrics.increment("status.asOf");
+        try (RegistrySnapshot snapshot = snapshot()) {
+            return snapshot.statusOn(personID, on);
+        }
+    }
+
+    /**
+     * Computes the status figures from the stored demerit history
+     */
+    private SuspensionStatus computeStatus(PersonRecord person, LocalDate on) {
+        LocalDate birth = LocalDate.parse(person.birthdate(), DATE_FORMATTER);
+        List<DemeritPoint> recent = store.findDemeritPoints(person.personID(),
+            on.minusYears(SuspensionRules.WINDOW_YEARS), LocalDate.MAX);
+        return SuspensionRules.compute(birth, recent, on);
+    }
+
+    /**
+     * Bookkeeping after every store write: caches take over the new data version
+     * and snapshots opened from now on see the change
+     */
+    private void afterWrite(boolean saved, Map<String, PersonRecord> changed, List<DemeritPoint> added) {
+        if (saved) {
+            versions.commit(changed, added);
+            versions.storeWritten();
+        } else {
+            // Part of a failed write may have reached the store, read it again on the next snapshot
+            versions.markStale();
+        }
+        existenceFilter.storeWritten();
+    }
+
+    private LocalDate today() {
+        return LocalDate.now(clock);
+    }
+
+    /**
+     * Checks if person exists in the store.
+     * Most new IDs are answered by the bloom filter alone; the store is only asked on a possible hit.
+     */
+    public boolean personExists(String personID) {
+        if (!existenceFilter.mightExist(personID)) {
+            return false;
+        }
+        boolean exists = store.findPerson(personID) != null;
+        if (!exists) {
+            existenceFilter.falsePositive();
+        }
+        return exists;
+    }
+
+    /**
+     * Saves helper files, closes the change feed and the store
+     */
+    @Override
+    public void close() {
+        writeLock.lock();
+        try {
+            versions.syncWithStore();
+            savePendingStatuses();
+        } catch (Exception e) {
+            System.out.println("Error saving statuses: " + e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+        existenceFilter.flush();
+        if (changeFeed != null) {
+            try {
+                changeFeed.close();
+            } catch (IOException e) {
+                System.out.println("Error closing change feed: " + e.getMessage());
+            }
+        }
+        try {
+            store.close();
+        } catch (Exception e) {
+            System.out.println("Error closing store: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Suspension rule based on age at the offense date and the points in the two years up to it
+     */
+    static boolean isSuspended(String birthdate, LocalDate offenseDate, int totalPoints) {
+        LocalDate birth = LocalDate.parse(birthdate, DATE_FORMATTER);
+        return totalPoints > SuspensionRules.threshold(birth, offenseDate);
+    }
+}
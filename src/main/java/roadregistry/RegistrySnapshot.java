@@ -0,0 +1,94 @@
+package roadregistry;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+import roadregistry.index.OffenceTimeline;
+import roadregistry.store.DemeritPoint;
+
+/**
+ * A consistent, read-only view of people and demerit points as of one committed version.
+ * Reads come from memory and never wait for writers; writes made after the snapshot was opened are not
+ * visible through it. Close it when done (try-with-resources), so older versions can be dropped.
+ * With more than -Droadregistry.snapshot.maxPeople people it reads the store instead and does see later writes.
+ *
+ * @author Group 160
+ * @version final
+ */
+public final class RegistrySnapshot implements AutoCloseable {
+
+    private final VersionedRegistry registry;
+    private final long version;
+    private boolean closed;
+
+    RegistrySnapshot(VersionedRegistry registry, long version) {
+        this.registry = registry;
+        this.version = version;
+    }
+
+    /**
+     * @return the committed version this snapshot shows
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return the person as of this snapshot, or null if there was none
+     */
+    public PersonRecord findPerson(String personID) {
+        return registry.findPerson(personID, version);
+    }
+
+    /**
+     * @return all offences of the person as of this snapshot, ordered by offence date
+     */
+    public List<DemeritPoint> findDemeritPoints(String personID) {
+        return registry.timeline(personID, version).points();
+    }
+
+    /**
+     * @return offences of the person with from <= date <= to, ordered by offence date
+     */
+    public List<DemeritPoint> findDemeritPoints(String personID, LocalDate from, LocalDate to) {
+        return registry.timeline(personID, version).between(from, to);
+    }
+
+    /**
+     * @return the person's offences indexed by date, empty if there are none
+     */
+    public OffenceTimeline timeline(String personID) {
+        return registry.timeline(personID, version);
+    }
+
+    /**
+     * Status of the person on any day, from the offences and birthdate known in this snapshot.
+     * Logarithmic in the number of offences of the person.
+     *
+     * @return the status, or null if there is no such person (or the stored birthdate is invalid)
+     */
+    public SuspensionStatus statusOn(String personID, LocalDate on) {
+        PersonRecord person = findPerson(personID);
+        if (person == null || !PersonValidator.isValidDateFormat(person.birthdate())) {
+            return null;
+        }
+        LocalDate birth = LocalDate.parse(person.birthdate(), PersonValidator.DATE_FORMATTER);
+        return timeline(personID).statusOn(birth, on);
+    }
+
+    /**
+     * Visits every person of this snapshot once, in no particular order
+     */
+    public void forEachPerson(Consumer<PersonRecord> action) {
+        registry.forEachPerson(version, action);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            registry.release(version);
+        }
+    }
+}
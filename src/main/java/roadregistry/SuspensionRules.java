@@ -0,0 +1,76 @@
+package roadregistry;
+
+import java.time.LocalDate;
+import java.time.Period;
+
+import roadregistry.store.DemeritPoint;
+
+/**
+ * The suspension rules of assignment 4 in one place:
+ *   - Under 21: suspended if total points in 2 years > 6
+ *   - Over 21: suspended if total points in 2 years > 12
+ *
+ * @author Group 160
+ * @version final
+ */
+public final class SuspensionRules {
+
+    public static final int WINDOW_YEARS = 2;
+    public static final int ADULT_AGE = 21;
+    public static final int UNDER_21_THRESHOLD = 6;
+    public static final int ADULT_THRESHOLD = 12;
+
+    private SuspensionRules() {
+    }
+
+    /**
+     * @return the points allowed for someone born on birth, on the given day
+     */
+    public static int threshold(LocalDate birth, LocalDate on) {
+        return Period.between(birth, on).getYears() < ADULT_AGE ? UNDER_21_THRESHOLD : ADULT_THRESHOLD;
+    }
+
+    /**
+     * @return the first day the offence no longer counts
+     */
+    public static LocalDate leavesWindow(LocalDate offenseDate) {
+        return offenseDate.plusYears(WINDOW_YEARS).plusDays(1);
+    }
+
+    /**
+     * @return the first day on which someone born on birth is 21 (the day after 28 February for 29 February births)
+     */
+    public static LocalDate adultFrom(LocalDate birth) {
+        LocalDate birthday = birth.plusYears(ADULT_AGE);
+        return Period.between(birth, birthday).getYears() < ADULT_AGE ? birthday.plusDays(1) : birthday;
+    }
+
+    /**
+     * Computes the status on a given day from the person's offences
+     * @param offences at least every offence from two years before the day onwards; older ones are ignored
+     */
+    public static SuspensionStatus compute(LocalDate birth, Iterable<DemeritPoint> offences, LocalDate on) {
+        LocalDate windowStart = on.minusYears(WINDOW_YEARS);
+        int points = 0;
+        LocalDate nextChange = null;
+        for (DemeritPoint offence : offences) {
+            LocalDate date = offence.offenseDate();
+            if (date.isAfter(on)) {
+                // Counted from its own date onwards
+                nextChange = earliest(nextChange, date);
+            } else if (!date.isBefore(windowStart)) {
+                points += offence.points();
+                nextChange = earliest(nextChange, leavesWindow(date));
+            }
+        }
+        int threshold = threshold(birth, on);
+        if (threshold == UNDER_21_THRESHOLD) {
+            nextChange = earliest(nextChange, adultFrom(birth));
+        }
+        return new SuspensionStatus(points, threshold, nextChange);
+    }
+
+    private static LocalDate earliest(LocalDate a, LocalDate b) {
+        return a == null || b.isBefore(a) ? b : a;
+    }
+}
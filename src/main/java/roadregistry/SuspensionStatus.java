@@ -0,0 +1,67 @@
+package roadregistry;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Precomputed suspension figures of one person, stored next to the person so a status query
+ * does not need the demerit history.
+ *
+ * @param points     demerit points in the two years up to the day this was computed
+ * @param threshold  points allowed for the age band on that day (6 under 21, 12 from 21)
+ * @param validUntil first day on which points or threshold change by themselves (an offence leaves the
+ *                   two year window or the person turns 21); null if nothing changes without a new offence
+ *
+ * @author Group 160
+ * @version final
+ */
+public record SuspensionStatus(int points, int threshold, LocalDate validUntil) {
+
+    /**
+     * @return true if the points are above the threshold
+     */
+    public boolean suspended() {
+        return points > threshold;
+    }
+
+    /**
+     * @return "under 21" or "21 and over", the age band the threshold belongs to
+     */
+    public String ageBand() {
+        return threshold == SuspensionRules.UNDER_21_THRESHOLD ? "under 21" : "21 and over";
+    }
+
+    /**
+     * @return true if these figures are still correct on the given day
+     */
+    public boolean isValidOn(LocalDate date) {
+        return validUntil == null || date.isBefore(validUntil);
+    }
+
+    /**
+     * Binary form used by the kv store and the change feed; status may be null
+     */
+    public static void write(DataOutputStream out, SuspensionStatus status) throws IOException {
+        out.writeBoolean(status != null);
+        if (status != null) {
+            out.writeInt(status.points());
+            out.writeByte(status.threshold());
+            out.writeLong(status.validUntil() == null ? Long.MAX_VALUE : status.validUntil().toEpochDay());
+        }
+    }
+
+    /**
+     * Reads what write() wrote. Values written before the status existed simply end early and give null.
+     */
+    public static SuspensionStatus read(DataInputStream in) throws IOException {
+        if (in.available() == 0 || !in.readBoolean()) {
+            return null;
+        }
+        int points = in.readInt();
+        int threshold = in.readUnsignedByte();
+        long validUntil = in.readLong();
+        return new SuspensionStatus(points, threshold, validUntil == Long.MAX_VALUE ? null : LocalDate.ofEpochDay(validUntil));
+    }
+}
@@ -0,0 +1,360 @@
+package roadregistry;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import roadregistry.index.OffenceTimeline;
+import roadregistry.store.DemeritPoint;
+import roadregistry.store.RegistryStore;
+
+/**
+ * Multi-version copy of the registry in memory, so lookups never wait for a writer.
+ *
+ * Every person ID has a chain of versions (newest first), and so does every person's
+ * {@link OffenceTimeline} (offences indexed by date).
+ * A writer adds the new values for a change as version committed + 1 and only then moves the committed
+ * version forward, so a reader sees all of a change or none of it. A reader opens a
+ * {@link RegistrySnapshot} at the committed version and keeps seeing exactly that state, however many
+ * writes happen meanwhile. Versions older than the oldest open snapshot are dropped the next time their
+ * key is written.
+ *
+ * Writers must be serialised by the caller (RegistryService's write lock). Changes made to the store
+ * behind the service's back are noticed through the store's data version and loaded as one new version.
+ *
+ * The copy lives on the heap, so it is limited to -Droadregistry.snapshot.maxPeople people (default one
+ * million). A store with more is not copied: snapshots then read the store itself (for the text store
+ * through its off-heap offset index), always see the latest data and are no longer isolated from writes.
+ * The offence timelines read then are cached for the most recently asked people (-Droadregistry.snapshot.
+ * cachedTimelines, default 100000), as reading one from the text store scans every offence.
+ *
+ * @author Group 160
+ * @version final
+ */
+class VersionedRegistry {
+
+    /**
+     * One value of a key; value null means the key did not exist in this version
+     */
+    private static final class Version<T> {
+        final long version;
+        final T value;
+        volatile Version<T> previous;
+
+        Version(long version, T value, Version<T> previous) {
+            this.version = version;
+            this.value = value;
+            this.previous = previous;
+        }
+    }
+
+    static final String MAX_PEOPLE_PROPERTY = "roadregistry.snapshot.maxPeople";
+    static final String CACHED_TIMELINES_PROPERTY = "roadregistry.snapshot.cachedTimelines";
+
+    private final RegistryStore store;
+    private final RegistryMetrics metrics;
+    private final long maxPeople;
+    private final Map<String, Version<PersonRecord>> people = new ConcurrentHashMap<>();
+    private final Map<String, Version<OffenceTimeline>> demerits = new ConcurrentHashMap<>();
+    // Open snapshots per version, guarded by itself
+    private final TreeMap<Long, Integer> openSnapshots = new TreeMap<>();
+    // Store-backed mode only: timelines read from the store at timelineStoreVersion, least recently used first,
+    // guarded by itself
+    private final LinkedHashMap<String, OffenceTimeline> timelineCache;
+    private long timelineStoreVersion = Long.MIN_VALUE;
+    private long timelineWrites; // own offence writes, a timeline read across one is not cached
+
+    private volatile long committed;
+    private volatile boolean loaded;
+    private volatile long knownStoreVersion;
+    private volatile boolean storeBacked; // too many people to copy, reads go to the store
+
+    VersionedRegistry(RegistryStore store, RegistryMetrics metrics) {
+        this.store = store;
+        this.metrics = metrics;
+        this.maxPeople = Long.getLong(MAX_PEOPLE_PROPERTY, 1_000_000);
+        int cachedTimelines = Integer.getInteger(CACHED_TIMELINES_PROPERTY, 100_000);
+        this.timelineCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, OffenceTimeline> eldest) {
+                return size() > cachedTimelines;
+            }
+        };
+        metrics.gauge("mvcc.version", () -> committed);
+        metrics.gauge("mvcc.openSnapshots", () -> {
+            synchronized (openSnapshots) {
+                return openSnapshots.values().stream().mapToInt(Integer::intValue).sum();
+            }
+        });
+    }
+
+    /**
+     * @return true if nothing is loaded yet or the store was changed by someone else since
+     */
+    boolean isStale() {
+        return !loaded || !storeBacked && store.dataVersion() != knownStoreVersion;
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Reloads if the store was changed behind our back. Caller holds the write lock.
+     */
+    void syncWithStore() {
+        if (loaded && !storeBacked && store.dataVersion() != knownStoreVersion) {
+            reload();
+        }
+    }
+
+    /**
+     * Forces a reload at the next check, e.g. after a write that failed half way
+     */
+    void markStale() {
+        knownStoreVersion = Long.MIN_VALUE;
+        synchronized (timelineCache) {
+            timelineCache.clear();
+        }
+    }
+
+    /**
+     * Reads the whole store and commits the differences as one new version.
+     * Snapshots opened before keep seeing the old state. Caller holds the write lock.
+     */
+    void reload() {
+        long storeVersion = store.dataVersion();
+        Map<String, PersonRecord> current = new HashMap<>();
+        boolean[] tooMany = new boolean[1];
+        store.forEachPerson(person -> {
+            if (current.size() < maxPeople) {
+                current.put(person.personID(), person);
+            } else {
+                tooMany[0] = true;
+            }
+        });
+        if (tooMany[0]) {
+            System.out.println("More than " + maxPeople + " people, snapshots read the store instead of a copy in memory");
+            people.clear();
+            demerits.clear();
+            storeBacked = true;
+            loaded = true;
+            metrics.increment("mvcc.storeBacked");
+            return;
+        }
+        Map<String, List<DemeritPoint>> points = new HashMap<>();
+        store.forEachDemeritPoint(point -> points.computeIfAbsent(point.personID(), id -> new ArrayList<>()).add(point));
+
+        long version = committed + 1;
+        Set<String> touched = new HashSet<>();
+        Set<String> ids = new HashSet<>(people.keySet());
+        ids.addAll(current.keySet());
+        for (String id : ids) {
+            if (push(people, id, current.get(id), version)) {
+                touched.add(id);
+            }
+        }
+        ids = new HashSet<>(demerits.keySet());
+        ids.addAll(points.keySet());
+        for (String id : ids) {
+            List<DemeritPoint> list = points.get(id);
+            OffenceTimeline timeline = list == null ? null : OffenceTimeline.of(list);
+            OffenceTimeline previous = latest(demerits, id, null);
+            if (timeline != null && previous != null && timeline.points().equals(previous.points())) {
+                continue;
+            }
+            if (push(demerits, id, timeline, version)) {
+                touched.add(id);
+            }
+        }
+        publish(version, touched);
+        knownStoreVersion = storeVersion;
+        loaded = true;
+        metrics.increment("mvcc.reloads");
+    }
+
+    /**
+     * Makes a write visible to new snapshots. Caller holds the write lock and already wrote the store.
+     *
+     * @param changed person ID to its new record, or to null for an ID that no longer exists
+     * @param added   new offences
+     */
+    void commit(Map<String, PersonRecord> changed, List<DemeritPoint> added) {
+        if (storeBacked) {
+            // Read again from the store when next asked
+            synchronized (timelineCache) {
+                added.forEach(point -> timelineCache.remove(point.personID()));
+                timelineWrites++;
+            }
+            return;
+        }
+        if (!loaded) {
+            return; // the first reader loads everything from the store, including this write
+        }
+        long version = committed + 1;
+        Set<String> touched = new HashSet<>();
+        changed.forEach((id, person) -> {
+            push(people, id, person, version);
+            touched.add(id);
+        });
+        Map<String, List<DemeritPoint>> byPerson = new HashMap<>();
+        for (DemeritPoint point : added) {
+            byPerson.computeIfAbsent(point.personID(), id -> new ArrayList<>()).add(point);
+        }
+        byPerson.forEach((id, newPoints) -> {
+            push(demerits, id, latest(demerits, id, OffenceTimeline.empty()).with(newPoints), version);
+            touched.add(id);
+        });
+        publish(version, touched);
+    }
+
+    /**
+     * Called after every write to the store by the service, so its own writes are not taken for outside changes
+     */
+    void storeWritten() {
+        if (loaded) {
+            knownStoreVersion = store.dataVersion();
+        }
+        if (storeBacked) {
+            synchronized (timelineCache) {
+                timelineStoreVersion = store.dataVersion();
+            }
+        }
+    }
+
+    /**
+     * Opens a snapshot of the latest committed version. It must be closed, or old versions are kept forever.
+     */
+    RegistrySnapshot open() {
+        synchronized (openSnapshots) {
+            long version = committed;
+            openSnapshots.merge(version, 1, Integer::sum);
+            return new RegistrySnapshot(this, version);
+        }
+    }
+
+    void release(long version) {
+        synchronized (openSnapshots) {
+            openSnapshots.computeIfPresent(version, (key, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    PersonRecord findPerson(String personID, long version) {
+        if (storeBacked) {
+            return store.findPerson(personID);
+        }
+        return read(people, personID, version);
+    }
+
+    OffenceTimeline timeline(String personID, long version) {
+        if (storeBacked) {
+            return cachedTimeline(personID);
+        }
+        OffenceTimeline timeline = read(demerits, personID, version);
+        return timeline == null ? OffenceTimeline.empty() : timeline;
+    }
+
+    /**
+     * The person's timeline from the cache, or read from the store and cached; the cache is emptied
+     * when the store was changed by someone else
+     */
+    private OffenceTimeline cachedTimeline(String personID) {
+        long storeVersion = store.dataVersion();
+        long writes;
+        synchronized (timelineCache) {
+            writes = timelineWrites;
+            if (storeVersion != timelineStoreVersion) {
+                timelineCache.clear();
+                timelineStoreVersion = storeVersion;
+            }
+            OffenceTimeline cached = timelineCache.get(personID);
+            if (cached != null) {
+                metrics.increment("mvcc.timelineHits");
+                return cached;
+            }
+        }
+        OffenceTimeline timeline = OffenceTimeline.of(store.findDemeritPoints(personID));
+        synchronized (timelineCache) {
+            if (storeVersion == timelineStoreVersion && writes == timelineWrites) {
+                timelineCache.put(personID, timeline);
+            }
+        }
+        return timeline;
+    }
+
+    void forEachPerson(long version, Consumer<PersonRecord> action) {
+        if (storeBacked) {
+            store.forEachPerson(action);
+            return;
+        }
+        for (String personID : people.keySet()) {
+            PersonRecord person = read(people, personID, version);
+            if (person != null) {
+                action.accept(person);
+            }
+        }
+    }
+
+    private static <T> T read(Map<String, Version<T>> map, String key, long version) {
+        Version<T> node = map.get(key);
+        while (node != null && node.version > version) {
+            node = node.previous;
+        }
+        return node == null ? null : node.value;
+    }
+
+    private <T> T latest(Map<String, Version<T>> map, String key, T missing) {
+        Version<T> head = map.get(key);
+        return head == null || head.value == null ? missing : head.value;
+    }
+
+    /**
+     * Adds a new head version unless the value did not change
+     * @return true if a version was added
+     */
+    private static <T> boolean push(Map<String, Version<T>> map, String key, T value, long version) {
+        Version<T> head = map.get(key);
+        if (Objects.equals(head == null ? null : head.value, value)) {
+            return false;
+        }
+        map.put(key, new Version<>(version, value, head));
+        return true;
+    }
+
+    /**
+     * Moves the committed version forward, then drops versions of the touched keys no open snapshot can see
+     */
+    private void publish(long version, Set<String> touched) {
+        long oldestNeeded;
+        synchronized (openSnapshots) {
+            committed = version;
+            oldestNeeded = openSnapshots.isEmpty() ? version : Math.min(openSnapshots.firstKey(), version);
+        }
+        for (String key : touched) {
+            prune(people, key, oldestNeeded);
+            prune(demerits, key, oldestNeeded);
+        }
+    }
+
+    /**
+     * Keeps every version newer than oldestNeeded plus the newest one at or before it
+     */
+    private <T> void prune(Map<String, Version<T>> map, String key, long oldestNeeded) {
+        Version<T> head = map.get(key);
+        Version<T> node = head;
+        while (node != null && node.version > oldestNeeded) {
+            node = node.previous;
+        }
+        if (node == null) {
+            return;
+        }
+        if (node.previous != null) {
+            node.previous = null;
+            metrics.increment("mvcc.pruned");
+        }
+        if (node == head && head.value == null) {
+            // Removed before every open snapshot, nobody can see the key any more
+            map.remove(key, head);
+        }
+    }
+}
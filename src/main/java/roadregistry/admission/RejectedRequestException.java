@@ -0,0 +1,33 @@
+package roadregistry.admission;
+
+/**
+ * Thrown by {@link RequestScheduler#admit} when a request is shed: its queue was full, it waited
+ * longer than its class allows, or the scheduler was closed.
+ *
+ * @author Group 160
+ * @version final
+ */
+public class RejectedRequestException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final RequestClass requestClass;
+    private final boolean timedOut;
+
+    public RejectedRequestException(RequestClass requestClass, boolean timedOut, String message) {
+        super(message);
+        this.requestClass = requestClass;
+        this.timedOut = timedOut;
+    }
+
+    public RequestClass getRequestClass() {
+        return requestClass;
+    }
+
+    /**
+     * @return true if the request was queued but not admitted in time, false if it was never queued
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+}
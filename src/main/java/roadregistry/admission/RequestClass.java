@@ -0,0 +1,46 @@
+package roadregistry.admission;
+
+/**
+ * The kinds of work the {@link RequestScheduler} tells apart, highest priority first.
+ * Each has its own concurrency limit, queue size and queue timeout; the defaults below can be
+ * changed with the system properties roadregistry.scheduler.{name}.concurrency, .queue and .timeoutMs
+ * (name is interactive, update or bulk).
+ *
+ * @author Group 160
+ * @version final
+ */
+public enum RequestClass {
+
+    /** Lookups and status checks, e.g. at the roadside */
+    INTERACTIVE(24, 256, 1_000),
+    /** Single adds, updates and offences */
+    UPDATE(8, 128, 5_000),
+    /** Bulk offence feeds */
+    BULK(2, 8, 30_000);
+
+    private final int defaultConcurrency;
+    private final int defaultQueue;
+    private final long defaultTimeoutMillis;
+
+    RequestClass(int defaultConcurrency, int defaultQueue, long defaultTimeoutMillis) {
+        this.defaultConcurrency = defaultConcurrency;
+        this.defaultQueue = defaultQueue;
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+    }
+
+    /**
+     * @return lower case name, used in property and metric names
+     */
+    public String key() {
+        return name().toLowerCase();
+    }
+
+    /**
+     * @return the limits from the system properties, or the defaults
+     */
+    public RequestScheduler.Limits limitsFromProperties() {
+        String prefix = "roadregistry.scheduler." + key();
+        return new RequestScheduler.Limits(Integer.getInteger(prefix + ".concurrency", defaultConcurrency),
+            Integer.getInteger(prefix + ".queue", defaultQueue), Long.getLong(prefix + ".timeoutMs", defaultTimeoutMillis));
+    }
+}
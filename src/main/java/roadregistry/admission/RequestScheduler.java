@@ -0,0 +1,278 @@
+package roadregistry.admission;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import roadregistry.RegistryMetrics;
+
+/**
+ * Admission control in front of the registry operations. A caller asks for a permit for its
+ * {@link RequestClass} before doing the work and closes it afterwards:
+ *
+ *   try (RequestScheduler.Permit permit = scheduler.admit(RequestClass.INTERACTIVE)) { ... }
+ *
+ * Each class may run up to its own concurrency limit, and all classes together up to maxConcurrent.
+ * A request that cannot start waits in its class's bounded FIFO queue. Freed slots go to the queued
+ * requests of the highest priority class that is under its own limit, so a bulk feed cannot keep
+ * lookups waiting: bulk work only gets a slot when no lookup or single update is queued for one.
+ * A request is shed with {@link RejectedRequestException} when its queue is full, or when it has waited
+ * longer than its class's timeout.
+ *
+ * Metrics, per class (interactive, update, bulk): scheduler.{class}.admitted, .shed, .timeouts and
+ * .waitMicros (total time spent queued) counters, and .queued, .running and .oldestWaitMillis gauges.
+ *
+ * @author Group 160
+ * @version final
+ */
+public final class RequestScheduler implements Closeable {
+
+    /**
+     * Limits of one request class
+     * @param concurrency   requests of this class running at once
+     * @param queue         requests of this class waiting at once; more are shed
+     * @param timeoutMillis longest wait in the queue before the request is shed, 0 waits without limit
+     */
+    public record Limits(int concurrency, int queue, long timeoutMillis) {
+        public Limits {
+            if (concurrency < 0 || queue < 0 || timeoutMillis < 0) {
+                throw new IllegalArgumentException("Limits cannot be negative");
+            }
+        }
+    }
+
+    private static final class Waiter {
+        private final long queuedNanos = System.nanoTime();
+        private final Condition ready;
+        private boolean admitted;
+
+        Waiter(Condition ready) {
+            this.ready = ready;
+        }
+    }
+
+    private static final RequestClass[] CLASSES = RequestClass.values();
+
+    private final RegistryMetrics metrics;
+    private final int maxConcurrent;
+    private final Map<RequestClass, Limits> limits = new EnumMap<>(RequestClass.class);
+    private final Map<RequestClass, ArrayDeque<Waiter>> queues = new EnumMap<>(RequestClass.class);
+    private final int[] running = new int[CLASSES.length];
+    private final ReentrantLock lock = new ReentrantLock();
+    private int runningTotal;
+    private boolean closed;
+
+    /**
+     * @param limits limits per class; classes left out get their defaults
+     */
+    public RequestScheduler(RegistryMetrics metrics, int maxConcurrent, Map<RequestClass, Limits> limits) {
+        if (maxConcurrent < 0) {
+            throw new IllegalArgumentException("maxConcurrent cannot be negative");
+        }
+        this.metrics = metrics;
+        this.maxConcurrent = maxConcurrent;
+        for (RequestClass type : CLASSES) {
+            this.limits.put(type, limits.getOrDefault(type, type.limitsFromProperties()));
+            this.queues.put(type, new ArrayDeque<>());
+            String prefix = "scheduler." + type.key();
+            metrics.gauge(prefix + ".queued", () -> locked(() -> queues.get(type).size()));
+            metrics.gauge(prefix + ".running", () -> locked(() -> running[type.ordinal()]));
+            metrics.gauge(prefix + ".oldestWaitMillis", () -> locked(() -> {
+                Waiter oldest = queues.get(type).peek();
+                return oldest == null ? 0L : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.queuedNanos);
+            }));
+        }
+    }
+
+    /**
+     * A scheduler with the limits from the system properties (see {@link RequestClass}); all classes
+     * together run at most roadregistry.scheduler.maxConcurrent requests, default 32
+     */
+    public static RequestScheduler fromProperties(RegistryMetrics metrics) {
+        return new RequestScheduler(metrics, Integer.getInteger("roadregistry.scheduler.maxConcurrent", 32), Map.of());
+    }
+
+    public Limits limits(RequestClass type) {
+        return limits.get(type);
+    }
+
+    /**
+     * Waits until a request of this class may run
+     * @return the permit, close it when the work is done
+     * @throws RejectedRequestException if the request is shed
+     */
+    public Permit admit(RequestClass type) {
+        Limits limit = limits.get(type);
+        ArrayDeque<Waiter> queue = queues.get(type);
+        String prefix = "scheduler." + type.key();
+        lock.lock();
+        try {
+            if (closed) {
+                throw shed(type, false, "Scheduler is closed");
+            }
+            if (queue.isEmpty() && canStart(type) && !higherPriorityWaiting(type)) {
+                start(type);
+                metrics.increment(prefix + ".admitted");
+                return new Permit(type, 0);
+            }
+            if (queue.size() >= limit.queue()) {
+                throw shed(type, false, "Too many " + type.key() + " requests queued");
+            }
+            Waiter waiter = new Waiter(lock.newCondition());
+            queue.add(waiter);
+            long deadline = waiter.queuedNanos + TimeUnit.MILLISECONDS.toNanos(limit.timeoutMillis());
+            try {
+                while (!waiter.admitted && !closed) {
+                    if (limit.timeoutMillis() == 0) {
+                        waiter.ready.await();
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.remove(waiter);
+                        metrics.increment(prefix + ".timeouts");
+                        throw new RejectedRequestException(type, true,
+                            "Waited more than " + limit.timeoutMillis() + " ms for a " + type.key() + " slot");
+                    }
+                    waiter.ready.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (waiter.admitted) {
+                    finish(type);
+                } else {
+                    queue.remove(waiter);
+                }
+                throw new RejectedRequestException(type, false, "Interrupted while queued");
+            }
+            if (!waiter.admitted) {
+                throw shed(type, false, "Scheduler is closed");
+            }
+            long waited = System.nanoTime() - waiter.queuedNanos;
+            metrics.increment(prefix + ".admitted");
+            metrics.add(prefix + ".waitMicros", TimeUnit.NANOSECONDS.toMicros(waited));
+            return new Permit(type, waited);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean canStart(RequestClass type) {
+        return running[type.ordinal()] < limits.get(type).concurrency() && runningTotal < maxConcurrent;
+    }
+
+    /**
+     * @return true if a queued request of a higher class could take the next free slot
+     */
+    private boolean higherPriorityWaiting(RequestClass type) {
+        for (int c = 0; c < type.ordinal(); c++) {
+            if (!queues.get(CLASSES[c]).isEmpty() && running[c] < limits.get(CLASSES[c]).concurrency()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void start(RequestClass type) {
+        running[type.ordinal()]++;
+        runningTotal++;
+    }
+
+    private void finish(RequestClass type) {
+        running[type.ordinal()]--;
+        runningTotal--;
+        dispatch();
+    }
+
+    /**
+     * Hands free slots to queued requests, highest class first
+     */
+    private void dispatch() {
+        for (RequestClass type : CLASSES) {
+            ArrayDeque<Waiter> queue = queues.get(type);
+            while (!queue.isEmpty() && canStart(type)) {
+                Waiter waiter = queue.poll();
+                waiter.admitted = true;
+                start(type);
+                waiter.ready.signal();
+            }
+        }
+    }
+
+    private RejectedRequestException shed(RequestClass type, boolean timedOut, String message) {
+        metrics.increment("scheduler." + type.key() + ".shed");
+        return new RejectedRequestException(type, timedOut, message);
+    }
+
+    private <T> T locked(Supplier<T> read) {
+        lock.lock();
+        try {
+            return read.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sheds every queued request and every later one; running requests finish normally
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            for (ArrayDeque<Waiter> queue : queues.values()) {
+                for (Waiter waiter : queue) {
+                    waiter.ready.signal();
+                }
+                queue.clear();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The right to run one request; closing it hands the slot to the next queued request
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final RequestClass type;
+        private final long waitNanos;
+        private boolean released;
+
+        private Permit(RequestClass type, long waitNanos) {
+            this.type = type;
+            this.waitNanos = waitNanos;
+        }
+
+        public RequestClass getRequestClass() {
+            return type;
+        }
+
+        /**
+         * @return how long the request was queued before it was admitted
+         */
+        public long waitNanos() {
+            return waitNanos;
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                if (!released) {
+                    released = true;
+                    finish(type);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package roadregistry.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import roadregistry.Address;
+import roadregistry.PersonRecord;
+import roadregistry.store.FileRegistryStore;
+
+/**
+ * Compares the footprint of plain and dictionary encoded addresses, on disk and on the heap.
+ * Addresses are drawn from a realistic vocabulary: house numbers 1-999, a few thousand streets,
+ * a few dozen cities, one state and one country. The heap figure for encoded addresses does not
+ * include the intern tables, which hold each distinct part once (a few hundred KB here).
+ *
+ * Usage: java roadregistry.bench.AddressFootprintBenchmark [people]
+ *
+ * @author Group 160
+ * @version final
+ */
+public class AddressFootprintBenchmark {
+
+    private static final String[] CITIES = {
+        "Melbourne", "Geelong", "Ballarat", "Bendigo", "Shepparton", "Mildura", "Warrnambool", "Traralgon",
+        "Wodonga", "Wangaratta", "Horsham", "Sale", "Bairnsdale", "Echuca", "Swan Hill", "Colac",
+        "Portland", "Hamilton", "Benalla", "Ararat", "Maryborough", "Castlemaine", "Seymour", "Kyneton"
+    };
+    private static final String[] STREET_TYPES = { "Street", "Road", "Avenue", "Court", "Drive", "Lane", "Parade" };
+    private static final int STREET_NAMES = 3_000;
+
+    public static void main(String[] args) throws IOException {
+        int people = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        long plainFile = writeFile(people, false);
+        long encodedFile = writeFile(people, true);
+        long plainHeap = heapOfPlainAddresses(people);
+        long encodedHeap = heapOfEncodedAddresses(people);
+
+        System.out.printf("%-10s %14s %14s%n", "addresses", "file bytes", "heap bytes");
+        System.out.printf("%-10s %14d %14d%n", "plain", plainFile, plainHeap);
+        System.out.printf("%-10s %14d %14d%n", "encoded", encodedFile, encodedHeap);
+        System.out.printf("%-10s %13.1f%% %13.1f%%%n", "saved",
+            100.0 * (plainFile - encodedFile) / plainFile, 100.0 * (plainHeap - encodedHeap) / plainHeap);
+    }
+
+    /**
+     * @return bytes of people.txt plus the dictionaries after storing the given number of people
+     */
+    private static long writeFile(int people, boolean encode) throws IOException {
+        File dir = Files.createTempDirectory("roadregistry-footprint").toFile();
+        FileRegistryStore store = new FileRegistryStore(dir, encode);
+        Random random = new Random(42);
+        for (int i = 0; i < people; i++) {
+            store.insertPerson(new PersonRecord(StoreBenchmark.personID(i), "First", "Last",
+                address(random), "01-01-1990", false));
+        }
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            return files.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    /**
+     * Heap held by one address String per person, as records held them before the dictionaries
+     */
+    private static long heapOfPlainAddresses(int people) {
+        Random random = new Random(42);
+        long before = usedHeap();
+        String[] addresses = new String[people];
+        for (int i = 0; i < people; i++) {
+            addresses[i] = address(random);
+        }
+        long after = usedHeap();
+        Reference.reachabilityFence(addresses);
+        return after - before;
+    }
+
+    /**
+     * Heap held by one Address per person, with the parts interned
+     */
+    private static long heapOfEncodedAddresses(int people) {
+        Random random = new Random(42);
+        long before = usedHeap();
+        Address[] addresses = new Address[people];
+        for (int i = 0; i < people; i++) {
+            addresses[i] = Address.of(address(random));
+        }
+        long after = usedHeap();
+        Reference.reachabilityFence(addresses);
+        return after - before;
+    }
+
+    /**
+     * A freshly built address string, like one read from a line of the people file
+     */
+    private static String address(Random random) {
+        int street = random.nextInt(STREET_NAMES);
+        return (1 + random.nextInt(999)) + "|Street" + street + " " + STREET_TYPES[street % STREET_TYPES.length]
+            + "|" + CITIES[random.nextInt(CITIES.length)] + "|Victoria|Australia";
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,158 @@
+package roadregistry.bench;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import roadregistry.PersonRecord;
+import roadregistry.PersonValidator;
+import roadregistry.RegistryService;
+import roadregistry.admission.RequestScheduler;
+import roadregistry.http.RegistryHttpServer;
+import roadregistry.store.RegistryStores;
+
+/**
+ * Roadside lookups while bulk demerit feeds arrive, on an embedded server without and with the
+ * request scheduler. Prints lookup latency percentiles, lookups and offences per second, and how many
+ * requests were shed.
+ *
+ * Usage: java roadregistry.bench.AdmissionBenchmark [people] [seconds] [bulk clients] [lookup clients]
+ *
+ * @author Group 160
+ * @version final
+ */
+public class AdmissionBenchmark {
+
+    private static final int FEED_LINES = 200;
+
+    public static void main(String[] args) throws Exception {
+        int people = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int bulkClients = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int lookupClients = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        System.setProperty("roadregistry.feed.enabled", "false");
+
+        System.out.printf("%-10s %9s %9s %9s %10s %11s %6s %6s%n",
+            "scheduler", "p50 ms", "p99 ms", "max ms", "lookups/s", "offences/s", "shed", "errors");
+        for (boolean scheduled : new boolean[] {false, true}) {
+            run(scheduled, people, seconds, bulkClients, lookupClients);
+        }
+        System.exit(0);
+    }
+
+    private static void run(boolean scheduled, int people, int seconds, int bulkClients, int lookupClients) throws Exception {
+        File dir = Files.createTempDirectory("roadregistry-admission").toFile();
+        try (RegistryService service = new RegistryService(RegistryStores.open(RegistryStores.FILE, dir), dir)) {
+            for (int i = 0; i < people; i++) {
+                service.addPerson(new PersonRecord(StoreBenchmark.personID(i), "First", "Bench",
+                    "1|Main St|Melbourne|Victoria|Australia", "01-01-1980", false));
+            }
+            RequestScheduler scheduler = scheduled ? RequestScheduler.fromProperties(service.getMetrics()) : null;
+            try (RegistryHttpServer server = new RegistryHttpServer(service, 0, 1024, 64, scheduler)) {
+                server.start();
+                String base = "http://localhost:" + server.getPort();
+                HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                ExecutorService threads = Executors.newFixedThreadPool(bulkClients + lookupClients);
+                AtomicBoolean running = new AtomicBoolean(true);
+                AtomicLong offences = new AtomicLong();
+                AtomicLong shed = new AtomicLong();
+                AtomicLong errors = new AtomicLong();
+                List<Future<List<Long>>> lookups = new ArrayList<>();
+
+                for (int c = 0; c < bulkClients; c++) {
+                    threads.submit(() -> {
+                        while (running.get()) {
+                            HttpResponse<Void> response = client.send(HttpRequest.newBuilder(URI.create(base + "/demerits"))
+                                .POST(HttpRequest.BodyPublishers.ofString(feed(people))).build(),
+                                HttpResponse.BodyHandlers.discarding());
+                            count(response.statusCode(), shed, errors);
+                            if (response.statusCode() == 200) {
+                                offences.addAndGet(FEED_LINES);
+                            } else if (response.statusCode() == 503) {
+                                // a well-behaved feed backs off as asked
+                                Thread.sleep(1000L * Integer.parseInt(response.headers().firstValue("Retry-After").orElse("1")));
+                            }
+                        }
+                        return null;
+                    });
+                }
+                for (int c = 0; c < lookupClients; c++) {
+                    lookups.add(threads.submit(() -> {
+                        List<Long> latencies = new ArrayList<>();
+                        while (running.get()) {
+                            String id = StoreBenchmark.personID(ThreadLocalRandom.current().nextInt(people));
+                            long sent = System.nanoTime();
+                            int status = client.send(HttpRequest.newBuilder(URI.create(base + "/people/"
+                                + RegistryHttpServer.encodePath(id))).build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+                            latencies.add(System.nanoTime() - sent);
+                            count(status, shed, errors);
+                        }
+                        return latencies;
+                    }));
+                }
+                Thread.sleep(seconds * 1000L);
+                running.set(false);
+                List<Long> all = new ArrayList<>();
+                for (Future<List<Long>> future : lookups) {
+                    all.addAll(future.get());
+                }
+                threads.shutdown();
+
+                long[] sorted = all.stream().mapToLong(Long::longValue).toArray();
+                Arrays.sort(sorted);
+                System.out.printf("%-10s %9.2f %9.2f %9.2f %10.0f %11.0f %6d %6d%n", scheduled ? "on" : "off",
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 1.0),
+                    sorted.length / (double) seconds, offences.get() / (double) seconds, shed.get(), errors.get());
+                if (scheduled) {
+                    Map<String, Number> metrics = service.getMetrics().snapshot();
+                    for (String type : new String[] {"interactive", "bulk"}) {
+                        long admitted = metrics.getOrDefault("scheduler." + type + ".admitted", 0).longValue();
+                        long waited = metrics.getOrDefault("scheduler." + type + ".waitMicros", 0).longValue();
+                        System.out.printf("  %s: %d admitted, mean wait %.2f ms%n", type, admitted,
+                            admitted == 0 ? 0.0 : waited / 1000.0 / admitted);
+                    }
+                }
+            }
+        }
+    }
+
+    private static String feed(int people) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < FEED_LINES; i++) {
+            body.append("{\"personID\":\"").append(StoreBenchmark.personID(random.nextInt(people)))
+                .append("\",\"offenseDate\":\"").append(LocalDate.now().minusDays(random.nextInt(1000)).format(PersonValidator.DATE_FORMATTER))
+                .append("\",\"points\":1}\n");
+        }
+        return body.toString();
+    }
+
+    private static void count(int status, AtomicLong shed, AtomicLong errors) {
+        if (status == 503) {
+            shed.incrementAndGet();
+        } else if (status != 200 && status != 400) {
+            errors.incrementAndGet();
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.max(0, Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1))] / 1e6;
+    }
+}
@@ -0,0 +1,147 @@
+package roadregistry.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import roadregistry.PersonRecord;
+import roadregistry.columnar.ColumnFilter;
+import roadregistry.columnar.ColumnarExport;
+import roadregistry.columnar.ColumnarFile;
+import roadregistry.store.DemeritPoint;
+import roadregistry.store.FileRegistryStore;
+import roadregistry.store.RegistryStore;
+import roadregistry.store.RegistryStores;
+
+/**
+ * Runs the same registry-wide aggregates by parsing the text files and by scanning a columnar export,
+ * and prints the time and bytes each one reads.
+ *
+ * Usage: java roadregistry.bench.ColumnarScanBenchmark [people] [offences]
+ *
+ * @author Group 160
+ * @version final
+ */
+public class ColumnarScanBenchmark {
+
+    private static final String[] CITIES = {"Melbourne", "Geelong", "Ballarat", "Bendigo", "Shepparton", "Mildura"};
+
+    public static void main(String[] args) throws IOException {
+        int people = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int offences = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        File dir = Files.createTempDirectory("roadregistry-columnar").toFile();
+        Path exportFile = dir.toPath().resolve("registry.rcol");
+        try (RegistryStore store = RegistryStores.open(RegistryStores.FILE, dir)) {
+            Random random = new Random(3);
+            for (int i = 0; i < people; i++) {
+                store.insertPerson(new PersonRecord(StoreBenchmark.personID(i), "First", "Bench",
+                    "1|Main St|" + CITIES[random.nextInt(CITIES.length)] + "|Victoria|Australia",
+                    String.format("%02d-%02d-%d", 1 + random.nextInt(28), 1 + random.nextInt(12), 1950 + random.nextInt(55)),
+                    random.nextInt(50) == 0));
+            }
+            LocalDate today = LocalDate.now();
+            List<DemeritPoint> batch = new ArrayList<>();
+            for (int i = 0; i < offences; i++) {
+                batch.add(new DemeritPoint(StoreBenchmark.personID(random.nextInt(people)),
+                    today.minusDays(random.nextInt(3 * 365)), 1 + random.nextInt(6)));
+                if (batch.size() == 10_000) {
+                    store.insertDemeritPoints(batch);
+                    batch.clear();
+                }
+            }
+            store.insertDemeritPoints(batch);
+
+            long textBytes = Files.size(dir.toPath().resolve(FileRegistryStore.PERSON_FILE_NAME))
+                + Files.size(dir.toPath().resolve(FileRegistryStore.DEMERIT_FILE_NAME));
+            long started = System.nanoTime();
+            ColumnarExport.Summary summary = ColumnarExport.export(store, exportFile);
+            System.out.printf("%d people, %d offences: text files %,d bytes, export %,d bytes (written in %d ms)%n%n",
+                people, offences, textBytes, summary.bytes(), (System.nanoTime() - started) / 1_000_000);
+
+            long from = today.minusDays(90).toEpochDay();
+            long yearAgo = today.minusYears(1).toEpochDay();
+            try (ColumnarFile columnar = ColumnarFile.open(exportFile)) {
+                System.out.printf("%-28s %10s %12s %14s %8s%n", "aggregate", "text ms", "columnar ms", "bytes read", "of text");
+
+                // points issued in the last 90 days
+                long[] textPoints = new long[1];
+                long textNanos = time(() -> store.forEachDemeritPoint(d -> {
+                    if (d.offenseDate().toEpochDay() >= from) {
+                        textPoints[0] += d.points();
+                    }
+                }));
+                long[] columnPoints = new long[1];
+                ColumnarFile.ScanStats[] stats = new ColumnarFile.ScanStats[1];
+                long columnNanos = time(() -> stats[0] = columnar.table(ColumnarExport.OFFENCES).scan(
+                    ColumnFilter.atLeast(ColumnarExport.DAY, from), row -> columnPoints[0] += row.getInt(ColumnarExport.POINTS),
+                    ColumnarExport.POINTS));
+                report("points, last 90 days", textNanos, columnNanos, stats[0].bytesRead(), textBytes, textPoints[0] == columnPoints[0]);
+
+                // suspended people per city
+                Map<String, Integer> textSuspended = new HashMap<>();
+                textNanos = time(() -> store.forEachPerson(p -> {
+                    if (p.isSuspended()) {
+                        textSuspended.merge(p.location().getCity(), 1, Integer::sum);
+                    }
+                }));
+                Map<String, Integer> columnSuspended = new HashMap<>();
+                columnNanos = time(() -> stats[0] = columnar.table(ColumnarExport.PEOPLE).scan(
+                    ColumnFilter.equalTo(ColumnarExport.SUSPENDED, 1),
+                    row -> columnSuspended.merge(columnar.city(row.getInt(ColumnarExport.CITY)), 1, Integer::sum),
+                    ColumnarExport.CITY));
+                report("suspended per city", textNanos, columnNanos, stats[0].bytesRead(), textBytes, textSuspended.equals(columnSuspended));
+
+                // points per city over the last year, joining offences to people by row number
+                Map<String, Long> textByCity = new HashMap<>();
+                textNanos = time(() -> {
+                    Map<String, String> cityOf = new HashMap<>();
+                    store.forEachPerson(p -> cityOf.put(p.personID(), p.location().getCity()));
+                    store.forEachDemeritPoint(d -> {
+                        if (d.offenseDate().toEpochDay() >= yearAgo) {
+                            textByCity.merge(cityOf.get(d.personID()), (long) d.points(), Long::sum);
+                        }
+                    });
+                });
+                long[] byCode = new long[columnar.cities().size()];
+                long[] bytesRead = new long[1];
+                columnNanos = time(() -> {
+                    ColumnarFile.Table peopleTable = columnar.table(ColumnarExport.PEOPLE);
+                    int[] cityOf = new int[peopleTable.rowCount()];
+                    bytesRead[0] = peopleTable.scan(ColumnFilter.ALL,
+                        row -> cityOf[(int) row.rowNumber()] = row.getInt(ColumnarExport.CITY), ColumnarExport.CITY).bytesRead();
+                    bytesRead[0] += columnar.table(ColumnarExport.OFFENCES).scan(ColumnFilter.atLeast(ColumnarExport.DAY, yearAgo),
+                        row -> byCode[cityOf[row.getInt(ColumnarExport.PERSON)]] += row.getInt(ColumnarExport.POINTS),
+                        ColumnarExport.PERSON, ColumnarExport.POINTS).bytesRead();
+                });
+                Map<String, Long> columnByCity = new HashMap<>();
+                for (int c = 0; c < byCode.length; c++) {
+                    columnByCity.put(columnar.city(c), byCode[c]);
+                }
+                report("points per city, last year", textNanos, columnNanos, bytesRead[0], textBytes, textByCity.equals(columnByCity));
+            }
+        }
+    }
+
+    private interface Work {
+        void run() throws IOException;
+    }
+
+    private static long time(Work work) throws IOException {
+        long started = System.nanoTime();
+        work.run();
+        return System.nanoTime() - started;
+    }
+
+    private static void report(String name, long textNanos, long columnNanos, long bytesRead, long textBytes, boolean same) {
+        System.out.printf("%-28s %10d %12d %,14d %7.1f%%%s%n", name, textNanos / 1_000_000, columnNanos / 1_000_000,
+            bytesRead, 100.0 * bytesRead / textBytes, same ? "" : "  (results differ!)");
+    }
+}
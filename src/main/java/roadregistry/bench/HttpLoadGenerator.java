@@ -0,0 +1,163 @@
+package roadregistry.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import roadregistry.PersonValidator;
+import roadregistry.RegistryService;
+import roadregistry.http.RegistryHttpServer;
+import roadregistry.store.RegistryStores;
+
+/**
+ * Closed-loop load generator for {@link RegistryHttpServer}: each client thread sends a request,
+ * waits for the answer and sends the next one. Prints requests per second, latency percentiles
+ * and how many answers had each status code (503 = shed by backpressure).
+ *
+ * The mix after loading the people is 60% lookups, 30% demerit points and 10% detail updates.
+ * Without a URL an embedded server is started on a temporary data directory
+ * (store picked with -Droadregistry.store as usual).
+ *
+ * Usage: java roadregistry.bench.HttpLoadGenerator [url|embedded] [requests] [clients] [people]
+ *
+ * @author Group 160
+ * @version final
+ */
+public class HttpLoadGenerator {
+
+    private static final String BIRTHDATE = "01-01-1980";
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 ? args[0] : "embedded";
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        int people = args.length > 3 ? Integer.parseInt(args[3]) : 1_000;
+
+        RegistryService service = null;
+        RegistryHttpServer server = null;
+        if (url.equals("embedded")) {
+            File dir = Files.createTempDirectory("roadregistry-http").toFile();
+            service = new RegistryService(RegistryStores.open(System.getProperty(RegistryStores.STORE_PROPERTY, RegistryStores.FILE), dir), dir);
+            server = new RegistryHttpServer(service, 0);
+            server.start();
+            url = "http://localhost:" + server.getPort();
+            System.out.println("Embedded server on " + url + (server.usesVirtualThreads() ? " (virtual threads)" : " (thread pool)"));
+        }
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+            .executor(Executors.newFixedThreadPool(Math.max(2, clients / 4))).build();
+        ExecutorService threads = Executors.newFixedThreadPool(clients);
+        try {
+            String base = url;
+            run(threads, clients, people, i -> addPerson(client, base, i));
+            System.out.printf("Loaded %d people%n", people);
+
+            Map<Integer, AtomicInteger> statuses = new ConcurrentSkipListMap<>();
+            long[] latencies = new long[requests];
+            long start = System.nanoTime();
+            run(threads, clients, requests, i -> {
+                Random random = ThreadLocalRandom.current();
+                long sent = System.nanoTime();
+                int status = nextRequest(client, base, random, people, i);
+                latencies[i] = System.nanoTime() - sent;
+                statuses.computeIfAbsent(status, key -> new AtomicInteger()).incrementAndGet();
+            });
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            Arrays.sort(latencies);
+            System.out.printf("%d requests, %d clients: %.0f req/s%n", requests, clients, requests / seconds);
+            System.out.printf("latency ms: p50 %.2f  p90 %.2f  p99 %.2f  max %.2f%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99),
+                latencies.length == 0 ? 0.0 : latencies[latencies.length - 1] / 1e6);
+            System.out.println("status codes: " + new TreeMap<>(statuses));
+            if (service != null) {
+                Map<String, Number> metrics = service.getMetrics().snapshot();
+                System.out.printf("demerit batches: %s for %s offences, rejected: %s%n",
+                    metrics.getOrDefault("http.demeritBatches", 0), metrics.getOrDefault("http.demeritBatched", 0),
+                    metrics.getOrDefault("http.rejected", 0));
+            }
+        } finally {
+            threads.shutdown();
+            if (server != null) {
+                server.close();
+                service.close();
+            }
+        }
+        System.exit(0);
+    }
+
+    private interface Task {
+        void run(int i) throws Exception;
+    }
+
+    /**
+     * Runs tasks 0..count-1 on the client threads, each thread taking the next number when it is done
+     */
+    private static void run(ExecutorService threads, int clients, int count, Task task) throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        Future<?>[] futures = new Future<?>[clients];
+        for (int c = 0; c < clients; c++) {
+            futures[c] = threads.submit(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < count) {
+                    task.run(i);
+                }
+                return null;
+            });
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private static void addPerson(HttpClient client, String base, int n) throws IOException, InterruptedException {
+        send(client, HttpRequest.newBuilder(URI.create(base + "/people"))
+            .POST(HttpRequest.BodyPublishers.ofString(personJson(n, "First" + n))));
+    }
+
+    private static int nextRequest(HttpClient client, String base, Random random, int people, int i)
+            throws IOException, InterruptedException {
+        int n = random.nextInt(people);
+        URI person = URI.create(base + "/people/" + RegistryHttpServer.encodePath(StoreBenchmark.personID(n)));
+        int kind = random.nextInt(10);
+        if (kind < 6) {
+            return send(client, HttpRequest.newBuilder(person).GET());
+        }
+        if (kind < 9) {
+            String date = LocalDate.now().minusDays(random.nextInt(1000)).format(PersonValidator.DATE_FORMATTER);
+            return send(client, HttpRequest.newBuilder(URI.create(person + "/demerits"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"offenseDate\":\"" + date + "\",\"points\":" + (1 + random.nextInt(3)) + "}")));
+        }
+        return send(client, HttpRequest.newBuilder(person)
+            .PUT(HttpRequest.BodyPublishers.ofString(personJson(n, "Renamed" + i))));
+    }
+
+    private static String personJson(int n, String firstName) {
+        return "{\"personID\":\"" + StoreBenchmark.personID(n) + "\",\"firstName\":\"" + firstName
+            + "\",\"lastName\":\"Load\",\"address\":\"" + (1 + n % 200) + "|Main St|Melbourne|Victoria|Australia\""
+            + ",\"birthdate\":\"" + BIRTHDATE + "\"}";
+    }
+
+    private static int send(HttpClient client, HttpRequest.Builder request) throws IOException, InterruptedException {
+        return client.send(request.header("Content-Type", "application/json").build(),
+            HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)] / 1e6;
+    }
+}
@@ -0,0 +1,187 @@
+package roadregistry.bench;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+import roadregistry.index.PersonOffsetIndex;
+import roadregistry.store.FileRegistryStore;
+
+/**
+ * Heap, GC and lookup cost of a personID to offset map at scale: a HashMap on the heap against the
+ * memory-mapped {@link PersonOffsetIndex}. Then text store lookups with the index against scanning
+ * people.txt, and how long the index takes to build and to reopen.
+ *
+ * The HashMap needs about 110 bytes of heap per ID, so give it -Xmx accordingly
+ * (5 million IDs fit in the default heap of a 4 GB machine).
+ *
+ * Usage: java roadregistry.bench.OffsetIndexBenchmark [ids] [people in the text store]
+ *
+ * @author Group 160
+ * @version final
+ */
+public class OffsetIndexBenchmark {
+
+    private static final AtomicLong MAX_PAUSE_MILLIS = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        int ids = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int people = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        listenForPauses();
+        File dir = Files.createTempDirectory("roadregistry-offset-index").toFile();
+
+        System.out.printf("%-16s %10s %12s %8s %10s %12s %12s%n",
+            ids + " IDs", "build ms", "heap MB", "GCs", "GC ms", "max pause", "lookup ns");
+        measure("mapped index", ids, () -> {
+            PersonOffsetIndex index = PersonOffsetIndex.open(new File(dir, "bench.idx").toPath(), ids);
+            for (int i = 0; i < ids; i++) {
+                index.putIfAbsent(StoreBenchmark.personID(i), i * 120L);
+            }
+            return index;
+        }, (map, id) -> ((PersonOffsetIndex) map).get(id));
+        measure("HashMap", ids, () -> {
+            Map<String, Long> map = new HashMap<>();
+            for (int i = 0; i < ids; i++) {
+                map.put(StoreBenchmark.personID(i), i * 120L);
+            }
+            return map;
+        }, (map, id) -> {
+            @SuppressWarnings("unchecked")
+            Long offset = ((Map<String, Long>) map).get(id);
+            return offset == null ? -1 : offset;
+        });
+
+        textStore(new File(dir, "text"), people);
+        System.exit(0);
+    }
+
+    private interface Build {
+        Object run() throws IOException;
+    }
+
+    private interface Lookup {
+        long get(Object map, String personID);
+    }
+
+    private static void measure(String name, int ids, Build build, Lookup lookup) throws IOException {
+        System.gc();
+        long heapBefore = usedHeap();
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        MAX_PAUSE_MILLIS.set(0);
+
+        long started = System.nanoTime();
+        Object map = build.run();
+        long buildMillis = (System.nanoTime() - started) / 1_000_000;
+
+        Random random = new Random(1);
+        int lookups = 2_000_000;
+        long found = 0;
+        started = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            found += lookup.get(map, StoreBenchmark.personID(random.nextInt(ids))) >= 0 ? 1 : 0;
+        }
+        long lookupNanos = (System.nanoTime() - started) / lookups;
+        if (found != lookups) {
+            System.out.println(name + ": " + (lookups - found) + " lookups missed!");
+        }
+        System.gc();
+        long heap = usedHeap() - heapBefore;
+        System.out.printf("%-16s %10d %12.1f %8d %10d %9d ms %12d%n", name, buildMillis, heap / 1e6,
+            gcCount() - gcCount, gcMillis() - gcMillis, MAX_PAUSE_MILLIS.get(), lookupNanos);
+        if (map instanceof PersonOffsetIndex index) {
+            System.out.printf("%-16s %,d bytes mapped outside the heap (%.1f per ID)%n", "", index.sizeInBytes(),
+                (double) index.sizeInBytes() / ids);
+            index.close();
+        }
+    }
+
+    /**
+     * people.txt with the given number of people, looked up by scanning and through the index
+     */
+    private static void textStore(File dir, int people) throws IOException {
+        dir.mkdirs();
+        try (BufferedWriter writer = Files.newBufferedWriter(new File(dir, FileRegistryStore.PERSON_FILE_NAME).toPath(), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < people; i++) {
+                writer.write(StoreBenchmark.personID(i) + "###First" + i + "###Bench###1|Main St|Melbourne|Victoria|Australia###01-01-1980###false");
+                writer.newLine();
+            }
+        }
+        System.out.printf("%ntext store, %d people%n", people);
+
+        System.setProperty(FileRegistryStore.OFFSET_INDEX_PROPERTY, "false");
+        FileRegistryStore scanning = new FileRegistryStore(dir, false);
+        System.out.printf("  scan lookup:     %8.1f us%n", lookupMicros(scanning, people, 200));
+
+        System.setProperty(FileRegistryStore.OFFSET_INDEX_PROPERTY, "file");
+        FileRegistryStore indexed = new FileRegistryStore(dir, false);
+        long started = System.nanoTime();
+        indexed.findPerson(StoreBenchmark.personID(0));
+        System.out.printf("  index build:     %8d ms (first lookup)%n", (System.nanoTime() - started) / 1_000_000);
+        System.out.printf("  indexed lookup:  %8.1f us%n", lookupMicros(indexed, people, 100_000));
+        indexed.close();
+
+        started = System.nanoTime();
+        FileRegistryStore reopened = new FileRegistryStore(dir, false);
+        reopened.findPerson(StoreBenchmark.personID(1));
+        System.out.printf("  reopen + lookup: %8.1f ms (index reused)%n", (System.nanoTime() - started) / 1e6);
+        reopened.close();
+    }
+
+    private static double lookupMicros(FileRegistryStore store, int people, int lookups) {
+        Random random = new Random(2);
+        long started = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            if (store.findPerson(StoreBenchmark.personID(random.nextInt(people))) == null) {
+                System.out.println("lookup missed!");
+            }
+        }
+        return (System.nanoTime() - started) / 1e3 / lookups;
+    }
+
+    private static void listenForPauses() {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter emitter) {
+                emitter.addNotificationListener((notification, handback) -> {
+                    if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                        long pause = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData())
+                            .getGcInfo().getDuration();
+                        MAX_PAUSE_MILLIS.accumulateAndGet(pause, Math::max);
+                    }
+                }, null, null);
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,90 @@
+package roadregistry.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import roadregistry.PersonValidator;
+import roadregistry.validation.BulkPersonIdValidator;
+
+/**
+ * Nanoseconds per personID for isValidPersonID on Strings, the bulk validator's scalar path and its
+ * default path (vector when run with --add-modules jdk.incubator.vector), at batch sizes from 1K to 10M.
+ * About a third of the IDs are valid.
+ *
+ * Usage: java --add-modules jdk.incubator.vector roadregistry.bench.PersonIdValidationBenchmark [maxBatch]
+ *
+ * @author Group 160
+ * @version final
+ */
+public class PersonIdValidationBenchmark {
+
+    private static final int STRING_POOL = 1_000_000;
+
+    public static void main(String[] args) {
+        int maxBatch = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        Random random = new Random(160);
+        byte[] packed = new byte[maxBatch * BulkPersonIdValidator.ID_LENGTH];
+        for (int i = 0; i < maxBatch; i++) {
+            byte[] id = randomID(random).getBytes(StandardCharsets.ISO_8859_1);
+            System.arraycopy(id, 0, packed, i * id.length, id.length);
+        }
+        // isValidPersonID gets Strings; past a million IDs the same Strings are used again
+        String[] strings = new String[Math.min(maxBatch, STRING_POOL)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = new String(packed, i * 10, 10, StandardCharsets.ISO_8859_1);
+        }
+
+        System.out.println("Bulk validator: " + BulkPersonIdValidator.implementation());
+        System.out.printf("%12s %14s %14s %14s %10s%n", "batch", "String ns/id", "scalar ns/id", "bulk ns/id", "speed-up");
+        for (int batch = 1_000; batch <= maxBatch; batch *= 10) {
+            int size = batch;
+            int rounds = Math.max(3, 20_000_000 / batch);
+            double string = measure(rounds, size, () -> {
+                int valid = 0;
+                for (int i = 0; i < size; i++) {
+                    valid += PersonValidator.isValidPersonID(strings[i % strings.length]) ? 1 : 0;
+                }
+                return valid;
+            });
+            double scalar = measure(rounds, size, () -> BulkPersonIdValidator.validateScalar(packed, 0, size)[0]);
+            double bulk = measure(rounds, size, () -> BulkPersonIdValidator.validate(packed, 0, size)[0]);
+            System.out.printf("%12d %14.2f %14.2f %14.2f %9.1fx%n", batch, string, scalar, bulk, string / bulk);
+        }
+    }
+
+    private interface Run {
+        long run();
+    }
+
+    private static long sink;
+
+    /**
+     * @return nanos per ID of the fastest round, after a warm-up of the same length
+     */
+    private static double measure(int rounds, int size, Run run) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 2 * rounds; round++) {
+            long start = System.nanoTime();
+            sink += run.run();
+            long elapsed = System.nanoTime() - start;
+            if (round >= rounds) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return (double) best / size;
+    }
+
+    private static String randomID(Random random) {
+        String specials = "!@#$%&_*";
+        char[] id = new char[10];
+        id[0] = (char) ('2' + random.nextInt(8));
+        id[1] = (char) ('2' + random.nextInt(8));
+        for (int i = 2; i < 8; i++) {
+            id[i] = random.nextInt(4) == 0 ? specials.charAt(random.nextInt(specials.length()))
+                : (char) ('a' + random.nextInt(26));
+        }
+        id[8] = (char) ('A' + random.nextInt(26));
+        id[9] = random.nextInt(4) == 0 ? 'z' : (char) ('A' + random.nextInt(26));
+        return new String(id);
+    }
+}
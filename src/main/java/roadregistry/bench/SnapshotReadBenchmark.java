@@ -0,0 +1,103 @@
+package roadregistry.bench;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import roadregistry.PersonRecord;
+import roadregistry.RegistryService;
+import roadregistry.RegistrySnapshot;
+import roadregistry.store.DemeritPoint;
+import roadregistry.store.RegistryStore;
+import roadregistry.store.RegistryStores;
+
+/**
+ * Lookup latency with and without a writer ingesting offences at the same time, for lookups straight
+ * from the store and for lookups from snapshots.
+ *
+ * Usage: java roadregistry.bench.SnapshotReadBenchmark [file|kv] [people] [lookups]
+ *
+ * @author Group 160
+ * @version final
+ */
+public class SnapshotReadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String kind = args.length > 0 ? args[0] : RegistryStores.KV;
+        int people = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int lookups = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+
+        File dir = Files.createTempDirectory("roadregistry-snapshot").toFile();
+        System.setProperty("roadregistry.feed.enabled", "false");
+        try (RegistryService service = new RegistryService(RegistryStores.open(kind, dir), dir)) {
+            RegistryStore store = service.getStore();
+            for (int i = 0; i < people; i++) {
+                store.insertPerson(new PersonRecord(StoreBenchmark.personID(i), "First", "Bench",
+                    "1|Main St|Melbourne|Victoria|Australia", "01-01-1980", false));
+            }
+            service.snapshot().close(); // load once before measuring
+
+            System.out.printf("%-22s %10s %10s %10s%n", "lookups (" + kind + ")", "p50 us", "p99 us", "max us");
+            report("store, idle", measure(people, lookups, id -> store.findPerson(id)));
+            report("snapshot, idle", measure(people, lookups, id -> snapshotLookup(service, id)));
+
+            AtomicBoolean ingesting = new AtomicBoolean(true);
+            AtomicLong ingested = new AtomicLong();
+            Thread writer = new Thread(() -> {
+                Random random = new Random(7);
+                List<DemeritPoint> batch = new ArrayList<>();
+                while (ingesting.get()) {
+                    batch.clear();
+                    for (int i = 0; i < 100; i++) {
+                        batch.add(new DemeritPoint(StoreBenchmark.personID(random.nextInt(people)),
+                            LocalDate.now().minusDays(random.nextInt(700)), 1));
+                    }
+                    service.addDemeritPoints(batch);
+                    ingested.addAndGet(batch.size());
+                }
+            });
+            writer.start();
+            report("store, ingesting", measure(people, lookups, id -> store.findPerson(id)));
+            report("snapshot, ingesting", measure(people, lookups, id -> snapshotLookup(service, id)));
+            ingesting.set(false);
+            writer.join();
+            System.out.printf("(%d offences ingested meanwhile)%n", ingested.get());
+        }
+    }
+
+    private static PersonRecord snapshotLookup(RegistryService service, String personID) {
+        try (RegistrySnapshot snapshot = service.snapshot()) {
+            return snapshot.findPerson(personID);
+        }
+    }
+
+    private interface Lookup {
+        PersonRecord find(String personID);
+    }
+
+    private static long[] measure(int people, int lookups, Lookup lookup) {
+        Random random = new Random(42);
+        long[] nanos = new long[lookups];
+        for (int i = 0; i < lookups; i++) {
+            String id = StoreBenchmark.personID(random.nextInt(people));
+            long start = System.nanoTime();
+            if (lookup.find(id) == null) {
+                throw new IllegalStateException("Missing " + id);
+            }
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    private static void report(String name, long[] sorted) {
+        System.out.printf("%-22s %10.1f %10.1f %10.1f%n", name,
+            sorted[sorted.length / 2] / 1e3, sorted[(int) (sorted.length * 0.99)] / 1e3, sorted[sorted.length - 1] / 1e3);
+    }
+}
@@ -0,0 +1,96 @@
+package roadregistry.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Random;
+
+import roadregistry.PersonRecord;
+import roadregistry.store.DemeritPoint;
+import roadregistry.store.RegistryStore;
+import roadregistry.store.RegistryStores;
+
+/**
+ * Runs the same workload against every storage backend so they can be compared side by side.
+ * Each backend gets its own temporary data directory.
+ *
+ * Usage: java roadregistry.bench.StoreBenchmark [people] [lookups]
+ *
+ * @author Group 160
+ * @version final
+ */
+public class StoreBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int people = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        System.out.printf("%-6s %12s %12s %12s %12s %12s%n",
+            "store", "insert/s", "lookup/s", "update/s", "offence/s", "scan/s");
+        for (String kind : new String[] { RegistryStores.FILE, RegistryStores.KV }) {
+            File dir = Files.createTempDirectory("roadregistry-bench-" + kind).toFile();
+            try (RegistryStore store = RegistryStores.open(kind, dir)) {
+                run(kind, store, people, lookups);
+            }
+        }
+    }
+
+    private static void run(String kind, RegistryStore store, int people, int lookups) {
+        Random random = new Random(42);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < people; i++) {
+            store.insertPerson(newPerson(personID(i), "First" + i));
+        }
+        double insertRate = rate(people, start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            store.findPerson(personID(random.nextInt(people)));
+        }
+        double lookupRate = rate(lookups, start);
+
+        int updates = Math.max(1, lookups / 10);
+        start = System.nanoTime();
+        for (int i = 0; i < updates; i++) {
+            String id = personID(random.nextInt(people));
+            store.replacePerson(id, newPerson(id, "Updated" + i));
+        }
+        double updateRate = rate(updates, start);
+
+        LocalDate base = LocalDate.of(2020, 1, 1);
+        start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            store.insertDemeritPoint(new DemeritPoint(personID(random.nextInt(people)), base.plusDays(random.nextInt(1500)), 1 + random.nextInt(6)));
+        }
+        double offenceRate = rate(lookups, start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            store.findDemeritPoints(personID(random.nextInt(people)), base.plusYears(1), base.plusYears(3));
+        }
+        double scanRate = rate(lookups, start);
+
+        System.out.printf("%-6s %12.0f %12.0f %12.0f %12.0f %12.0f%n",
+            kind, insertRate, lookupRate, updateRate, offenceRate, scanRate);
+    }
+
+    /**
+     * Valid 10 character ID for a sequence number, unique for the first 400 million numbers
+     */
+    static String personID(int n) {
+        char first = (char) ('2' + n % 8);
+        char second = (char) ('2' + n / 8 % 8);
+        int block = n / 640_000;
+        return String.format("%c%c#!%04d%c%c", first, second, n / 64 % 10_000,
+            (char) ('A' + block % 26), (char) ('A' + block / 26 % 26));
+    }
+
+    private static PersonRecord newPerson(String id, String firstName) {
+        return new PersonRecord(id, firstName, "Bench", "1|Main St|Melbourne|Victoria|Australia", "01-01-1990", false);
+    }
+
+    private static double rate(int operations, long startNanos) {
+        return operations / ((System.nanoTime() - startNanos) / 1e9);
+    }
+}
@@ -0,0 +1,92 @@
+package roadregistry.columnar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A scan predicate: every condition keeps the rows whose numeric column lies in [min, max], and a row
+ * has to pass all of them. Missing values never pass. Text columns have no statistics and cannot be
+ * filtered on.
+ *
+ * @author Group 160
+ * @version final
+ */
+public final class ColumnFilter {
+
+    /**
+     * Keeps every row
+     */
+    public static final ColumnFilter ALL = new ColumnFilter(Collections.emptyList());
+
+    private record Condition(String column, long min, long max) {
+    }
+
+    private final List<Condition> conditions;
+
+    private ColumnFilter(List<Condition> conditions) {
+        this.conditions = conditions;
+    }
+
+    public static ColumnFilter between(String column, long min, long max) {
+        return new ColumnFilter(List.of(new Condition(column, min, max)));
+    }
+
+    public static ColumnFilter equalTo(String column, long value) {
+        return between(column, value, value);
+    }
+
+    public static ColumnFilter atLeast(String column, long min) {
+        return between(column, min, Long.MAX_VALUE);
+    }
+
+    public static ColumnFilter atMost(String column, long max) {
+        return between(column, Long.MIN_VALUE, max);
+    }
+
+    /**
+     * @return a filter that keeps the rows both filters keep
+     */
+    public ColumnFilter and(ColumnFilter other) {
+        List<Condition> both = new ArrayList<>(conditions);
+        both.addAll(other.conditions);
+        return new ColumnFilter(Collections.unmodifiableList(both));
+    }
+
+    /**
+     * @return the filtered column indexes in this table
+     */
+    int[] columns(ColumnarFile.Table table) {
+        int[] columns = new int[conditions.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = table.columnIndex(conditions.get(i).column());
+            if (!table.isNumeric(columns[i])) {
+                throw new IllegalArgumentException("Cannot filter on text column " + conditions.get(i).column());
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * @return false when the block statistics rule out every row of the block
+     */
+    boolean mayMatch(ColumnarFile.Table table, int block) {
+        for (Condition condition : conditions) {
+            if (table.max(block, condition.column()) < condition.min()
+                || table.min(block, condition.column()) > condition.max()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean matches(ColumnarFile.Row row) {
+        for (Condition condition : conditions) {
+            int value = row.getInt(condition.column());
+            if (value == ColumnarExport.MISSING || value < condition.min() || value > condition.max()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
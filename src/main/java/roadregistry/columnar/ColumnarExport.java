@@ -0,0 +1,302 @@
+package roadregistry.columnar;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+
+import roadregistry.PersonRecord;
+import roadregistry.PersonValidator;
+import roadregistry.store.DemeritPoint;
+import roadregistry.store.RegistryStore;
+import roadregistry.store.RegistryStores;
+
+/**
+ * Writes the registry as a columnar file for analytics, so reports read a few compressed columns instead
+ * of parsing people.txt and demerit_points.txt.
+ *
+ * Two tables are written, each cut into blocks of {@link #BLOCK_ROWS} rows:
+ *   people   - id, birthDay (epoch day), city (code into the file's city list), suspended (0/1),
+ *              sorted by personID
+ *   offences - person (row number in the people table), day (epoch day), points, sorted by day
+ * Every column of every block is compressed on its own (numbers as zigzag varint deltas, then deflate)
+ * and the footer keeps the min and max of each numeric column per block, which is what lets a scan skip
+ * blocks, see {@link ColumnarFile.Table#scan}. A birthdate that does not parse, an address without a city
+ * and an offence of a person who is not stored are written as {@link #MISSING}.
+ *
+ * Usage: java roadregistry.columnar.ColumnarExport [output file]  (default registry.rcol)
+ *
+ * @author Group 160
+ * @version final
+ */
+public final class ColumnarExport {
+
+    public static final int BLOCK_ROWS = 4096;
+    public static final int MISSING = Integer.MIN_VALUE;
+
+    public static final String PEOPLE = "people";
+    public static final String OFFENCES = "offences";
+
+    public static final String ID = "id";
+    public static final String BIRTH_DAY = "birthDay";
+    public static final String CITY = "city";
+    public static final String SUSPENDED = "suspended";
+    public static final String PERSON = "person";
+    public static final String DAY = "day";
+    public static final String POINTS = "points";
+
+    static final int MAGIC = 0x52434F4C; // "RCOL"
+    static final int FORMAT_VERSION = 1;
+    static final byte INT = 1;
+    static final byte STRING = 2;
+
+    /**
+     * Row, city and byte counts of one export
+     */
+    public record Summary(int people, int offences, int cities, long bytes) {
+    }
+
+    private ColumnarExport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args.length > 0 ? args[0] : "registry.rcol");
+        RegistryStore store = RegistryStores.defaultStore();
+        long started = System.nanoTime();
+        Summary summary = export(store, file);
+        System.out.printf("Exported %d people, %d offences and %d cities to %s: %,d bytes in %d ms%n",
+            summary.people(), summary.offences(), summary.cities(), file, summary.bytes(),
+            (System.nanoTime() - started) / 1_000_000);
+    }
+
+    public static Summary export(RegistryStore store, Path file) throws IOException {
+        return export(store, file, BLOCK_ROWS);
+    }
+
+    /**
+     * Exports everything in the store. The file is written next to the target and moved over it at the
+     * end, so a reader never sees half an export.
+     */
+    public static Summary export(RegistryStore store, Path file, int blockRows) throws IOException {
+        if (blockRows <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockRows);
+        }
+        List<PersonRecord> people = new ArrayList<>();
+        store.forEachPerson(people::add);
+        people.sort(Comparator.comparing(PersonRecord::personID));
+        List<DemeritPoint> offences = new ArrayList<>();
+        store.forEachDemeritPoint(offences::add);
+
+        TreeSet<String> cityNames = new TreeSet<>();
+        for (PersonRecord person : people) {
+            if (person.location() != null && person.location().isStructured()) {
+                cityNames.add(person.location().getCity());
+            }
+        }
+        List<String> cities = new ArrayList<>(cityNames);
+        Map<String, Integer> cityCodes = new HashMap<>();
+        for (int i = 0; i < cities.size(); i++) {
+            cityCodes.put(cities.get(i), i);
+        }
+
+        int personCount = people.size();
+        String[] ids = new String[personCount];
+        int[] birthDays = new int[personCount];
+        int[] cityColumn = new int[personCount];
+        int[] suspended = new int[personCount];
+        Map<String, Integer> rows = new HashMap<>(personCount * 2);
+        for (int i = 0; i < personCount; i++) {
+            PersonRecord person = people.get(i);
+            ids[i] = person.personID();
+            birthDays[i] = epochDay(person.birthdate());
+            cityColumn[i] = person.location() != null && person.location().isStructured()
+                ? cityCodes.get(person.location().getCity()) : MISSING;
+            suspended[i] = person.isSuspended() ? 1 : 0;
+            rows.put(person.personID(), i);
+        }
+
+        int offenceCount = offences.size();
+        long[] order = new long[offenceCount]; // day in the high half, list index in the low half
+        for (int i = 0; i < offenceCount; i++) {
+            order[i] = offences.get(i).offenseDate().toEpochDay() << 32 | i;
+        }
+        Arrays.sort(order);
+        int[] personColumn = new int[offenceCount];
+        int[] dayColumn = new int[offenceCount];
+        int[] pointColumn = new int[offenceCount];
+        for (int i = 0; i < offenceCount; i++) {
+            DemeritPoint offence = offences.get((int) order[i]);
+            Integer row = rows.get(offence.personID());
+            personColumn[i] = row == null ? MISSING : row;
+            dayColumn[i] = (int) offence.offenseDate().toEpochDay();
+            pointColumn[i] = offence.points();
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = new Writer(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            writer.out.writeInt(MAGIC);
+            writer.out.writeByte(FORMAT_VERSION);
+            writer.position = 5;
+            TableMeta peopleTable = writer.table(PEOPLE, personCount, blockRows,
+                new String[] {ID, BIRTH_DAY, CITY, SUSPENDED}, new Object[] {ids, birthDays, cityColumn, suspended});
+            TableMeta offenceTable = writer.table(OFFENCES, offenceCount, blockRows,
+                new String[] {PERSON, DAY, POINTS}, new Object[] {personColumn, dayColumn, pointColumn});
+            writer.footer(cities, List.of(peopleTable, offenceTable));
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new Summary(personCount, offenceCount, cities.size(), Files.size(file));
+    }
+
+    private static int epochDay(String birthdate) {
+        try {
+            return (int) LocalDate.parse(birthdate, PersonValidator.DATE_FORMATTER).toEpochDay();
+        } catch (DateTimeParseException | NullPointerException e) {
+            return MISSING;
+        }
+    }
+
+    private record ChunkMeta(long offset, int length, int rawLength, long min, long max) {
+    }
+
+    private record TableMeta(String name, String[] columns, byte[] types, int[] blockRows, List<ChunkMeta[]> blocks) {
+    }
+
+    private static final class Writer implements AutoCloseable {
+
+        private final DataOutputStream out;
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        private final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        private byte[] compressed = new byte[1 << 16];
+        private long position;
+
+        Writer(OutputStream out) {
+            this.out = new DataOutputStream(out);
+        }
+
+        TableMeta table(String name, int rowCount, int blockRows, String[] columns, Object[] values) throws IOException {
+            byte[] types = new byte[columns.length];
+            for (int c = 0; c < columns.length; c++) {
+                types[c] = values[c] instanceof int[] ? INT : STRING;
+            }
+            int blockCount = (rowCount + blockRows - 1) / blockRows;
+            int[] sizes = new int[blockCount];
+            List<ChunkMeta[]> blocks = new ArrayList<>(blockCount);
+            for (int b = 0; b < blockCount; b++) {
+                int from = b * blockRows;
+                int to = Math.min(rowCount, from + blockRows);
+                sizes[b] = to - from;
+                ChunkMeta[] chunks = new ChunkMeta[columns.length];
+                for (int c = 0; c < columns.length; c++) {
+                    chunks[c] = values[c] instanceof int[] ints ? intChunk(ints, from, to) : stringChunk((String[]) values[c], from, to);
+                }
+                blocks.add(chunks);
+            }
+            return new TableMeta(name, columns, types, sizes, blocks);
+        }
+
+        private ChunkMeta intChunk(int[] values, int from, int to) throws IOException {
+            raw.reset();
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            long previous = 0;
+            for (int i = from; i < to; i++) {
+                int value = values[i];
+                if (value != MISSING) {
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+                writeVarLong(raw, ColumnarFile.zigzagEncode(value - previous));
+                previous = value;
+            }
+            return chunk(min, max);
+        }
+
+        private ChunkMeta stringChunk(String[] values, int from, int to) throws IOException {
+            raw.reset();
+            for (int i = from; i < to; i++) {
+                byte[] bytes = values[i].getBytes(StandardCharsets.UTF_8);
+                writeVarLong(raw, bytes.length);
+                raw.write(bytes);
+            }
+            return chunk(Long.MIN_VALUE, Long.MAX_VALUE); // no statistics, a filter on it never skips
+        }
+
+        private ChunkMeta chunk(long min, long max) throws IOException {
+            byte[] input = raw.toByteArray();
+            deflater.reset();
+            deflater.setInput(input);
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            out.write(compressed, 0, length);
+            ChunkMeta meta = new ChunkMeta(position, length, input.length, min, max);
+            position += length;
+            return meta;
+        }
+
+        void footer(List<String> cities, List<TableMeta> tables) throws IOException {
+            long footerOffset = position;
+            out.writeInt(cities.size());
+            for (String city : cities) {
+                out.writeUTF(city);
+            }
+            out.writeInt(tables.size());
+            for (TableMeta table : tables) {
+                out.writeUTF(table.name());
+                out.writeInt(table.columns().length);
+                for (int c = 0; c < table.columns().length; c++) {
+                    out.writeUTF(table.columns()[c]);
+                    out.writeByte(table.types()[c]);
+                }
+                out.writeInt(table.blocks().size());
+                for (int b = 0; b < table.blocks().size(); b++) {
+                    out.writeInt(table.blockRows()[b]);
+                    for (ChunkMeta chunk : table.blocks().get(b)) {
+                        out.writeLong(chunk.offset());
+                        out.writeInt(chunk.length());
+                        out.writeInt(chunk.rawLength());
+                        out.writeLong(chunk.min());
+                        out.writeLong(chunk.max());
+                    }
+                }
+            }
+            out.writeLong(footerOffset);
+            out.writeInt(MAGIC);
+        }
+
+        private static void writeVarLong(ByteArrayOutputStream out, long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            out.close();
+        }
+    }
+}
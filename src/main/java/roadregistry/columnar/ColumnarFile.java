@@ -0,0 +1,383 @@
+package roadregistry.columnar;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a file written by {@link ColumnarExport}. Opening it only reads the footer (city list and block
+ * statistics); column data is read and inflated by {@link Table#scan}, and only for the blocks and
+ * columns the scan needs.
+ *
+ * @author Group 160
+ * @version final
+ */
+public final class ColumnarFile implements Closeable {
+
+    private final FileChannel channel;
+    private final long size;
+    private final List<String> cities;
+    private final Map<String, Table> tables = new LinkedHashMap<>();
+
+    private ColumnarFile(FileChannel channel, long size, List<String> cities) {
+        this.channel = channel;
+        this.size = size;
+        this.cities = cities;
+    }
+
+    /**
+     * Opens an export and reads its footer
+     * @throws IOException if the file cannot be read or is not a columnar export
+     */
+    public static ColumnarFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < 17) {
+                throw new IOException("Not a columnar export: " + file);
+            }
+            ByteBuffer head = read(channel, 0, 5);
+            ByteBuffer tail = read(channel, size - 12, 12);
+            if (head.getInt() != ColumnarExport.MAGIC || tail.getInt(8) != ColumnarExport.MAGIC) {
+                throw new IOException("Not a columnar export: " + file);
+            }
+            if (head.get() != ColumnarExport.FORMAT_VERSION) {
+                throw new IOException("Unsupported columnar export version: " + file);
+            }
+            long footerOffset = tail.getLong(0);
+            if (footerOffset < 5 || footerOffset > size - 12) {
+                throw new IOException("Damaged columnar export: " + file);
+            }
+            ByteBuffer footer = read(channel, footerOffset, (int) (size - 12 - footerOffset));
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(footer.array()));
+
+            List<String> cities = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                cities.add(in.readUTF());
+            }
+            ColumnarFile columnar = new ColumnarFile(channel, size, Collections.unmodifiableList(cities));
+            for (int t = in.readInt(); t > 0; t--) {
+                Table table = new Table(columnar, in);
+                columnar.tables.put(table.name, table);
+            }
+            return columnar;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the city names; a city column value is an index into this list
+     */
+    public List<String> cities() {
+        return cities;
+    }
+
+    /**
+     * @return the city with this code, or null for {@link ColumnarExport#MISSING}
+     */
+    public String city(int code) {
+        return code == ColumnarExport.MISSING ? null : cities.get(code);
+    }
+
+    /**
+     * @return the table, or null if the export has no table with this name
+     */
+    public Table table(String name) {
+        return tables.get(name);
+    }
+
+    /**
+     * @return the size of the whole file in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Columnar export is truncated");
+            }
+        }
+        return buffer.flip();
+    }
+
+    static long zigzagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long zigzagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * What one scan read: blocks read and skipped, rows that passed the filter and compressed bytes read
+     */
+    public record ScanStats(int blocksRead, int blocksSkipped, long rowsMatched, long bytesRead) {
+    }
+
+    /**
+     * One table of the export: its columns, and per block the row count and the min/max of each numeric
+     * column.
+     */
+    public static final class Table {
+
+        private final ColumnarFile file;
+        private final String name;
+        private final List<String> columns = new ArrayList<>();
+        private final byte[] types;
+        private final int[] blockRows;
+        private final long[] offsets; // [block * columns + column], same layout for the arrays below
+        private final int[] lengths;
+        private final int[] rawLengths;
+        private final long[] mins;
+        private final long[] maxes;
+        private final int rowCount;
+
+        private Table(ColumnarFile file, DataInputStream in) throws IOException {
+            this.file = file;
+            this.name = in.readUTF();
+            int columnCount = in.readInt();
+            this.types = new byte[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                columns.add(in.readUTF());
+                types[c] = in.readByte();
+            }
+            int blockCount = in.readInt();
+            this.blockRows = new int[blockCount];
+            this.offsets = new long[blockCount * columnCount];
+            this.lengths = new int[offsets.length];
+            this.rawLengths = new int[offsets.length];
+            this.mins = new long[offsets.length];
+            this.maxes = new long[offsets.length];
+            int rows = 0;
+            for (int b = 0; b < blockCount; b++) {
+                blockRows[b] = in.readInt();
+                rows += blockRows[b];
+                for (int c = 0; c < columnCount; c++) {
+                    int i = b * columnCount + c;
+                    offsets[i] = in.readLong();
+                    lengths[i] = in.readInt();
+                    rawLengths[i] = in.readInt();
+                    mins[i] = in.readLong();
+                    maxes[i] = in.readLong();
+                }
+            }
+            this.rowCount = rows;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public List<String> columns() {
+            return Collections.unmodifiableList(columns);
+        }
+
+        public int rowCount() {
+            return rowCount;
+        }
+
+        public int blockCount() {
+            return blockRows.length;
+        }
+
+        /**
+         * @return the smallest value of a numeric column in one block (missing values left out)
+         */
+        public long min(int block, String column) {
+            return mins[block * columns.size() + columnIndex(column)];
+        }
+
+        /**
+         * @return the largest value of a numeric column in one block (missing values left out)
+         */
+        public long max(int block, String column) {
+            return maxes[block * columns.size() + columnIndex(column)];
+        }
+
+        int columnIndex(String column) {
+            int index = columns.indexOf(column);
+            if (index < 0) {
+                throw new IllegalArgumentException("No column " + column + " in table " + name);
+            }
+            return index;
+        }
+
+        boolean isNumeric(int column) {
+            return types[column] == ColumnarExport.INT;
+        }
+
+        /**
+         * Visits the rows that pass the filter, in table order. A block is skipped without reading it when
+         * the min/max of a filtered column shows no row in it can pass; otherwise only the requested
+         * columns and the filtered ones are read. The row passed to the action is reused, so copy out
+         * what you need.
+         * @param columns the columns the action reads
+         * @return what was read and skipped
+         */
+        public ScanStats scan(ColumnFilter filter, Consumer<Row> action, String... columns) throws IOException {
+            boolean[] wanted = new boolean[this.columns.size()];
+            for (String column : columns) {
+                wanted[columnIndex(column)] = true;
+            }
+            for (int column : filter.columns(this)) {
+                wanted[column] = true;
+            }
+            Row row = new Row(this);
+            Inflater inflater = new Inflater();
+            int read = 0;
+            int skipped = 0;
+            long matched = 0;
+            long bytes = 0;
+            try {
+                long firstRow = 0;
+                for (int b = 0; b < blockRows.length; b++) {
+                    if (!filter.mayMatch(this, b)) {
+                        skipped++;
+                        firstRow += blockRows[b];
+                        continue;
+                    }
+                    read++;
+                    for (int c = 0; c < wanted.length; c++) {
+                        if (wanted[c]) {
+                            bytes += lengths[b * wanted.length + c];
+                            row.values[c] = decode(b, c, inflater);
+                        } else {
+                            row.values[c] = null;
+                        }
+                    }
+                    for (int i = 0; i < blockRows[b]; i++) {
+                        row.index = i;
+                        row.rowNumber = firstRow + i;
+                        if (filter.matches(row)) {
+                            matched++;
+                            action.accept(row);
+                        }
+                    }
+                    firstRow += blockRows[b];
+                }
+            } finally {
+                inflater.end();
+            }
+            return new ScanStats(read, skipped, matched, bytes);
+        }
+
+        private Object decode(int block, int column, Inflater inflater) throws IOException {
+            int i = block * columns.size() + column;
+            byte[] raw = new byte[rawLengths[i]];
+            inflater.reset();
+            inflater.setInput(read(file.channel, offsets[i], lengths[i]).array());
+            try {
+                int length = 0;
+                while (length < raw.length) {
+                    int n = inflater.inflate(raw, length, raw.length - length);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new IOException("Damaged column " + columns.get(column) + " in table " + name);
+                    }
+                    length += n;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Damaged column " + columns.get(column) + " in table " + name, e);
+            }
+
+            int count = blockRows[block];
+            int position = 0;
+            if (types[column] == ColumnarExport.INT) {
+                int[] values = new int[count];
+                long previous = 0;
+                for (int r = 0; r < count; r++) {
+                    long varint = 0;
+                    for (int shift = 0; ; shift += 7) {
+                        byte b = raw[position++];
+                        varint |= (long) (b & 0x7F) << shift;
+                        if (b >= 0) {
+                            break;
+                        }
+                    }
+                    previous += zigzagDecode(varint);
+                    values[r] = (int) previous;
+                }
+                return values;
+            }
+            String[] values = new String[count];
+            for (int r = 0; r < count; r++) {
+                int length = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = raw[position++];
+                    length |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                values[r] = new String(raw, position, length, StandardCharsets.UTF_8);
+                position += length;
+            }
+            return values;
+        }
+    }
+
+    /**
+     * The current row of a scan. Only the columns asked for (and the filtered ones) can be read.
+     */
+    public static final class Row {
+
+        private final Table table;
+        private final Object[] values;
+        private int index;
+        private long rowNumber;
+
+        private Row(Table table) {
+            this.table = table;
+            this.values = new Object[table.columns.size()];
+        }
+
+        /**
+         * @return the position of this row in its table; offences refer to people by it
+         */
+        public long rowNumber() {
+            return rowNumber;
+        }
+
+        public int getInt(String column) {
+            return getInt(table.columnIndex(column));
+        }
+
+        int getInt(int column) {
+            if (!(values[column] instanceof int[] ints)) {
+                throw new IllegalStateException("Column " + table.columns.get(column) + " is not numeric or was not read");
+            }
+            return ints[index];
+        }
+
+        public String getString(String column) {
+            int c = table.columnIndex(column);
+            if (!(values[c] instanceof String[] strings)) {
+                throw new IllegalStateException("Column " + column + " is not text or was not read");
+            }
+            return strings[index];
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package roadregistry.feed;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ordered, durable log of registry changes (change data capture).
+ *
+ * RegistryService appends the events of every change, in the order the changes are applied.
+ * Consumers keep their own offset and read only what was appended since, see {@link Subscription}.
+ * Only one process may append to a feed: it holds an exclusive lock on changes.log.lock while the feed
+ * is open (a separate file, since closing any other handle on changes.log in the same process, like a
+ * reader's, would drop a lock taken on the log itself).
+ * Any number of processes may read it.
+ *
+ * The events of a change are forced to disk before the change is written to the store, and the store
+ * records the feed offset it has reached. A crash between the two leaves the store behind the feed,
+ * and the service applies the missing changes when it starts again, so no change is ever missing from
+ * the feed.
+ *
+ * @author Group 160
+ * @version final
+ */
+public class ChangeFeed implements Closeable {
+
+    public static final String FILE_NAME = "changes.log";
+    public static final String OFFSETS_DIR_NAME = "feed-offsets";
+
+    private final Path file;
+    private final FileChannel channel;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final ChangeFeedReader reader;
+    private long endOffset;
+
+    /**
+     * Opens the feed for appending and cuts off a half written event left by a crash
+     * @throws IOException also if another process (or another feed in this one) has the file open for appending
+     */
+    public ChangeFeed(Path file) throws IOException {
+        this.file = file;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.lockChannel = FileChannel.open(file.resolveSibling(file.getFileName() + ".lock"),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock acquired;
+        try {
+            acquired = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            acquired = null;
+        }
+        if (acquired == null) {
+            lockChannel.close();
+            throw new IOException("Change feed " + file + " is already open for appending");
+        }
+        this.lock = acquired;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.reader = new ChangeFeedReader(file);
+        this.endOffset = reader.endOffset();
+        if (channel.size() > endOffset) {
+            System.out.println("Cutting off damaged end of change feed " + file + " at byte " + endOffset);
+            channel.truncate(endOffset);
+        }
+    }
+
+    /**
+     * Appends the events of one change with a single write, forces them to disk so they are durable
+     * before the change reaches the store, and wakes up waiting subscribers
+     * @return the events with their offsets in the feed
+     */
+    public synchronized List<RegistryEvent> appendAll(List<RegistryEvent> events) throws IOException {
+        List<ByteBuffer> records = new ArrayList<>(events.size());
+        int length = 0;
+        for (RegistryEvent event : events) {
+            ByteBuffer record = EventCodec.encode(event);
+            records.add(record);
+            length += record.limit();
+        }
+        ByteBuffer batch = ByteBuffer.allocate(length);
+        records.forEach(batch::put);
+        batch.flip();
+        long offset = endOffset;
+        while (batch.hasRemaining()) {
+            channel.write(batch, offset + batch.position());
+        }
+        channel.force(false);
+        List<RegistryEvent> appended = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            long next = offset + records.get(i).limit();
+            appended.add(events.get(i).at(offset, next));
+            offset = next;
+        }
+        endOffset = offset;
+        notifyAll();
+        return appended;
+    }
+
+    /**
+     * Reads up to maxEvents events starting at fromOffset
+     */
+    public List<RegistryEvent> read(long fromOffset, int maxEvents) throws IOException {
+        return reader.read(fromOffset, maxEvents);
+    }
+
+    /**
+     * @return the offset the next event will be written at
+     */
+    public synchronized long endOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Waits until the feed grows past offset or the timeout runs out
+     * @return true if there are events at or after offset
+     */
+    public synchronized boolean awaitEvents(long offset, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (endOffset <= offset) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Subscription for a named consumer in this process. Its offset is kept in feed-offsets/&lt;name&gt;.offset
+     * next to the feed, so the consumer continues where it left off after a restart.
+     */
+    public Subscription subscribe(String consumerName) throws IOException {
+        return new Subscription(reader, Subscription.offsetFile(file, consumerName), this);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        reader.close();
+        channel.close();
+        if (lock.isValid()) {
+            lock.release();
+        }
+        lockChannel.close();
+    }
+}
@@ -0,0 +1,105 @@
+package roadregistry.feed;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only access to a change feed file. Safe to use while another process is appending:
+ * a record that is not completely written yet is treated as the end of the feed.
+ *
+ * @author Group 160
+ * @version final
+ */
+public class ChangeFeedReader implements Closeable {
+
+    private final Path file;
+    private FileChannel channel;
+    private long knownEnd;
+
+    public ChangeFeedReader(Path file) {
+        this.file = file;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Reads up to maxEvents complete events starting at fromOffset
+     * @param fromOffset 0 for the start of the feed, otherwise the nextOffset of an earlier event
+     */
+    public synchronized List<RegistryEvent> read(long fromOffset, int maxEvents) throws IOException {
+        List<RegistryEvent> events = new ArrayList<>();
+        if (!open()) {
+            return events;
+        }
+        long size = channel.size();
+        long position = fromOffset;
+        ByteBuffer header = ByteBuffer.allocate(EventCodec.HEADER_SIZE);
+        while (events.size() < maxEvents && position + EventCodec.HEADER_SIZE <= size) {
+            header.clear();
+            if (!readFully(header, position)) {
+                break;
+            }
+            int length = header.getInt(0);
+            int crc = header.getInt(4);
+            long next = position + EventCodec.HEADER_SIZE + length;
+            if (length <= 0 || next > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            if (!readFully(payload, position + EventCodec.HEADER_SIZE) || !EventCodec.verify(crc, payload.array())) {
+                break;
+            }
+            events.add(EventCodec.decode(payload.array(), position, next));
+            position = next;
+        }
+        return events;
+    }
+
+    /**
+     * @return the offset after the last complete event
+     */
+    public synchronized long endOffset() throws IOException {
+        // The feed only grows, so continue from the end found last time
+        List<RegistryEvent> batch;
+        while (!(batch = read(knownEnd, 1024)).isEmpty()) {
+            knownEnd = batch.get(batch.size() - 1).nextOffset();
+        }
+        return knownEnd;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private boolean open() throws IOException {
+        if (channel == null) {
+            if (!Files.exists(file)) {
+                return false;
+            }
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        }
+        return true;
+    }
+
+    private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
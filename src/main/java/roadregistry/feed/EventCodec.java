@@ -0,0 +1,88 @@
+package roadregistry.feed;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.zip.CRC32;
+
+import roadregistry.PersonRecord;
+import roadregistry.SuspensionStatus;
+
+/**
+ * Binary layout of one feed record: payload length (4 bytes) | crc of payload (4) | payload.
+ * The payload is written with DataOutputStream, fields in the order of {@link RegistryEvent}.
+ *
+ * @author Group 160
+ * @version final
+ */
+final class EventCodec {
+
+    static final int HEADER_SIZE = 8;
+
+    private EventCodec() {
+    }
+
+    static ByteBuffer encode(RegistryEvent event) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeByte(event.type().ordinal());
+            out.writeLong(event.timestamp());
+            out.writeUTF(event.personID());
+            out.writeUTF(event.previousPersonID() == null ? "" : event.previousPersonID());
+            PersonRecord person = event.person();
+            out.writeBoolean(person != null);
+            if (person != null) {
+                out.writeUTF(person.personID());
+                out.writeUTF(person.firstName());
+                out.writeUTF(person.lastName());
+                out.writeUTF(person.address());
+                out.writeUTF(person.birthdate());
+                out.writeBoolean(person.isSuspended());
+            }
+            out.writeLong(event.offenseDate() == null ? Long.MIN_VALUE : event.offenseDate().toEpochDay());
+            out.writeByte(event.points());
+            SuspensionStatus.write(out, person == null ? null : person.status());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        int payloadLength = record.capacity() - HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_SIZE, payloadLength);
+        record.putInt(0, payloadLength);
+        record.putInt(4, (int) crc.getValue());
+        return record;
+    }
+
+    /**
+     * @return true if the payload matches the crc from the header
+     */
+    static boolean verify(int crc, byte[] payload) {
+        CRC32 check = new CRC32();
+        check.update(payload);
+        return (int) check.getValue() == crc;
+    }
+
+    static RegistryEvent decode(byte[] payload, long offset, long nextOffset) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            RegistryEvent.Type type = RegistryEvent.Type.values()[in.readByte()];
+            long timestamp = in.readLong();
+            String personID = in.readUTF();
+            String previousPersonID = in.readUTF();
+            PersonRecord person = null;
+            if (in.readBoolean()) {
+                person = new PersonRecord(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), in.readBoolean());
+            }
+            long day = in.readLong();
+            int points = in.readByte();
+            if (person != null) {
+                person = person.withStatus(SuspensionStatus.read(in));
+            }
+            return new RegistryEvent(offset, nextOffset, type, timestamp, personID,
+                previousPersonID.isEmpty() ? null : previousPersonID, person,
+                day == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(day), points);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package roadregistry.feed;
+
+import java.time.LocalDate;
+
+import roadregistry.PersonRecord;
+
+/**
+ * One change to the registry, as published on the {@link ChangeFeed}.
+ *
+ * Which fields are filled depends on the type:
+ *   PERSON_ADDED         - person
+ *   PERSON_UPDATED       - person (new details), previousPersonID (differs from personID when the ID changed)
+ *   DEMERIT_POINTS_ADDED - offenseDate, points
+ *   SUSPENSION_CHANGED   - person (with the new isSuspended)
+ *
+ * @param offset     position of this event in the feed
+ * @param nextOffset position of the event after this one; store it to continue from here
+ * @param timestamp  when the change was made, epoch milliseconds
+ *
+ * @author Group 160
+ * @version final
+ */
+public record RegistryEvent(long offset, long nextOffset, Type type, long timestamp, String personID,
+                            String previousPersonID, PersonRecord person, LocalDate offenseDate, int points) {
+
+    public enum Type {
+        PERSON_ADDED,
+        PERSON_UPDATED,
+        DEMERIT_POINTS_ADDED,
+        SUSPENSION_CHANGED
+    }
+
+    public static RegistryEvent personAdded(PersonRecord person) {
+        return new RegistryEvent(-1, -1, Type.PERSON_ADDED, System.currentTimeMillis(), person.personID(),
+            null, person, null, 0);
+    }
+
+    public static RegistryEvent personUpdated(String previousPersonID, PersonRecord person) {
+        return new RegistryEvent(-1, -1, Type.PERSON_UPDATED, System.currentTimeMillis(), person.personID(),
+            previousPersonID, person, null, 0);
+    }
+
+    public static RegistryEvent demeritPointsAdded(String personID, LocalDate offenseDate, int points) {
+        return new RegistryEvent(-1, -1, Type.DEMERIT_POINTS_ADDED, System.currentTimeMillis(), personID,
+            null, null, offenseDate, points);
+    }
+
+    public static RegistryEvent suspensionChanged(PersonRecord person) {
+        return new RegistryEvent(-1, -1, Type.SUSPENSION_CHANGED, System.currentTimeMillis(), person.personID(),
+            null, person, null, 0);
+    }
+
+    /**
+     * @return this event as stored at the given position of the feed
+     */
+    RegistryEvent at(long offset, long nextOffset) {
+        return new RegistryEvent(offset, nextOffset, type, timestamp, personID, previousPersonID, person, offenseDate, points);
+    }
+}
@@ -0,0 +1,118 @@
+package roadregistry.feed;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.List;
+
+/**
+ * A consumer's position in a change feed.
+ *
+ * poll() returns the events after the current position and moves past them; commit() saves the
+ * position so the next run starts there. Events polled but not committed are delivered again after
+ * a restart, so consumers should be able to see an event twice.
+ *
+ * Consumers in another process than the writer open their subscription with {@link #open}.
+ *
+ * @author Group 160
+ * @version final
+ */
+public class Subscription implements Closeable {
+
+    private static final long POLL_INTERVAL_MILLIS = 50;
+
+    private final ChangeFeedReader reader;
+    private final Path offsetFile;
+    private final ChangeFeed feed; // null when the writer is in another process
+    private final boolean ownsReader;
+    private long position;
+
+    Subscription(ChangeFeedReader reader, Path offsetFile, ChangeFeed feed) throws IOException {
+        this(reader, offsetFile, feed, false);
+    }
+
+    private Subscription(ChangeFeedReader reader, Path offsetFile, ChangeFeed feed, boolean ownsReader) throws IOException {
+        this.reader = reader;
+        this.offsetFile = offsetFile;
+        this.feed = feed;
+        this.ownsReader = ownsReader;
+        this.position = Files.exists(offsetFile)
+            ? Long.parseLong(Files.readString(offsetFile, StandardCharsets.UTF_8).trim()) : 0;
+    }
+
+    /**
+     * Subscribes to a feed file written by another process
+     */
+    public static Subscription open(Path feedFile, String consumerName) throws IOException {
+        return new Subscription(new ChangeFeedReader(feedFile), offsetFile(feedFile, consumerName), null, true);
+    }
+
+    static Path offsetFile(Path feedFile, String consumerName) {
+        if (!consumerName.matches("[A-Za-z0-9._-]+")) {
+            throw new IllegalArgumentException("Consumer name may only use letters, digits, '.', '_' and '-': " + consumerName);
+        }
+        return feedFile.resolveSibling(ChangeFeed.OFFSETS_DIR_NAME).resolve(consumerName + ".offset");
+    }
+
+    /**
+     * Returns up to maxEvents new events, waiting up to timeoutMillis if there are none yet
+     * @return the events in feed order, empty if nothing arrived in time
+     */
+    public List<RegistryEvent> poll(int maxEvents, long timeoutMillis) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        List<RegistryEvent> events = reader.read(position, maxEvents);
+        while (events.isEmpty() && System.currentTimeMillis() < deadline) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (feed != null) {
+                feed.awaitEvents(position, remaining);
+            } else {
+                Thread.sleep(Math.min(POLL_INTERVAL_MILLIS, Math.max(1, remaining)));
+            }
+            events = reader.read(position, maxEvents);
+        }
+        if (!events.isEmpty()) {
+            position = events.get(events.size() - 1).nextOffset();
+        }
+        return events;
+    }
+
+    /**
+     * Saves the current position, replacing the offset file in one step
+     */
+    public void commit() throws IOException {
+        Files.createDirectories(offsetFile.getParent());
+        Path tmp = offsetFile.resolveSibling(offsetFile.getFileName() + ".tmp");
+        Files.writeString(tmp, Long.toString(position), StandardCharsets.UTF_8);
+        Files.move(tmp, offsetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return offset of the next event this subscription will return
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Moves to another offset, e.g. 0 to replay the whole feed. Takes effect for the next poll().
+     */
+    public void seek(long offset) {
+        this.position = offset;
+    }
+
+    /**
+     * @return how many bytes of the feed this subscription has not polled yet
+     */
+    public long lagBytes() throws IOException {
+        long end = feed != null ? feed.endOffset() : reader.endOffset();
+        return Math.max(0, end - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ownsReader) {
+            reader.close();
+        }
+    }
+}
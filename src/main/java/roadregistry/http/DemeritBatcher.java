@@ -0,0 +1,119 @@
+package roadregistry.http;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import roadregistry.RegistryMetrics;
+import roadregistry.RegistryService;
+import roadregistry.store.DemeritPoint;
+
+/**
+ * Pipelines demerit requests into the service's batch path.
+ *
+ * Request threads hand their offence to a queue and wait; one writer thread takes whatever has queued up
+ * (up to maxBatch) and applies it with a single {@link RegistryService#addDemeritPoints(List)} call.
+ * Under load many offences share one lock acquisition and one store write; when idle a batch is just
+ * the one offence, so nothing waits for a batch to fill.
+ *
+ * @author Group 160
+ * @version final
+ */
+class DemeritBatcher implements Closeable {
+
+    private record Pending(DemeritPoint offence, CompletableFuture<String> result) {
+    }
+
+    private final RegistryService service;
+    private final RegistryMetrics metrics;
+    private final int maxBatch;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    DemeritBatcher(RegistryService service, int maxBatch) {
+        this.service = service;
+        this.metrics = service.getMetrics();
+        this.maxBatch = Math.max(1, maxBatch);
+        this.writer = new Thread(this::run, "demerit-batcher");
+        writer.setDaemon(true);
+        writer.start();
+        metrics.gauge("http.demeritQueue", queue::size);
+    }
+
+    /**
+     * Queues an offence
+     * @return completes with "Success" or "Failed" once the batch holding the offence is written
+     */
+    CompletableFuture<String> submit(DemeritPoint offence) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        if (!running) {
+            result.complete(RegistryService.FAILED);
+            return result;
+        }
+        Pending pending = new Pending(offence, result);
+        queue.add(pending);
+        // Closed meanwhile: the writer may have stopped before this offence was queued
+        if (!running && queue.remove(pending)) {
+            result.complete(RegistryService.FAILED);
+        }
+        return result;
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                apply(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        // Interrupted, or queued by a submit racing close: nobody will write these any more
+        for (Pending pending; (pending = queue.poll()) != null; ) {
+            pending.result().complete(RegistryService.FAILED);
+        }
+    }
+
+    private void apply(List<Pending> batch) {
+        List<DemeritPoint> offences = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            offences.add(pending.offence());
+        }
+        metrics.increment("http.demeritBatches");
+        metrics.add("http.demeritBatched", batch.size());
+        try {
+            List<String> results = service.addDemeritPoints(offences);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(results.get(i));
+            }
+        } catch (RuntimeException e) {
+            for (Pending pending : batch) {
+                pending.result().completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Writes what is still queued, then stops the writer thread
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,585 @@
+package roadregistry.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import roadregistry.PersonRecord;
+import roadregistry.PersonValidator;
+import roadregistry.RegistryMetrics;
+import roadregistry.RegistryService;
+import roadregistry.RegistrySnapshot;
+import roadregistry.SuspensionStatus;
+import roadregistry.admission.RejectedRequestException;
+import roadregistry.admission.RequestClass;
+import roadregistry.admission.RequestScheduler;
+import roadregistry.store.DemeritPoint;
+
+/**
+ * HTTP/JSON front end for a {@link RegistryService}, on the JDK's built-in server.
+ *
+ *   POST /people                  {"personID", "firstName", "lastName", "address", "birthdate"}  -> 201 or 400
+ *   GET  /people/{id}             the person with its current suspension figures                  -> 200 or 404
+ *   PUT  /people/{id}             new details, personID may be left out to keep the ID           -> 200 or 400
+ *   POST /people/{id}/demerits    {"offenseDate": "DD-MM-YYYY", "points": 1-6}                   -> 200 or 400
+ *   POST /demerits                bulk feed, one {"personID", "offenseDate", "points"} per line  -> 200 or 400
+ *   GET  /people/{id}/status?date=DD-MM-YYYY   status on that day (default today)                 -> 200 or 404
+ *   GET  /metrics                 counters and gauges of the service
+ * In read-only mode (read replicas) only the GET requests are served.
+ * IDs in the path are percent-encoded (they contain characters such as '#' and '%').
+ *
+ * Each request runs on its own virtual thread when the JVM has them (Java 21+), otherwise on a bounded
+ * pool. At most maxInFlight requests are running or waiting for a pool thread; the permit is taken when
+ * the server hands the request over, and the rest are answered 503 with Retry-After by a thread of their
+ * own, so an overloaded server stays responsive instead of queueing without bound.
+ * Demerit requests are pipelined through a {@link DemeritBatcher} into the service's batch path.
+ * Admitted requests then pass a {@link RequestScheduler}: lookups are INTERACTIVE, bulk feeds BULK and
+ * every other change UPDATE, so a bulk feed cannot fill the server while lookups wait. A request the
+ * scheduler sheds is answered 503 with Retry-After. GET /metrics skips the scheduler.
+ *
+ * The server listens on the loopback address only unless another address is given, e.g. 0.0.0.0 for
+ * every interface; it has no authentication, so only bind it wider behind something that has.
+ *
+ * System properties (for main and the constructors without a bind address):
+ *   roadregistry.http.bind        - address to listen on, default the loopback address
+ *   roadregistry.http.port        - default 8080
+ *   roadregistry.http.maxInFlight - requests processed at once, default 256
+ *   roadregistry.http.batchSize   - most offences written in one batch, default 64
+ *   roadregistry.http.threads     - pool size when there are no virtual threads, default 64
+ *   roadregistry.scheduler.enabled - false leaves the scheduler out, see RequestClass for its limits
+ *
+ * @author Group 160
+ * @version final
+ */
+public class RegistryHttpServer implements Closeable {
+
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int MAX_BULK_BODY_BYTES = 16 * 1024 * 1024;
+    private static final long WRITE_TIMEOUT_SECONDS = 30;
+    // Set while a request that holds an in-flight permit runs
+    private static final ThreadLocal<Boolean> ADMITTED = ThreadLocal.withInitial(() -> false);
+
+    private final RegistryService service;
+    private final RegistryMetrics metrics;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ExecutorService rejecter; // answers the requests over maxInFlight
+    private final Semaphore inFlight;
+    private final DemeritBatcher batcher;
+    private final RequestScheduler scheduler;
+    private final boolean virtualThreads;
+    private volatile boolean readOnly;
+
+    public RegistryHttpServer(RegistryService service, int port) throws IOException {
+        this(service, port, Integer.getInteger("roadregistry.http.maxInFlight", 256),
+            Integer.getInteger("roadregistry.http.batchSize", 64));
+    }
+
+    /**
+     * @param port        0 picks a free port, see {@link #getPort()}
+     * @param maxInFlight requests processed at once before new ones get 503
+     * @param maxBatch    most offences written by one batch
+     */
+    public RegistryHttpServer(RegistryService service, int port, int maxInFlight, int maxBatch) throws IOException {
+        this(service, port, maxInFlight, maxBatch, Boolean.parseBoolean(System.getProperty("roadregistry.scheduler.enabled", "true"))
+            ? RequestScheduler.fromProperties(service.getMetrics()) : null);
+    }
+
+    /**
+     * @param scheduler admission control for the requests, closed with the server; null admits everything
+     */
+    public RegistryHttpServer(RegistryService service, int port, int maxInFlight, int maxBatch, RequestScheduler scheduler) throws IOException {
+        this(service, bindAddress(), port, maxInFlight, maxBatch, scheduler);
+    }
+
+    /**
+     * @param bindAddress address to listen on, the loopback address keeps the server local to this machine
+     */
+    public RegistryHttpServer(RegistryService service, InetAddress bindAddress, int port, int maxInFlight, int maxBatch,
+                              RequestScheduler scheduler) throws IOException {
+        this.service = service;
+        this.scheduler = scheduler;
+        this.metrics = service.getMetrics();
+        this.inFlight = new Semaphore(maxInFlight);
+        this.batcher = new DemeritBatcher(service, maxBatch);
+
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : newBoundedPool(Integer.getInteger("roadregistry.http.threads", 64), maxInFlight);
+        this.rejecter = Executors.newSingleThreadExecutor();
+
+        this.server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        server.setExecutor(this::dispatch);
+        server.createContext("/people", this::handle);
+        server.createContext("/metrics", this::handle);
+        server.createContext("/demerits", this::handle);
+        metrics.gauge("http.inFlight", () -> maxInFlight - inFlight.availablePermits());
+    }
+
+    /**
+     * @return the address from roadregistry.http.bind, or the loopback address
+     */
+    static InetAddress bindAddress() throws IOException {
+        String bind = System.getProperty("roadregistry.http.bind");
+        return bind == null || bind.isBlank() ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bind.trim());
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() if this JVM has it; looked up by reflection so
+     * the project still builds and runs on Java 17
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Platform thread pool whose queue holds every request that can have a permit, so it never rejects
+     * an admitted one
+     */
+    private static ExecutorService newBoundedPool(int threads, int queueSize) {
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, queueSize)));
+    }
+
+    /**
+     * Runs on the server's dispatcher thread, so it must never block: a request with a permit goes to
+     * the executor, any other to the rejecter, whose {@link #handle} answers it 503
+     */
+    private void dispatch(Runnable request) {
+        if (inFlight.tryAcquire()) {
+            try {
+                executor.execute(() -> {
+                    ADMITTED.set(true);
+                    try {
+                        request.run();
+                    } finally {
+                        ADMITTED.remove();
+                        inFlight.release();
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                inFlight.release();
+            }
+        }
+        rejecter.execute(request);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the address and port the server listens on
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Read-only mode, for a read replica: changes are answered 405, and lookups do not save
+     * recomputed suspension figures
+     */
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        if (!ADMITTED.get()) {
+            metrics.increment("http.rejected");
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 503, Map.of("error", "Too many requests in flight"));
+            exchange.close();
+            return;
+        }
+        metrics.increment("http.requests");
+        RequestScheduler.Permit permit = null;
+        try {
+            RequestClass type = classify(exchange);
+            if (scheduler != null && type != null) {
+                permit = scheduler.admit(type);
+            }
+            route(exchange);
+        } catch (RejectedRequestException e) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 503, Map.of("error", String.valueOf(e.getMessage())));
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, Map.of("error", String.valueOf(e.getMessage())));
+        } catch (RuntimeException e) {
+            metrics.increment("http.errors");
+            System.out.println("Error handling " + exchange.getRequestURI() + ": " + e.getMessage());
+            send(exchange, 500, Map.of("error", "Internal error"));
+        } finally {
+            if (permit != null) {
+                permit.close();
+            }
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return the scheduler class of a request, or null for requests that skip the scheduler
+     */
+    private static RequestClass classify(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getRawPath();
+        if (path.equals("/metrics")) {
+            return null;
+        }
+        if (exchange.getRequestMethod().equals("GET")) {
+            return RequestClass.INTERACTIVE;
+        }
+        return path.equals("/demerits") ? RequestClass.BULK : RequestClass.UPDATE;
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getRawPath();
+        if (path.equals("/metrics")) {
+            if (!method.equals("GET")) {
+                send(exchange, 405, Map.of("error", "Use GET"));
+                return;
+            }
+            send(exchange, 200, service.getMetrics().snapshot());
+            return;
+        }
+        if (readOnly && !method.equals("GET")) {
+            send(exchange, 405, Map.of("error", "Read-only replica, send changes to the primary"));
+            return;
+        }
+        if (path.equals("/demerits")) {
+            if (!method.equals("POST")) {
+                send(exchange, 405, Map.of("error", "Use POST"));
+                return;
+            }
+            addDemeritFeed(exchange);
+            return;
+        }
+        if (path.equals("/people") || path.equals("/people/")) {
+            if (!method.equals("POST")) {
+                send(exchange, 405, Map.of("error", "Use POST"));
+                return;
+            }
+            addPerson(exchange);
+            return;
+        }
+        if (!path.startsWith("/people/")) {
+            send(exchange, 404, Map.of("error", "Not found"));
+            return;
+        }
+        String rest = path.substring("/people/".length());
+        if (rest.endsWith("/demerits")) {
+            if (!method.equals("POST")) {
+                send(exchange, 405, Map.of("error", "Use POST"));
+                return;
+            }
+            addDemeritPoints(exchange, decodePath(rest.substring(0, rest.length() - "/demerits".length())));
+            return;
+        }
+        if (rest.endsWith("/status")) {
+            if (!method.equals("GET")) {
+                send(exchange, 405, Map.of("error", "Use GET"));
+                return;
+            }
+            statusOn(exchange, decodePath(rest.substring(0, rest.length() - "/status".length())));
+            return;
+        }
+        String personID = decodePath(rest);
+        switch (method) {
+            case "GET" -> findPerson(exchange, personID);
+            case "PUT" -> updatePerson(exchange, personID);
+            default -> send(exchange, 405, Map.of("error", "Use GET or PUT"));
+        }
+    }
+
+    private void addPerson(HttpExchange exchange) throws IOException {
+        PersonRecord person = personFrom(readBody(exchange), null);
+        boolean added = service.addPerson(person);
+        send(exchange, added ? 201 : 400, Map.of("result", added ? RegistryService.SUCCESS : RegistryService.FAILED));
+    }
+
+    private void findPerson(HttpExchange exchange, String personID) throws IOException {
+        PersonRecord person;
+        SuspensionStatus status;
+        // Person and status from the same snapshot, so the status belongs to the details shown
+        try (RegistrySnapshot snapshot = service.snapshot()) {
+            person = snapshot.findPerson(personID);
+            if (person == null) {
+                send(exchange, 404, Map.of("error", "Person not found"));
+                return;
+            }
+            status = readOnly ? snapshot.statusOn(personID, LocalDate.now(service.getClock())) : service.currentStatus(snapshot, personID);
+        }
+        send(exchange, 200, toJson(person, status));
+    }
+
+    private void statusOn(HttpExchange exchange, String personID) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        LocalDate on = LocalDate.now(service.getClock());
+        if (query != null && query.startsWith("date=")) {
+            try {
+                on = LocalDate.parse(query.substring("date=".length()), PersonValidator.DATE_FORMATTER);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("date must be DD-MM-YYYY");
+            }
+        }
+        SuspensionStatus status = service.statusOn(personID, on);
+        if (status == null) {
+            send(exchange, 404, Map.of("error", "Person not found"));
+            return;
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("personID", personID);
+        json.put("date", on.format(PersonValidator.DATE_FORMATTER));
+        json.put("points", status.points());
+        json.put("threshold", status.threshold());
+        json.put("ageBand", status.ageBand());
+        json.put("suspended", status.suspended());
+        json.put("validUntil", status.validUntil() == null ? null : status.validUntil().format(PersonValidator.DATE_FORMATTER));
+        send(exchange, 200, json);
+    }
+
+    private void updatePerson(HttpExchange exchange, String oldPersonID) throws IOException {
+        PersonRecord stored = service.updatePersonalDetails(oldPersonID, personFrom(readBody(exchange), oldPersonID));
+        if (stored == null) {
+            send(exchange, 400, Map.of("result", RegistryService.FAILED));
+            return;
+        }
+        send(exchange, 200, toJson(stored, stored.status()));
+    }
+
+    private void addDemeritPoints(HttpExchange exchange, String personID) throws IOException {
+        Map<String, Object> body = readBody(exchange);
+        Object date = body.get("offenseDate");
+        Object points = body.get("points");
+        if (!(date instanceof String) || !(points instanceof Long)) {
+            throw new IllegalArgumentException("offenseDate (DD-MM-YYYY) and points (whole number) are required");
+        }
+        LocalDate offense;
+        try {
+            offense = LocalDate.parse((String) date, PersonValidator.DATE_FORMATTER);
+        } catch (DateTimeParseException e) {
+            send(exchange, 400, Map.of("result", RegistryService.FAILED));
+            return;
+        }
+        long value = (Long) points;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            send(exchange, 400, Map.of("result", RegistryService.FAILED));
+            return;
+        }
+        String result;
+        try {
+            result = batcher.submit(new DemeritPoint(personID, offense, (int) value))
+                .get(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, 503, Map.of("error", "Interrupted"));
+            return;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            metrics.increment("http.timeouts");
+            send(exchange, 503, Map.of("error", "Write timed out"));
+            return;
+        }
+        send(exchange, RegistryService.SUCCESS.equals(result) ? 200 : 400, Map.of("result", result));
+    }
+
+    /**
+     * Bulk feed: every non-blank line of the body is one offence. A line that is not a JSON object fails
+     * the whole request; an offence with a bad date or points only fails itself. The offences go to the
+     * service as one batch, bypassing the batcher that single requests share.
+     */
+    private void addDemeritFeed(HttpExchange exchange) throws IOException {
+        String[] lines = readText(exchange, MAX_BULK_BODY_BYTES).split("\n");
+        List<DemeritPoint> offences = new ArrayList<>();
+        int failed = 0;
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].isBlank()) {
+                continue;
+            }
+            Map<String, Object> body;
+            try {
+                body = Json.parseObject(lines[i].trim());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage());
+            }
+            Object date = body.get("offenseDate");
+            Object points = body.get("points");
+            if (!(date instanceof String) || !(points instanceof Long)
+                || (Long) points < Integer.MIN_VALUE || (Long) points > Integer.MAX_VALUE) {
+                failed++;
+                continue;
+            }
+            try {
+                offences.add(new DemeritPoint(text(body.get("personID")),
+                    LocalDate.parse((String) date, PersonValidator.DATE_FORMATTER), ((Long) points).intValue()));
+            } catch (DateTimeParseException e) {
+                failed++;
+            }
+        }
+        int added = 0;
+        for (String result : service.addDemeritPoints(offences)) {
+            if (RegistryService.SUCCESS.equals(result)) {
+                added++;
+            } else {
+                failed++;
+            }
+        }
+        metrics.add("http.bulkOffences", added + failed);
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("result", failed == 0 ? RegistryService.SUCCESS : RegistryService.FAILED);
+        json.put("added", added);
+        json.put("failed", failed);
+        send(exchange, failed == 0 ? 200 : 400, json);
+    }
+
+    /**
+     * @param pathID ID from the path, used when the body has no personID
+     */
+    private static PersonRecord personFrom(Map<String, Object> body, String pathID) {
+        Object id = body.getOrDefault("personID", pathID);
+        return new PersonRecord(text(id), text(body.get("firstName")), text(body.get("lastName")),
+            text(body.get("address")), text(body.get("birthdate")), false);
+    }
+
+    private static String text(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    private static Map<String, Object> toJson(PersonRecord person, SuspensionStatus status) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("personID", person.personID());
+        json.put("firstName", person.firstName());
+        json.put("lastName", person.lastName());
+        json.put("address", person.address());
+        json.put("birthdate", person.birthdate());
+        json.put("isSuspended", person.isSuspended());
+        if (status != null) {
+            json.put("points", status.points());
+            json.put("threshold", status.threshold());
+            json.put("validUntil", status.validUntil() == null ? null : status.validUntil().format(PersonValidator.DATE_FORMATTER));
+        }
+        return json;
+    }
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        return Json.parseObject(readText(exchange, MAX_BODY_BYTES));
+    }
+
+    private static String readText(HttpExchange exchange, int maxBytes) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+                if (body.size() > maxBytes) {
+                    throw new IllegalArgumentException("Request body larger than " + maxBytes + " bytes");
+                }
+            }
+        }
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, Map<String, ?> body) throws IOException {
+        byte[] bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Decodes %XX escapes (UTF-8). Unlike URLDecoder a '+' stays a '+', which IDs may contain.
+     */
+    static String decodePath(String raw) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c == '%' && i + 2 < raw.length()) {
+                try {
+                    bytes.write(Integer.parseInt(raw.substring(i + 1, i + 3), 16));
+                    i += 2;
+                    continue;
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Bad escape in path: " + raw);
+                }
+            }
+            bytes.writeBytes(String.valueOf(c).getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes everything but letters and digits as %XX, the inverse of {@link #decodePath}
+     */
+    public static String encodePath(String text) {
+        StringBuilder out = new StringBuilder();
+        for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+                out.append(c);
+            } else {
+                out.append(String.format("%%%02X", b & 0xff));
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Stops accepting requests, sheds the ones the scheduler still has queued, lets running ones finish
+     * (up to a second) and writes queued offences. The service itself is left open.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.close();
+        }
+        server.stop(1);
+        batcher.close();
+        executor.shutdown();
+        rejecter.shutdown();
+    }
+
+    /**
+     * Usage: java roadregistry.http.RegistryHttpServer [port]
+     * Serves the shared registry (see RegistryStores for the data directory and store).
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("roadregistry.http.port", 8080);
+        RegistryHttpServer server = new RegistryHttpServer(RegistryService.shared(), port);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.start();
+        System.out.println("Road registry listening on " + bindAddress().getHostAddress() + ":" + server.getPort()
+            + (server.usesVirtualThreads() ? " (virtual threads)" : " (thread pool)"));
+    }
+}
@@ -0,0 +1,163 @@
+package roadregistry.index;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import roadregistry.SuspensionRules;
+import roadregistry.SuspensionStatus;
+import roadregistry.store.DemeritPoint;
+
+/**
+ * One person's offences indexed by date, for questions about any day in the past (or future).
+ *
+ * The offence days are kept sorted in an array next to running totals of the points, so the points in a
+ * date range are two binary searches and a subtraction: O(log n) in the length of the history, whatever
+ * the day asked about. Instances are immutable; {@link #with} returns a new timeline.
+ *
+ * @author Group 160
+ * @version final
+ */
+public final class OffenceTimeline {
+
+    private static final OffenceTimeline EMPTY = new OffenceTimeline(null, new long[0], new byte[0], new long[] { 0 });
+
+    private final String personID;
+    private final long[] days;      // epoch days, ascending
+    private final byte[] points;    // points of the offence on the same index
+    private final long[] totals;    // totals[i] = points of offences 0..i-1, one longer than days
+
+    private OffenceTimeline(String personID, long[] days, byte[] points, long[] totals) {
+        this.personID = personID;
+        this.days = days;
+        this.points = points;
+        this.totals = totals;
+    }
+
+    public static OffenceTimeline empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param offences offences of one person, in any order
+     */
+    public static OffenceTimeline of(Collection<DemeritPoint> offences) {
+        return EMPTY.with(offences);
+    }
+
+    /**
+     * @return a timeline with the given offences added (same person)
+     */
+    public OffenceTimeline with(Collection<DemeritPoint> offences) {
+        if (offences.isEmpty()) {
+            return this;
+        }
+        List<DemeritPoint> all = new ArrayList<>(points());
+        all.addAll(offences);
+        // Stable, so offences on the same day keep the order they were added in
+        all.sort(Comparator.comparing(DemeritPoint::offenseDate));
+        long[] newDays = new long[all.size()];
+        byte[] newPoints = new byte[all.size()];
+        long[] newTotals = new long[all.size() + 1];
+        for (int i = 0; i < all.size(); i++) {
+            DemeritPoint offence = all.get(i);
+            newDays[i] = offence.offenseDate().toEpochDay();
+            newPoints[i] = (byte) offence.points();
+            newTotals[i + 1] = newTotals[i] + offence.points();
+        }
+        return new OffenceTimeline(all.get(0).personID(), newDays, newPoints, newTotals);
+    }
+
+    public int size() {
+        return days.length;
+    }
+
+    /**
+     * @return every offence, ordered by date
+     */
+    public List<DemeritPoint> points() {
+        return between(0, days.length);
+    }
+
+    /**
+     * @return offences with from <= date <= to, ordered by date
+     */
+    public List<DemeritPoint> between(LocalDate from, LocalDate to) {
+        return between(firstOnOrAfter(from.toEpochDay()), firstAfter(to.toEpochDay()));
+    }
+
+    /**
+     * @return total points of offences with from <= date <= to
+     */
+    public long pointsBetween(LocalDate from, LocalDate to) {
+        int start = firstOnOrAfter(from.toEpochDay());
+        int end = firstAfter(to.toEpochDay());
+        return end <= start ? 0 : totals[end] - totals[start];
+    }
+
+    /**
+     * The status on any day, the same figures {@link SuspensionRules#compute} gives, in O(log n):
+     * points of the two years up to and including the day, the age band threshold on that day, and
+     * the next day on which either changes (an offence leaves the window, a later offence, turning 21).
+     */
+    public SuspensionStatus statusOn(LocalDate birth, LocalDate on) {
+        int start = firstOnOrAfter(on.minusYears(SuspensionRules.WINDOW_YEARS).toEpochDay());
+        int end = firstAfter(on.toEpochDay());
+        LocalDate nextChange = null;
+        if (end > start) {
+            // The oldest counted offence is the first to leave the window
+            nextChange = SuspensionRules.leavesWindow(LocalDate.ofEpochDay(days[start]));
+        }
+        if (end < days.length) {
+            nextChange = earliest(nextChange, LocalDate.ofEpochDay(days[end]));
+        }
+        int threshold = SuspensionRules.threshold(birth, on);
+        if (threshold == SuspensionRules.UNDER_21_THRESHOLD) {
+            nextChange = earliest(nextChange, SuspensionRules.adultFrom(birth));
+        }
+        int total = (int) Math.min(Integer.MAX_VALUE, end <= start ? 0 : totals[end] - totals[start]);
+        return new SuspensionStatus(total, threshold, nextChange);
+    }
+
+    private List<DemeritPoint> between(int start, int end) {
+        if (end <= start) {
+            return Collections.emptyList();
+        }
+        List<DemeritPoint> result = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            result.add(new DemeritPoint(personID, LocalDate.ofEpochDay(days[i]), points[i]));
+        }
+        return result;
+    }
+
+    /**
+     * @return index of the first offence on or after the day (size() if none)
+     */
+    private int firstOnOrAfter(long day) {
+        int low = 0;
+        int high = days.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return index of the first offence after the day (size() if none)
+     */
+    private int firstAfter(long day) {
+        return day == Long.MAX_VALUE ? days.length : firstOnOrAfter(day + 1);
+    }
+
+    private static LocalDate earliest(LocalDate a, LocalDate b) {
+        return a == null || b.isBefore(a) ? b : a;
+    }
+}
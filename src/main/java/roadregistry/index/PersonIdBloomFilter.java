@@ -0,0 +1,180 @@
+package roadregistry.index;
+
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * Bloom filter over personIDs.
+ * mightContain() never answers false for an ID that was put in, but may answer true for an ID that was not
+ * (a false positive), at roughly the rate the filter was sized for.
+ *
+ * The filter can be saved to a file together with the data version of the store it was built from,
+ * so a later process can tell whether the saved filter still matches the data.
+ *
+ * @author Group 160
+ * @version final
+ */
+public class PersonIdBloomFilter {
+
+    private static final int MAGIC = 0x52524246; // "RRBF"
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private long insertions;
+
+    /**
+     * Creates an empty filter sized so that after expectedInsertions IDs about falsePositiveRate
+     * of the absent IDs are reported as possibly present
+     */
+    public PersonIdBloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        this.expectedInsertions = Math.max(1, expectedInsertions);
+        this.falsePositiveRate = falsePositiveRate;
+        long m = (long) Math.ceil(-this.expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = Math.max(64, (m + 63) / 64 * 64);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / this.expectedInsertions * Math.log(2)));
+        this.bits = new long[(int) (bitCount / 64)];
+    }
+
+    private PersonIdBloomFilter(long[] bits, int hashCount, long expectedInsertions, double falsePositiveRate, long insertions) {
+        this.bits = bits;
+        this.bitCount = (long) bits.length * 64;
+        this.hashCount = hashCount;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.insertions = insertions;
+    }
+
+    public synchronized void put(String personID) {
+        long hash = hash(personID);
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        insertions++;
+    }
+
+    /**
+     * @return false if the ID was definitely never put in, true if it may have been
+     */
+    public synchronized boolean mightContain(String personID) {
+        long hash = hash(personID);
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of puts so far (an ID put twice counts twice)
+     */
+    public synchronized long getInsertions() {
+        return insertions;
+    }
+
+    public long getExpectedInsertions() {
+        return expectedInsertions;
+    }
+
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * @return the false positive rate to expect with the current number of insertions
+     */
+    public synchronized double expectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashCount * insertions / bitCount), hashCount);
+    }
+
+    /**
+     * @return size of the bit array in bytes
+     */
+    public long sizeInBytes() {
+        return bitCount / 8;
+    }
+
+    /**
+     * Writes the filter to a file. The file is replaced in one step, so readers never see half a filter.
+     * @param dataVersion version of the data the filter was built from, returned again by {@link #load}
+     */
+    public synchronized void save(Path file, long dataVersion) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(dataVersion);
+            out.writeLong(expectedInsertions);
+            out.writeDouble(falsePositiveRate);
+            out.writeInt(hashCount);
+            out.writeLong(insertions);
+            out.writeInt(bits.length);
+            for (long word : bits) {
+                out.writeLong(word);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A filter read back from a file, with the data version it was saved with
+     */
+    public record Saved(PersonIdBloomFilter filter, long dataVersion) {
+    }
+
+    /**
+     * Reads a filter written by {@link #save}
+     * @return the filter, or null if the file does not exist or is not a valid filter
+     */
+    public static Saved load(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            long dataVersion = in.readLong();
+            long expectedInsertions = in.readLong();
+            double falsePositiveRate = in.readDouble();
+            int hashCount = in.readInt();
+            long insertions = in.readLong();
+            long[] bits = new long[in.readInt()];
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = in.readLong();
+            }
+            return new Saved(new PersonIdBloomFilter(bits, hashCount, expectedInsertions, falsePositiveRate, insertions), dataVersion);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Ignoring unreadable bloom filter " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 64 bit FNV-1a over the characters, followed by a final mix so both halves are usable as hashes
+     */
+    private static long hash(String personID) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < personID.length(); i++) {
+            h ^= personID.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,422 @@
+package roadregistry.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Open-addressing hash table from 10 character personIDs to file offsets, kept outside the Java heap.
+ *
+ * Every slot is 16 bytes: the ID's 10 bytes, then offset + 1 in 6 bytes (0 marks an empty slot).
+ * Collisions probe the next slot, and the table doubles once it is 70% full, so 50 million IDs take
+ * 2 GiB of direct or mapped memory and no heap objects at all. The slots live in buffers of at most
+ * 1 GiB each, since one buffer cannot be larger than 2 GiB.
+ *
+ * A file-backed index is memory-mapped, so the operating system writes it out and the next process
+ * finds it ready. Its header keeps the data version it matches and whether it was closed cleanly;
+ * an index that was not closed cleanly (a crash, or another process still has it) is not reused and
+ * comes back empty with data version -1, which tells the owner to rebuild it.
+ * Only IDs of 10 ASCII characters can be indexed, see {@link #isIndexable}.
+ *
+ * Lookups run in parallel; changes wait for them and for each other.
+ *
+ * @author Group 160
+ * @version final
+ */
+public final class PersonOffsetIndex implements Closeable {
+
+    public static final int KEY_LENGTH = 10;
+
+    private static final int MAGIC = 0x5252494F; // "RRIO"
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 16;
+    private static final int SEGMENT_SHIFT = 26; // 64M slots = 1 GiB per buffer
+    private static final long MIN_CAPACITY = 1024;
+    private static final double MAX_LOAD = 0.7;
+    private static final long MAX_OFFSET = (1L << 48) - 2;
+    private static final byte[] ZEROS = new byte[1 << 16];
+
+    // header fields
+    private static final int CLEAN = 4;
+    private static final int DATA_VERSION = 8;
+    private static final int CAPACITY = 16;
+    private static final int SIZE = 24;
+    private static final int DATA_VERSION_TIME = 32;
+
+    private final Path file; // null when the index is only in memory
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private ByteBuffer header;
+    private ByteBuffer[] segments;
+    private long capacity;
+    private long size;
+
+    private PersonOffsetIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * An index in direct memory, sized for the expected number of IDs (it grows when needed)
+     */
+    public static PersonOffsetIndex inMemory(long expected) {
+        PersonOffsetIndex index = new PersonOffsetIndex(null);
+        try {
+            index.allocate(capacityFor(expected));
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // direct buffers do no I/O
+        }
+        return index;
+    }
+
+    /**
+     * Maps an index file, or creates an empty one if the file is missing, damaged or was not closed cleanly
+     */
+    public static PersonOffsetIndex open(Path file, long expected) throws IOException {
+        PersonOffsetIndex index = new PersonOffsetIndex(file);
+        if (!index.reuse()) {
+            index.allocate(capacityFor(expected));
+        }
+        index.header.putInt(CLEAN, 0);
+        force(index.header);
+        return index;
+    }
+
+    /**
+     * @return true if the ID has 10 characters, all ASCII
+     */
+    public static boolean isIndexable(String personID) {
+        if (personID == null || personID.length() != KEY_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            if (personID.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the offset stored for the ID, or -1 if there is none
+     */
+    public long get(String personID) {
+        if (!isIndexable(personID)) {
+            return -1;
+        }
+        lock.readLock().lock();
+        try {
+            return find(personID);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long find(String personID) {
+        long high = high(personID);
+        short low = low(personID);
+        long mask = capacity - 1;
+        for (long slot = hash(high, low) & mask; ; slot = (slot + 1) & mask) {
+            ByteBuffer segment = segments[(int) (slot >>> SEGMENT_SHIFT)];
+            int position = (int) (slot & ((1L << SEGMENT_SHIFT) - 1)) * SLOT_BYTES;
+            long value = value(segment, position);
+            if (value == 0) {
+                return -1;
+            }
+            if (segment.getLong(position) == high && segment.getShort(position + 8) == low) {
+                return value - 1;
+            }
+        }
+    }
+
+    /**
+     * Stores the offset unless the ID already has one (the first line with an ID is the one that counts)
+     * @return true if the offset was stored
+     */
+    public boolean putIfAbsent(String personID, long offset) throws IOException {
+        if (!isIndexable(personID)) {
+            throw new IllegalArgumentException("Not an indexable personID: " + personID);
+        }
+        if (offset < 0 || offset > MAX_OFFSET) {
+            throw new IllegalArgumentException("Offset out of range: " + offset);
+        }
+        lock.writeLock().lock();
+        try {
+            if (size + 1 > capacity * MAX_LOAD) {
+                grow();
+            }
+            if (!insert(high(personID), low(personID), offset + 1)) {
+                return false;
+            }
+            size++;
+            header.putLong(SIZE, size);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Empties the index, sized for the expected number of IDs, before a rebuild. The table is zeroed in
+     * place if it is large enough already, and only replaced by a larger one otherwise. The data version
+     * goes back to -1 until the owner sets it.
+     */
+    public void clear(long expected) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (capacityFor(expected) > capacity) {
+                allocate(capacityFor(expected));
+                return;
+            }
+            for (ByteBuffer segment : segments) {
+                ByteBuffer slots = segment.duplicate();
+                slots.clear();
+                while (slots.hasRemaining()) {
+                    slots.put(ZEROS, 0, Math.min(ZEROS.length, slots.remaining()));
+                }
+            }
+            header.putLong(DATA_VERSION, -1);
+            header.putLong(DATA_VERSION_TIME, 0);
+            header.putLong(SIZE, 0);
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the data version the owner recorded with {@link #setDataVersion}, -1 for a new index
+     */
+    public long dataVersion() {
+        lock.readLock().lock();
+        try {
+            return header.getLong(DATA_VERSION);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return when the data version was recorded (milliseconds since the epoch), 0 if never
+     */
+    public long dataVersionTime() {
+        lock.readLock().lock();
+        try {
+            return header.getLong(DATA_VERSION_TIME);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Records the version of the data the index now matches, and the time it was recorded
+     */
+    public void setDataVersion(long dataVersion) {
+        lock.writeLock().lock();
+        try {
+            header.putLong(DATA_VERSION, dataVersion);
+            header.putLong(DATA_VERSION_TIME, System.currentTimeMillis());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long capacity() {
+        lock.readLock().lock();
+        try {
+            return capacity;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return bytes of direct or mapped memory taken by the slots
+     */
+    public long sizeInBytes() {
+        return capacity() * SLOT_BYTES;
+    }
+
+    /**
+     * Writes a file-backed index out and marks it clean, so the next process can reuse it
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (file == null || header == null) {
+                return;
+            }
+            for (ByteBuffer segment : segments) {
+                force(segment);
+            }
+            header.putInt(CLEAN, 1);
+            force(header);
+            header = null;
+            segments = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean insert(long high, short low, long value) {
+        long mask = capacity - 1;
+        for (long slot = hash(high, low) & mask; ; slot = (slot + 1) & mask) {
+            ByteBuffer segment = segments[(int) (slot >>> SEGMENT_SHIFT)];
+            int position = (int) (slot & ((1L << SEGMENT_SHIFT) - 1)) * SLOT_BYTES;
+            if (value(segment, position) == 0) {
+                segment.putLong(position, high);
+                segment.putShort(position + 8, low);
+                segment.putShort(position + 10, (short) (value >>> 32));
+                segment.putInt(position + 12, (int) value);
+                return true;
+            }
+            if (segment.getLong(position) == high && segment.getShort(position + 8) == low) {
+                return false;
+            }
+        }
+    }
+
+    private static long value(ByteBuffer segment, int position) {
+        return (segment.getShort(position + 10) & 0xFFFFL) << 32 | (segment.getInt(position + 12) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Copies every entry into a table twice the size; a file-backed one is built next to the file and
+     * moved over it
+     */
+    private void grow() throws IOException {
+        ByteBuffer[] old = segments;
+        long oldCapacity = capacity;
+        long dataVersion = header.getLong(DATA_VERSION);
+        long dataVersionTime = header.getLong(DATA_VERSION_TIME);
+        allocate(oldCapacity * 2);
+        header.putLong(DATA_VERSION, dataVersion);
+        header.putLong(DATA_VERSION_TIME, dataVersionTime);
+        for (long slot = 0; slot < oldCapacity; slot++) {
+            ByteBuffer segment = old[(int) (slot >>> SEGMENT_SHIFT)];
+            int position = (int) (slot & ((1L << SEGMENT_SHIFT) - 1)) * SLOT_BYTES;
+            long value = value(segment, position);
+            if (value != 0) {
+                insert(segment.getLong(position), segment.getShort(position + 8), value);
+                size++;
+            }
+        }
+        header.putLong(SIZE, size);
+    }
+
+    /**
+     * Replaces the table with an empty one of the given capacity
+     */
+    private void allocate(long newCapacity) throws IOException {
+        int segmentCount = (int) Math.max(1, newCapacity >>> SEGMENT_SHIFT);
+        int segmentBytes = (int) (Math.min(newCapacity, 1L << SEGMENT_SHIFT) * SLOT_BYTES);
+        ByteBuffer[] newSegments = new ByteBuffer[segmentCount];
+        ByteBuffer newHeader;
+        if (file == null) {
+            newHeader = ByteBuffer.allocateDirect(HEADER_BYTES);
+            for (int i = 0; i < segmentCount; i++) {
+                newSegments[i] = ByteBuffer.allocateDirect(segmentBytes);
+            }
+        } else {
+            // A new file rather than clearing the mapped one: its pages start out as zeros without being written
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (RandomAccessFile raf = new RandomAccessFile(tmp.toFile(), "rw")) {
+                raf.setLength(0);
+                raf.setLength(HEADER_BYTES + newCapacity * SLOT_BYTES);
+                FileChannel channel = raf.getChannel();
+                newHeader = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+                for (int i = 0; i < segmentCount; i++) {
+                    newSegments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + (long) i * segmentBytes, segmentBytes);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        newHeader.putInt(0, MAGIC);
+        newHeader.putLong(DATA_VERSION, -1);
+        newHeader.putLong(DATA_VERSION_TIME, 0);
+        newHeader.putLong(CAPACITY, newCapacity);
+        newHeader.putLong(SIZE, 0);
+        this.header = newHeader;
+        this.segments = newSegments;
+        this.capacity = newCapacity;
+        this.size = 0;
+    }
+
+    /**
+     * Maps the existing file if it is a complete index that was closed cleanly
+     */
+    private boolean reuse() throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            if (raf.length() < HEADER_BYTES) {
+                return false;
+            }
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer existing = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            long existingCapacity = existing.getLong(CAPACITY);
+            if (existing.getInt(0) != MAGIC || existing.getInt(CLEAN) != 1 || existingCapacity < MIN_CAPACITY
+                    || Long.bitCount(existingCapacity) != 1 || raf.length() != HEADER_BYTES + existingCapacity * SLOT_BYTES) {
+                return false;
+            }
+            int segmentCount = (int) Math.max(1, existingCapacity >>> SEGMENT_SHIFT);
+            int segmentBytes = (int) (Math.min(existingCapacity, 1L << SEGMENT_SHIFT) * SLOT_BYTES);
+            segments = new ByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + (long) i * segmentBytes, segmentBytes);
+            }
+            header = existing;
+            capacity = existingCapacity;
+            size = existing.getLong(SIZE);
+            return true;
+        }
+    }
+
+    private static long capacityFor(long expected) {
+        long needed = (long) Math.ceil(Math.max(1, expected) / MAX_LOAD);
+        return Math.max(MIN_CAPACITY, Long.highestOneBit(needed - 1) << 1);
+    }
+
+    private static void force(ByteBuffer buffer) {
+        if (buffer instanceof MappedByteBuffer mapped) {
+            mapped.force();
+        }
+    }
+
+    // The ID's first 8 characters as a long and the last 2 as a short, the way they sit in a slot
+    private static long high(String personID) {
+        long high = 0;
+        for (int i = 0; i < 8; i++) {
+            high = high << 8 | personID.charAt(i);
+        }
+        return high;
+    }
+
+    private static short low(String personID) {
+        return (short) (personID.charAt(8) << 8 | personID.charAt(9));
+    }
+
+    private static long hash(long high, short low) {
+        long h = high * 0x9E3779B97F4A7C15L + low;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        return h ^ h >>> 33;
+    }
+}
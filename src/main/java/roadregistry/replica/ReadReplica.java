@@ -0,0 +1,316 @@
+package roadregistry.replica;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+
+import roadregistry.PersonRecord;
+import roadregistry.RegistryMetrics;
+import roadregistry.RegistryService;
+import roadregistry.RegistrySnapshot;
+import roadregistry.SuspensionStatus;
+import roadregistry.feed.ChangeFeed;
+import roadregistry.feed.ChangeFeedReader;
+import roadregistry.feed.RegistryEvent;
+import roadregistry.http.RegistryHttpServer;
+import roadregistry.store.AddressDictionary;
+import roadregistry.store.DemeritPoint;
+import roadregistry.store.FileRegistryStore;
+import roadregistry.store.LogStructuredRegistryStore;
+import roadregistry.store.RegistryStore;
+import roadregistry.store.RegistryStores;
+
+/**
+ * A read-only copy of a registry, kept up to date from the primary's change feed (log shipping), so
+ * reporting and lookups can run in other processes without touching the primary's data directory.
+ *
+ * On first start the primary's store files are copied into the replica directory; from then on the
+ * replica reads the primary's changes.log from where the copy ends and applies each change to its own
+ * store. The primary needs nothing but its feed switched on (the default).
+ *
+ * The primary's store records the feed offset it has reached together with its writes (see
+ * {@link RegistryStore#feedOffset()}), so the copy carries the feed offset it is consistent with: a
+ * key-value log copied mid-append is cut back to its last complete write, a text store to the offences
+ * before the offset in its copied feed.offset (see {@link RegistryStore#keepUpToFeedOffset()}). The replica applies
+ * the feed strictly from that offset, and its own store records the offset as it goes, so after a stop
+ * or a crash it continues from its store.
+ *
+ * @author Group 160
+ * @version final
+ */
+public class ReadReplica implements Closeable {
+
+    private static final int BATCH_SIZE = 1024;
+    private static final long POLL_INTERVAL_MILLIS = 50;
+
+    private final File primaryDir;
+    private final File replicaDir;
+    private final ChangeFeedReader reader;
+    private final RegistryService service;
+    private final RegistryMetrics metrics;
+    private volatile long position;
+    private volatile long lagMillis;
+    private volatile boolean running;
+    private Thread follower;
+
+    /**
+     * Opens (and on first use, copies) the replica of the registry in primaryDir
+     *
+     * @param kind "file" or "kv", the store the primary uses
+     */
+    public ReadReplica(File primaryDir, File replicaDir, String kind) throws IOException {
+        if (primaryDir.getCanonicalFile().equals(replicaDir.getCanonicalFile())) {
+            throw new IllegalArgumentException("Replica directory must differ from the primary's: " + replicaDir);
+        }
+        this.primaryDir = primaryDir;
+        this.replicaDir = replicaDir;
+        this.reader = new ChangeFeedReader(new File(primaryDir, ChangeFeed.FILE_NAME).toPath());
+        Files.createDirectories(replicaDir.toPath());
+
+        RegistryStore store = RegistryStores.open(kind, replicaDir);
+        long stored = store.feedOffset();
+        boolean resumed = stored >= 0;
+        if (resumed) {
+            position = stored;
+        } else {
+            store.close();
+            copyPrimary(kind);
+            store = RegistryStores.open(kind, replicaDir);
+            long copied = store.keepUpToFeedOffset();
+            // A primary that never recorded an offset has published nothing the copy could miss
+            position = Math.max(0, copied);
+            if (copied < 0) {
+                store.setFeedOffset(position);
+            }
+        }
+        this.service = new RegistryService(store);
+        this.metrics = service.getMetrics();
+        metrics.increment(resumed ? "replica.resumed" : "replica.copied");
+        metrics.gauge("replica.position", () -> position);
+        metrics.gauge("replica.lagBytes", this::lagBytesOrZero);
+        metrics.gauge("replica.lagMillis", () -> lagMillis);
+    }
+
+    /**
+     * Replica of a primary whose store kind is recognised from its files
+     */
+    public ReadReplica(File primaryDir, File replicaDir) throws IOException {
+        this(primaryDir, replicaDir, new File(primaryDir, LogStructuredRegistryStore.LOG_FILE_NAME).exists()
+            ? RegistryStores.KV : RegistryStores.FILE);
+    }
+
+    /**
+     * Copies the primary's store files, in the order they are written: for the text store feed.offset,
+     * then the offences, then the people, so the people copied hold every change up to the copied offences.
+     * The dictionary goes last: it only grows, and codes are written to it before the records that use
+     * them, so the copied dictionary knows every code in the copied records.
+     */
+    private void copyPrimary(String kind) throws IOException {
+        List<String> files = kind.equals(RegistryStores.KV)
+            ? List.of(LogStructuredRegistryStore.LOG_FILE_NAME)
+            : List.of(FileRegistryStore.FEED_OFFSET_FILE_NAME, FileRegistryStore.DEMERIT_FILE_NAME, FileRegistryStore.PERSON_FILE_NAME);
+        deleteCopy();
+        for (String name : files) {
+            copy(new File(primaryDir, name), new File(replicaDir, name));
+        }
+        File dictionary = new File(primaryDir, AddressDictionary.DIR_NAME);
+        File[] segments = dictionary.listFiles(file -> file.isFile() && !file.getName().endsWith(".lock"));
+        if (segments != null) {
+            Files.createDirectories(new File(replicaDir, AddressDictionary.DIR_NAME).toPath());
+            for (File segment : segments) {
+                copy(segment, new File(new File(replicaDir, AddressDictionary.DIR_NAME), segment.getName()));
+            }
+        }
+    }
+
+    private void deleteCopy() throws IOException {
+        for (String name : List.of(FileRegistryStore.PERSON_FILE_NAME, FileRegistryStore.DEMERIT_FILE_NAME,
+                FileRegistryStore.FEED_OFFSET_FILE_NAME, FileRegistryStore.INDEX_FILE_NAME, LogStructuredRegistryStore.LOG_FILE_NAME)) {
+            Files.deleteIfExists(new File(replicaDir, name).toPath());
+        }
+        File[] segments = new File(replicaDir, AddressDictionary.DIR_NAME).listFiles(File::isFile);
+        if (segments != null) {
+            for (File segment : segments) {
+                Files.delete(segment.toPath());
+            }
+        }
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        if (from.exists()) {
+            Files.copy(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Applies everything the primary has published so far
+     *
+     * @return number of changes applied
+     * @throws IOException also if a change could not be written to the replica's store; the position then
+     * goes back to what the store recorded, so the next call applies the rest of the batch again
+     */
+    public synchronized int catchUp() throws IOException {
+        int applied = 0;
+        List<RegistryEvent> batch;
+        while (!(batch = reader.read(position, BATCH_SIZE)).isEmpty()) {
+            if (!service.applyChanges(batch)) {
+                long stored = service.getStore().keepUpToFeedOffset();
+                if (stored >= 0) {
+                    position = stored;
+                }
+                updateLag();
+                throw new IOException("Cannot apply the primary's changes to the replica, continuing from offset " + position);
+            }
+            position = batch.get(batch.size() - 1).nextOffset();
+            applied += batch.size();
+            metrics.add("replica.applied", batch.size());
+            updateLag();
+        }
+        if (applied == 0) {
+            updateLag();
+        }
+        return applied;
+    }
+
+    private void updateLag() throws IOException {
+        List<RegistryEvent> next = reader.read(position, 1);
+        lagMillis = next.isEmpty() ? 0 : Math.max(0, System.currentTimeMillis() - next.get(0).timestamp());
+    }
+
+    /**
+     * Starts a thread that keeps applying the primary's changes
+     */
+    public synchronized void start() {
+        if (follower != null) {
+            return;
+        }
+        running = true;
+        follower = new Thread(() -> {
+            while (running) {
+                try {
+                    if (catchUp() == 0) {
+                        Thread.sleep(POLL_INTERVAL_MILLIS);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    metrics.increment("replica.errors");
+                    System.out.println("Error following primary change feed: " + e.getMessage());
+                    try {
+                        Thread.sleep(POLL_INTERVAL_MILLIS * 10);
+                    } catch (InterruptedException stop) {
+                        return;
+                    }
+                }
+            }
+        }, "replica-follower");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    /**
+     * @return feed bytes the primary has published that this replica has not applied yet
+     */
+    public long lagBytes() throws IOException {
+        return Math.max(0, reader.endOffset() - position);
+    }
+
+    private long lagBytesOrZero() {
+        try {
+            return lagBytes();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return age of the oldest change not applied yet, as of the last batch applied, 0 if none was pending
+     */
+    public long lagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * @return offset in the primary's feed of the next change to apply
+     */
+    public long position() {
+        return position;
+    }
+
+    public PersonRecord findPerson(String personID) {
+        return service.findPerson(personID);
+    }
+
+    public List<DemeritPoint> findDemeritPoints(String personID) {
+        try (RegistrySnapshot snapshot = service.snapshot()) {
+            return snapshot.findDemeritPoints(personID);
+        }
+    }
+
+    public SuspensionStatus statusOn(String personID, LocalDate on) {
+        return service.statusOn(personID, on);
+    }
+
+    /**
+     * The service over the replica's store, for snapshots and for serving reads over HTTP.
+     * Do not write through it: the replica would no longer match the primary.
+     */
+    public RegistryService getService() {
+        return service;
+    }
+
+    /**
+     * Stops following and closes the store, which holds the feed offset the next start continues from
+     */
+    @Override
+    public void close() throws IOException {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = follower;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            service.close();
+            reader.close();
+        }
+    }
+
+    /**
+     * Usage: java roadregistry.replica.ReadReplica primaryDataDir replicaDir [port]
+     * Follows the primary and serves read-only lookups over HTTP (writes are answered 405).
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: ReadReplica primaryDataDir replicaDir [port]");
+            System.exit(2);
+        }
+        ReadReplica replica = new ReadReplica(new File(args[0]), new File(args[1]));
+        replica.catchUp();
+        replica.start();
+        RegistryHttpServer server = new RegistryHttpServer(replica.getService(),
+            args.length > 2 ? Integer.parseInt(args[2]) : Integer.getInteger("roadregistry.http.port", 8081));
+        server.setReadOnly(true);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            try {
+                replica.close();
+            } catch (IOException e) {
+                System.out.println("Error closing replica: " + e.getMessage());
+            }
+        }));
+        server.start();
+        System.out.println("Read replica of " + args[0] + " on port " + server.getPort()
+            + ", lag " + replica.lagBytes() + " bytes");
+    }
+}
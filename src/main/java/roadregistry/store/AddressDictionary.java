@@ -0,0 +1,220 @@
+package roadregistry.store;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import roadregistry.Address;
+
+/**
+ * Shared dictionaries for the street, city, state and country parts of addresses.
+ *
+ * Each part has its own file in the dictionary directory with one value per line; the line number
+ * is the value's code. Files are only ever appended to, so a code never changes meaning and several
+ * data files may share the same dictionaries. A new value is written to its dictionary before the
+ * record that uses it, so a crash can leave an unused value behind but never a dangling code.
+ *
+ * An encoded address is "@number|street code|city code|state code|country code",
+ * e.g. "@32|17|2|0|0". Plain address text (anything not starting with "@") is still decoded,
+ * so files written before the dictionaries existed keep working.
+ *
+ * Several processes may share the dictionaries: a value is appended holding a lock on the dictionary's
+ * ".lock" file, after reading what others appended, and a code this process has not seen yet is looked up
+ * by reading the file again. A line cut off by a crash is completed by the next append, so it only takes up
+ * an unused code.
+ *
+ * @author Group 160
+ * @version final
+ */
+public class AddressDictionary {
+
+    public static final String DIR_NAME = "dict";
+    public static final String PROPERTY = "roadregistry.addressDictionary";
+
+    static final String PREFIX = "@";
+
+    private final Segment streets;
+    private final Segment cities;
+    private final Segment states;
+    private final Segment countries;
+
+    /**
+     * Opens (or creates) the dictionaries in the given directory
+     */
+    public AddressDictionary(File dir) {
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        this.streets = new Segment(new File(dir, "streets.txt"));
+        this.cities = new Segment(new File(dir, "cities.txt"));
+        this.states = new Segment(new File(dir, "states.txt"));
+        this.countries = new Segment(new File(dir, "countries.txt"));
+    }
+
+    /**
+     * @return the encoded form of the address, adding new values to the dictionaries,
+     * or the plain text if the address is not in the five part format
+     */
+    public String encode(Address address) throws IOException {
+        if (!address.isStructured() || address.getNumber().startsWith(PREFIX)) {
+            return address.text();
+        }
+        return PREFIX + address.getNumber()
+            + "|" + streets.code(address.getStreet())
+            + "|" + cities.code(address.getCity())
+            + "|" + states.code(address.getState())
+            + "|" + countries.code(address.getCountry());
+    }
+
+    /**
+     * @return the address for encoded or plain text, with interned parts
+     * @throws UncheckedIOException if the encoded address has a code that is not in the dictionaries
+     */
+    public Address decode(String text) {
+        if (!text.startsWith(PREFIX)) {
+            return Address.of(text);
+        }
+        String[] parts = text.substring(PREFIX.length()).split("\\|", -1);
+        try {
+            if (parts.length != 5) {
+                throw new IOException("Encoded address needs five parts");
+            }
+            return Address.of(parts[0],
+                streets.value(Integer.parseInt(parts[1])),
+                cities.value(Integer.parseInt(parts[2])),
+                states.value(Integer.parseInt(parts[3])),
+                countries.value(Integer.parseInt(parts[4])));
+        } catch (IOException | NumberFormatException e) {
+            throw new UncheckedIOException(new IOException("Unknown address code in " + text + ": " + e.getMessage(), e));
+        }
+    }
+
+    /**
+     * @return number of distinct values stored, per part
+     */
+    public Map<String, Integer> sizes() {
+        Map<String, Integer> sizes = new LinkedHashMap<>();
+        sizes.put("streets", streets.size());
+        sizes.put("cities", cities.size());
+        sizes.put("states", states.size());
+        sizes.put("countries", countries.size());
+        return sizes;
+    }
+
+    /**
+     * One dictionary file, loaded into memory and read again for values other processes appended
+     */
+    private static final class Segment {
+        // One monitor per lock file, a FileLock cannot be taken twice in the same JVM
+        private static final Map<String, Object> LOCK_MONITORS = new ConcurrentHashMap<>();
+
+        private final File file;
+        private final File lockFile;
+        private final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> codes = new HashMap<>();
+        private long loadedBytes; // end of the last complete line read
+
+        Segment(File file) {
+            this.file = file;
+            this.lockFile = new File(file.getPath() + ".lock");
+            try {
+                reload();
+            } catch (IOException e) {
+                System.out.println("Error reading address dictionary " + file + ": " + e.getMessage());
+            }
+        }
+
+        synchronized int code(String value) throws IOException {
+            Integer code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+            if (value.contains("\n") || value.contains("\r")) {
+                throw new IOException("Address part contains a line break: " + value);
+            }
+            synchronized (LOCK_MONITORS.computeIfAbsent(lockFile.getAbsolutePath(), path -> new Object())) {
+                try (FileChannel lockChannel = FileChannel.open(lockFile.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    FileLock lock = lockChannel.lock();
+                    try {
+                        // Another process may have added the value, or left a line without its line break
+                        String torn = reload();
+                        code = codes.get(value);
+                        if (code != null) {
+                            return code;
+                        }
+                        String lines = (torn != null ? "\n" : "") + value + "\n";
+                        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                            ByteBuffer buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+                            while (buffer.hasRemaining()) {
+                                channel.write(buffer);
+                            }
+                            channel.force(false);
+                        }
+                        if (torn != null) {
+                            add(torn);
+                        }
+                        add(value);
+                        loadedBytes = file.length();
+                        return codes.get(value);
+                    } finally {
+                        lock.release();
+                    }
+                }
+            }
+        }
+
+        /**
+         * @throws IOException if the code is not in the file either
+         */
+        synchronized String value(int code) throws IOException {
+            if (code >= values.size()) {
+                reload();
+            }
+            if (code < 0 || code >= values.size()) {
+                throw new IOException("No code " + code + " in " + file);
+            }
+            return values.get(code);
+        }
+
+        synchronized int size() {
+            return values.size();
+        }
+
+        /**
+         * Reads the lines added since the last load
+         * @return the text after the last line break (a line still being written or cut off), or null
+         */
+        private String reload() throws IOException {
+            if (!file.exists() || file.length() <= loadedBytes) {
+                return null;
+            }
+            byte[] added;
+            try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+                added = new byte[(int) (in.length() - loadedBytes)];
+                in.seek(loadedBytes);
+                in.readFully(added);
+            }
+            int lineStart = 0;
+            for (int i = 0; i < added.length; i++) {
+                if (added[i] == '\n') {
+                    add(new String(added, lineStart, i - lineStart, StandardCharsets.UTF_8));
+                    lineStart = i + 1;
+                }
+            }
+            loadedBytes += lineStart;
+            return lineStart < added.length ? new String(added, lineStart, added.length - lineStart, StandardCharsets.UTF_8) : null;
+        }
+
+        private void add(String value) {
+            codes.putIfAbsent(value, values.size());
+            values.add(value);
+        }
+    }
+}
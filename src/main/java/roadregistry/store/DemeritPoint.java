@@ -0,0 +1,12 @@
+package roadregistry.store;
+
+import java.time.LocalDate;
+
+/**
+ * One offence: the person it belongs to, the date it happened and the points received.
+ *
+ * @author Group 160
+ * @version final
+ */
+public record DemeritPoint(String personID, LocalDate offenseDate, int points) {
+}
@@ -0,0 +1,700 @@
+package roadregistry.store;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Consumer;
+
+import roadregistry.Address;
+import roadregistry.PersonRecord;
+import roadregistry.SuspensionStatus;
+import roadregistry.index.PersonOffsetIndex;
+
+/**
+ * The original text file backend: people.txt ("###" separated) and demerit_points.txt ("|" separated).
+ * Offence lookups scan demerit_points.txt; adding a person appends a line, every other change to people
+ * rewrites the whole people file.
+ *
+ * A people line is ID###first###last###address###birthdate###isSuspended, optionally followed by the
+ * precomputed status ###points###threshold###validUntil (DD-MM-YYYY, or "-" if it never runs out).
+ * Lines written before the status columns existed are still read; their status is computed when first asked.
+ *
+ * Addresses are written in the encoded form of {@link AddressDictionary}, with the dictionaries in
+ * the "dict" directory next to the files. Plain addresses in older lines are still read.
+ * Set -Droadregistry.addressDictionary=false to write plain addresses.
+ *
+ * Lookups by ID go through a {@link PersonOffsetIndex} from ID to the byte offset of the person's line,
+ * so only that line is read. The index is memory-mapped from people.idx and survives restarts; it is
+ * rebuilt with one scan when the people file's version (size, modification time and file identity) no
+ * longer matches it (after a crash, or an edit by another program), and the line it points at is checked
+ * to still hold the ID. An ID the index does not have is reported missing if this store wrote the file
+ * last, or if the file was last modified well before the index was brought up to date: another program's
+ * rewrite of the same size within the clock tick of the modification time would not change the version,
+ * so then the file is indexed again or, when it was modified just now, scanned. Lookups run in parallel, rebuilds and writes one at a time.
+ * -Droadregistry.offsetIndex=memory keeps it in direct memory only, =false scans the file every time.
+ *
+ * The change feed offset the store has reached (see {@link RegistryStore#feedOffset()}) is kept in
+ * feed.offset as "offset|length", the length of demerit_points.txt when it was recorded. Offences are
+ * appended first and the offset after them, so offences past that length were written after the
+ * last recorded offset and are dropped by {@link #keepUpToFeedOffset()}.
+ *
+ * @author Group 160
+ * @version final
+ */
+public class FileRegistryStore implements RegistryStore {
+
+    public static final String PERSON_FILE_NAME = "people.txt";
+    public static final String DEMERIT_FILE_NAME = "demerit_points.txt";
+    public static final String INDEX_FILE_NAME = "people.idx";
+    public static final String FEED_OFFSET_FILE_NAME = "feed.offset";
+    public static final String OFFSET_INDEX_PROPERTY = "roadregistry.offsetIndex";
+
+    // Our group using "###" as the delimiter when saving data to the file.
+    // This is because the address field of assignment 4 already uses "|" between parts (e.g.32|Highland Street|Melbourne|Victoria|Australia.
+    // If we used "|" as the main separator, it would mess up the splitting when reading from file.
+    // So to avoid that conflict, we use "###" which is less likely to appear in normal data.
+    private static final String DELIMITER = "###";
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+    // Coarsest modification time tick of common file systems; a file modified this close to when the
+    // index was brought up to date may have changed since without its version changing
+    private static final long RACY_MILLIS = 2000;
+    // Shortest usual people line, so the line count estimated from the file size is rather too high than too low
+    private static final long ESTIMATED_LINE_BYTES = 64;
+
+    private final File personFile;
+    private final File demeritFile;
+    private final File feedOffsetFile;
+    private final AddressDictionary dictionary;
+    private final boolean encodeAddresses;
+    private final PersonOffsetIndex offsetIndex; // null when lookups scan the file
+    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private volatile long ownVersion = -1; // version of the people file this store wrote last, if still indexed
+
+    public FileRegistryStore(File dataDir) {
+        this(dataDir, !"false".equals(System.getProperty(AddressDictionary.PROPERTY)));
+    }
+
+    /**
+     * @param encodeAddresses write addresses dictionary encoded instead of as plain text
+     */
+    public FileRegistryStore(File dataDir, boolean encodeAddresses) {
+        if (!dataDir.exists()) {
+            dataDir.mkdirs();
+        }
+        this.personFile = new File(dataDir, PERSON_FILE_NAME);
+        this.demeritFile = new File(dataDir, DEMERIT_FILE_NAME);
+        this.feedOffsetFile = new File(dataDir, FEED_OFFSET_FILE_NAME);
+        File dictionaryDir = new File(dataDir, AddressDictionary.DIR_NAME);
+        // Without encoding the dictionaries are still needed to read lines written with it
+        this.dictionary = encodeAddresses || dictionaryDir.exists() ? new AddressDictionary(dictionaryDir) : null;
+        this.encodeAddresses = encodeAddresses;
+        this.offsetIndex = openOffsetIndex(new File(dataDir, INDEX_FILE_NAME));
+    }
+
+    private static PersonOffsetIndex openOffsetIndex(File file) {
+        String mode = System.getProperty(OFFSET_INDEX_PROPERTY, "file");
+        try {
+            switch (mode) {
+                case "false":
+                    return null;
+                case "memory":
+                    return PersonOffsetIndex.inMemory(0);
+                default:
+                    return PersonOffsetIndex.open(file.toPath(), 0);
+            }
+        } catch (IOException e) {
+            System.out.println("Error opening person index, lookups will scan the file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public PersonRecord findPerson(String personID) {
+        if (!personFile.exists()) {
+            return null;
+        }
+        if (offsetIndex != null && PersonOffsetIndex.isIndexable(personID)) {
+            try {
+                return findIndexed(personID);
+            } catch (IOException e) {
+                System.out.println("Error reading person index, scanning the file: " + e.getMessage());
+                indexLock.writeLock().lock();
+                try {
+                    offsetIndex.setDataVersion(-1);
+                } finally {
+                    indexLock.writeLock().unlock();
+                }
+            }
+        }
+        return scanForPerson(personID);
+    }
+
+    /**
+     * Looks the ID up in the offset index and reads just its line, rebuilding the index first if the
+     * people file changed since it was built
+     */
+    private PersonRecord findIndexed(String personID) throws IOException {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            BasicFileAttributes attributes = Files.readAttributes(personFile.toPath(), BasicFileAttributes.class);
+            long version = fileVersion(attributes);
+            long modified = attributes.lastModifiedTime().toMillis();
+            boolean current;
+            long offset;
+            long indexedAt;
+            indexLock.readLock().lock();
+            try {
+                current = offsetIndex.dataVersion() == version;
+                offset = current ? offsetIndex.get(personID) : -1;
+                indexedAt = offsetIndex.dataVersionTime();
+                if (current && offset < 0 && (version == ownVersion || indexedAt > modified + RACY_MILLIS)) {
+                    return null;
+                }
+            } finally {
+                indexLock.readLock().unlock();
+            }
+            if (offset >= 0) {
+                String line = readLineAt(offset);
+                String[] parts = line == null ? null : line.split(DELIMITER);
+                if (parts != null && parts.length >= 5 && parts[0].equals(personID)) {
+                    return parsePerson(parts);
+                }
+                // The file was changed without its version changing, index it again
+            } else if (current && System.currentTimeMillis() <= modified + RACY_MILLIS) {
+                // Modified so recently that a new index could not be trusted with a miss either
+                return scanForPerson(personID);
+            }
+            indexLock.writeLock().lock();
+            try {
+                // Unless another lookup indexed the file meanwhile
+                if (offsetIndex.dataVersion() != version || offsetIndex.dataVersionTime() == indexedAt) {
+                    rebuildIndex();
+                }
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+        }
+        return scanForPerson(personID);
+    }
+
+    private PersonRecord scanForPerson(String personID) {
+        try (BufferedReader reader = newReader(personFile)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(DELIMITER);
+                if (parts.length >= 5 && parts[0].equals(personID)) {
+                    return parsePerson(parts);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading person file: " + e.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public boolean insertPerson(PersonRecord person) {
+        long versionBefore = offsetIndex == null ? 0 : fileVersion(personFile);
+        long offset = personFile.length();
+        try (BufferedWriter writer = newWriter(personFile, true)) {
+            writer.write(formatPerson(person) + System.lineSeparator());
+        } catch (IOException e) {
+            System.out.println("Error saving person to file: " + e.getMessage());
+            return false;
+        }
+        if (offsetIndex != null) {
+            indexLock.writeLock().lock();
+            try {
+                // An index that was already stale is rebuilt on the next lookup instead
+                if (offsetIndex.dataVersion() == versionBefore) {
+                    try {
+                        if (PersonOffsetIndex.isIndexable(person.personID())) {
+                            offsetIndex.putIfAbsent(person.personID(), offset);
+                        }
+                        ownVersion = fileVersion(personFile);
+                        offsetIndex.setDataVersion(ownVersion);
+                    } catch (IOException e) {
+                        System.out.println("Error updating person index: " + e.getMessage());
+                        offsetIndex.setDataVersion(-1);
+                    }
+                }
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean replacePerson(String oldPersonID, PersonRecord person) {
+        return replacePeople(Map.of(oldPersonID, person));
+    }
+
+    /**
+     * Rewrites the people file once for the whole batch
+     */
+    @Override
+    public boolean replacePeople(Map<String, PersonRecord> people) {
+        if (!personFile.exists()) {
+            return false;
+        }
+        List<String> lines = new ArrayList<>();
+        List<String> ids = new ArrayList<>(); // ID of each line, null for lines lookups skip
+        Set<String> found = new HashSet<>();
+        try (BufferedReader reader = newReader(personFile)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(DELIMITER);
+                PersonRecord person = parts.length >= 5 ? people.get(parts[0]) : null;
+                if (person != null) {
+                    lines.add(formatPerson(person));
+                    ids.add(person.personID());
+                    found.add(parts[0]);
+                } else {
+                    lines.add(line);
+                    ids.add(parts.length >= 5 ? parts[0] : null);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading file for update: " + e.getMessage());
+            return false;
+        }
+        if (found.isEmpty()) {
+            return false;
+        }
+        // Written next to the file and moved over it, so concurrent readers see the old or the new file, never half of one
+        File tmp = new File(personFile.getPath() + ".tmp");
+        try {
+            try (BufferedWriter writer = newWriter(tmp, false)) {
+                for (String l : lines) {
+                    writer.write(l + System.lineSeparator());
+                }
+            }
+            Files.move(tmp.toPath(), personFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            reindex(lines, ids);
+            return found.size() == people.size();
+        } catch (IOException e) {
+            System.out.println("Error writing updated file: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void forEachPerson(Consumer<PersonRecord> action) {
+        if (!personFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = newReader(personFile)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(DELIMITER);
+                if (parts.length >= 5) {
+                    action.accept(parsePerson(parts));
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading person file: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean insertDemeritPoint(DemeritPoint point) {
+        return insertDemeritPoints(List.of(point));
+    }
+
+    /**
+     * Appends the whole batch with one write of the file
+     */
+    @Override
+    public boolean insertDemeritPoints(List<DemeritPoint> points) {
+        StringBuilder text = new StringBuilder();
+        for (DemeritPoint point : points) {
+            text.append(formatDemeritPoint(point)).append(System.lineSeparator());
+        }
+        try {
+            cutTornLine();
+            try (OutputStream out = new FileOutputStream(demeritFile, true)) {
+                out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error saving demerit points to file: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Deals with a last line that has no line end, so the next line is not glued to it: a complete offence
+     * (typed by hand) gets its line end, anything else is what a crash in the middle of an append left and is cut off
+     */
+    private void cutTornLine() throws IOException {
+        if (!demeritFile.exists()) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(demeritFile, "rw")) {
+            long length = file.length();
+            long end = length;
+            byte[] chunk = new byte[4096];
+            while (end > 0) {
+                int count = (int) Math.min(chunk.length, end);
+                file.seek(end - count);
+                file.readFully(chunk, 0, count);
+                int newline = lastIndexOf(chunk, count, (byte) '\n');
+                if (newline >= 0) {
+                    end = end - count + newline + 1;
+                    break;
+                }
+                end -= count;
+            }
+            if (end == length) {
+                return;
+            }
+            byte[] last = new byte[(int) Math.min(length - end, 1 << 16)];
+            file.seek(end);
+            file.readFully(last);
+            if (isOffenceLine(new String(last, StandardCharsets.UTF_8))) {
+                file.seek(length);
+                file.write(System.lineSeparator().getBytes(StandardCharsets.UTF_8));
+            } else {
+                System.out.println("Cutting off half written line at the end of " + demeritFile);
+                file.setLength(end);
+            }
+        }
+    }
+
+    private static boolean isOffenceLine(String line) {
+        String[] parts = line.trim().split("\\|");
+        try {
+            LocalDate.parse(parts[1], DATE_FORMATTER);
+            Integer.parseInt(parts[2]);
+            return parts.length == 3;
+        } catch (ArrayIndexOutOfBoundsException | DateTimeParseException | NumberFormatException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public long feedOffset() {
+        try {
+            long[] saved = savedFeedOffset();
+            return saved == null ? -1 : saved[0];
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("Error reading feed offset: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    @Override
+    public void setFeedOffset(long offset) {
+        File tmp = new File(feedOffsetFile.getPath() + ".tmp");
+        try {
+            Files.writeString(tmp.toPath(), offset + "|" + demeritFile.length(), StandardCharsets.UTF_8);
+            Files.move(tmp.toPath(), feedOffsetFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Error saving feed offset: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the offset in feed.offset and the length of demerit_points.txt when it was saved
+     * (-1 if not noted), or null if there is no feed.offset
+     */
+    private long[] savedFeedOffset() throws IOException {
+        if (!feedOffsetFile.exists()) {
+            return null;
+        }
+        String[] parts = Files.readString(feedOffsetFile.toPath(), StandardCharsets.UTF_8).trim().split("\\|");
+        return new long[] { Long.parseLong(parts[0]), parts.length > 1 ? Long.parseLong(parts[1]) : -1 };
+    }
+
+    /**
+     * Cuts demerit_points.txt back to the length feed.offset noted. For a copy of another store's files
+     * taken while it was written, copy feed.offset first, then demerit_points.txt, then people.txt: the
+     * copy then holds exactly the offences before the copied offset. People changed after that offset
+     * may already be in the copy; applying their changes again is harmless.
+     */
+    @Override
+    public long keepUpToFeedOffset() {
+        try {
+            long[] saved = savedFeedOffset();
+            if (saved == null || saved[1] < 0) {
+                cutTornLine();
+                return saved == null ? -1 : saved[0];
+            }
+            if (demeritFile.exists() && demeritFile.length() > saved[1]) {
+                System.out.println("Dropping offences written after feed offset " + saved[0] + " from " + demeritFile);
+                try (RandomAccessFile file = new RandomAccessFile(demeritFile, "rw")) {
+                    file.setLength(saved[1]);
+                }
+            }
+            return saved[0];
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("Error keeping demerit points up to the feed offset: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    private static int lastIndexOf(byte[] bytes, int to, byte value) {
+        for (int i = to - 1; i >= 0; i--) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public List<DemeritPoint> findDemeritPoints(String personID, LocalDate from, LocalDate to) {
+        List<DemeritPoint> result = new ArrayList<>();
+        forEachDemeritPoint(point -> {
+            if (point.personID().equals(personID)
+                    && !point.offenseDate().isBefore(from) && !point.offenseDate().isAfter(to)) {
+                result.add(point);
+            }
+        });
+        result.sort(Comparator.comparing(DemeritPoint::offenseDate));
+        return result;
+    }
+
+    @Override
+    public void forEachDemeritPoint(Consumer<DemeritPoint> action) {
+        if (!demeritFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = newReader(demeritFile)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\\|");
+                if (parts.length >= 3) {
+                    LocalDate date = LocalDate.parse(parts[1], DATE_FORMATTER);
+                    action.accept(new DemeritPoint(parts[0], date, Integer.parseInt(parts[2])));
+                }
+            }
+        } catch (IOException | NumberFormatException | DateTimeParseException e) {
+            System.out.println("Error loading demerit points: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Indexes a people file this store just wrote, from its lines, without reading it back
+     */
+    private void reindex(List<String> lines, List<String> ids) {
+        if (offsetIndex == null) {
+            return;
+        }
+        indexLock.writeLock().lock();
+        try {
+            try {
+                offsetIndex.clear(lines.size());
+                int separator = System.lineSeparator().getBytes(StandardCharsets.UTF_8).length;
+                long offset = 0;
+                for (int i = 0; i < lines.size(); i++) {
+                    String id = ids.get(i);
+                    if (id != null && PersonOffsetIndex.isIndexable(id)) {
+                        offsetIndex.putIfAbsent(id, offset);
+                    }
+                    offset += lines.get(i).getBytes(StandardCharsets.UTF_8).length + separator;
+                }
+                ownVersion = fileVersion(personFile);
+                offsetIndex.setDataVersion(ownVersion);
+            } catch (IOException e) {
+                System.out.println("Error updating person index: " + e.getMessage());
+                offsetIndex.setDataVersion(-1);
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes every line of the people file with one scan, tracking the byte offset where each line starts.
+     * Called holding the index write lock.
+     */
+    private void rebuildIndex() throws IOException {
+        long version = fileVersion(personFile);
+        offsetIndex.clear(personFile.length() / ESTIMATED_LINE_BYTES);
+        try (InputStream in = new FileInputStream(personFile)) {
+            byte[] chunk = new byte[1 << 16];
+            byte[] line = new byte[256];
+            int length = 0;
+            long lineStart = 0;
+            long position = 0;
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                int from = 0;
+                for (int i = 0; i < read; i++) {
+                    if (chunk[i] != '\n') {
+                        continue;
+                    }
+                    line = append(line, length, chunk, from, i - from);
+                    length += i - from;
+                    indexLine(line, length, lineStart);
+                    length = 0;
+                    lineStart = position + i + 1;
+                    from = i + 1;
+                }
+                line = append(line, length, chunk, from, read - from);
+                length += read - from;
+                position += read;
+            }
+            if (length > 0) {
+                indexLine(line, length, lineStart);
+            }
+        }
+        offsetIndex.setDataVersion(version);
+    }
+
+    private static byte[] append(byte[] line, int length, byte[] bytes, int from, int count) {
+        if (length + count > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, length + count));
+        }
+        System.arraycopy(bytes, from, line, length, count);
+        return line;
+    }
+
+    private void indexLine(byte[] line, int length, long offset) throws IOException {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        String[] parts = new String(line, 0, length, StandardCharsets.UTF_8).split(DELIMITER);
+        if (parts.length >= 5 && PersonOffsetIndex.isIndexable(parts[0])) {
+            offsetIndex.putIfAbsent(parts[0], offset);
+        }
+    }
+
+    /**
+     * @return the line starting at this byte offset of the people file, or null past its end
+     */
+    private String readLineAt(long offset) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(personFile, "r")) {
+            if (offset >= file.length()) {
+                return null;
+            }
+            file.seek(offset);
+            byte[] buffer = new byte[512];
+            int length = 0;
+            while (true) {
+                int read = file.read(buffer, length, buffer.length - length);
+                if (read < 0) {
+                    break;
+                }
+                int end = indexOf(buffer, length, length + read, (byte) '\n');
+                length += read;
+                if (end >= 0) {
+                    length = end;
+                    break;
+                }
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+            if (length > 0 && buffer[length - 1] == '\r') {
+                length--;
+            }
+            return new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the offset index out so the next start can use it without a rebuild
+     */
+    @Override
+    public void close() {
+        if (offsetIndex != null) {
+            offsetIndex.close();
+        }
+    }
+
+    /**
+     * Size and modification time of both files, so edits by other programs are noticed too
+     */
+    @Override
+    public long dataVersion() {
+        return fileVersion(personFile) * 31 + fileVersion(demeritFile);
+    }
+
+    private static long fileVersion(File file) {
+        try {
+            return fileVersion(Files.readAttributes(file.toPath(), BasicFileAttributes.class));
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Modification time, size and identity (inode), so a file replaced by another one is noticed too
+     */
+    private static long fileVersion(BasicFileAttributes attributes) {
+        return (attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) * 31 + attributes.size()) * 31
+            + Objects.hashCode(attributes.fileKey());
+    }
+
+    /**
+     * Builds a person from the "###" split parts of one line
+     */
+    private PersonRecord parsePerson(String[] parts) {
+        boolean suspended = parts.length > 5 && Boolean.parseBoolean(parts[5]);
+        SuspensionStatus status = null;
+        if (parts.length > 8) {
+            try {
+                LocalDate validUntil = "-".equals(parts[8]) ? null : LocalDate.parse(parts[8], DATE_FORMATTER);
+                status = new SuspensionStatus(Integer.parseInt(parts[6]), Integer.parseInt(parts[7]), validUntil);
+            } catch (NumberFormatException | DateTimeParseException e) {
+                // Treat a damaged status like a missing one, it is recomputed on the next query
+                status = null;
+            }
+        }
+        Address address = dictionary == null ? Address.of(parts[3]) : dictionary.decode(parts[3]);
+        return new PersonRecord(parts[0], parts[1], parts[2], address, parts[4], suspended, status);
+    }
+
+    private String formatPerson(PersonRecord person) throws IOException {
+        String line = String.join(DELIMITER,
+            person.personID(),
+            person.firstName(),
+            person.lastName(),
+            encodeAddresses && person.location() != null ? dictionary.encode(person.location()) : person.address(),
+            person.birthdate(),
+            String.valueOf(person.isSuspended())
+        );
+        SuspensionStatus status = person.status();
+        if (status == null) {
+            return line;
+        }
+        return String.join(DELIMITER, line,
+            String.valueOf(status.points()),
+            String.valueOf(status.threshold()),
+            status.validUntil() == null ? "-" : status.validUntil().format(DATE_FORMATTER)
+        );
+    }
+
+    private String formatDemeritPoint(DemeritPoint point) {
+        return String.format("%s|%s|%d", point.personID(), point.offenseDate().format(DATE_FORMATTER), point.points());
+    }
+
+    private static BufferedReader newReader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    }
+
+    private static BufferedWriter newWriter(File file, boolean append) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,432 @@
+package roadregistry.store;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * A small embedded key-value engine that keeps all data in one append-only log file.
+ *
+ * Every put or delete appends a record to the end of the log, so a write is a single sequential append.
+ * A sorted in-memory index maps each live key to where its latest value sits in the log, which gives
+ * point lookups with one positioned read and range scans in key order.
+ *
+ * The log starts with a 16 byte header: magic "RRKV" (4 bytes), unused (4), generation (8).
+ * Record layout: crc (4 bytes) | key length (4) | value length (4, -1 means deleted) | key | value.
+ * The crc covers everything after it. The top bit of the key length marks a record that is followed by
+ * more records of the same {@link #putAll(Map)}, so a batch only counts once its last record is complete.
+ * When the log is opened we replay it to rebuild the index and cut off a half written batch at the end
+ * (for example after a crash).
+ *
+ * Only one process writes the log: it holds an exclusive lock on the file next to it ending in ".lock".
+ * Whoever opens the log while another process holds that lock (an export or another tool) gets a
+ * read-only view of what was written up to then, and leaves the end of the log alone, since a record
+ * that looks half written may still be being written.
+ *
+ * Old values stay in the log until {@link #compact()} copies the live records into a new file.
+ * This happens automatically when more than half of the log is garbage. The generation in the header
+ * grows by the length of the log it replaces, so {@link #version()} never repeats an earlier value.
+ *
+ * @author Group 160
+ * @version final
+ */
+public class LogStructuredKeyValueStore implements Closeable {
+
+    private static final int HEADER_SIZE = 12;
+    private static final int MAGIC = 0x524B5256; // "RRKV"
+    private static final int FILE_HEADER_SIZE = 16;
+    private static final int TOMBSTONE = -1;
+    private static final int CONTINUED = 0x80000000;
+    // Do not bother compacting small logs
+    private static final long MIN_COMPACTION_BYTES = 1 << 20;
+
+    private final Path logPath;
+    private final boolean syncOnWrite;
+    private final NavigableMap<String, Location> index = new TreeMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final FileChannel lockChannel;
+    private final FileLock writerLock; // null when another process writes the log
+    private final boolean readOnly;
+
+    private FileChannel channel;
+    private long generation;
+    private long endOfLog;
+    private long liveBytes;
+
+    /**
+     * Where the current value of a key is stored in the log
+     */
+    private record Location(long recordOffset, int keyLength, int valueLength) {
+        long valueOffset() {
+            return recordOffset + HEADER_SIZE + keyLength;
+        }
+        long recordSize() {
+            return HEADER_SIZE + keyLength + valueLength;
+        }
+    }
+
+    /**
+     * Opens (or creates) the log file and rebuilds the index from it. If another process is writing
+     * the log, it is opened read-only instead, see {@link #isReadOnly()}.
+     * @param syncOnWrite force every write to disk before returning
+     */
+    public LogStructuredKeyValueStore(Path logPath, boolean syncOnWrite) throws IOException {
+        this.logPath = logPath;
+        this.syncOnWrite = syncOnWrite;
+        if (logPath.getParent() != null) {
+            Files.createDirectories(logPath.getParent());
+        }
+        this.lockChannel = FileChannel.open(logPath.resolveSibling(logPath.getFileName() + ".lock"),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock acquired;
+        try {
+            acquired = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            acquired = null; // held by another store in this process
+        }
+        this.writerLock = acquired;
+        this.readOnly = acquired == null;
+        try {
+            this.channel = readOnly
+                ? FileChannel.open(logPath, StandardOpenOption.READ)
+                : FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            recover();
+        } catch (IOException e) {
+            closeLock();
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if another process writes the log; puts, deletes and compaction then fail
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * @return the value stored for the key, or null if there is none
+     */
+    public byte[] get(String key) throws IOException {
+        lock.readLock().lock();
+        try {
+            Location location = index.get(key);
+            return location == null ? null : readValue(location);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(String key, byte[] value) throws IOException {
+        append(Collections.singletonMap(key, value));
+    }
+
+    public void delete(String key) throws IOException {
+        append(Collections.singletonMap(key, null));
+    }
+
+    /**
+     * Puts all entries, in the map's order, with a single write to the log
+     * (a null value deletes the key). After a crash either all of them are there or none.
+     */
+    public void putAll(Map<String, byte[]> entries) throws IOException {
+        if (!entries.isEmpty()) {
+            append(entries);
+        }
+    }
+
+    /**
+     * Visits all keys with fromKey <= key < toKey in key order
+     */
+    public void scan(String fromKey, String toKey, BiConsumer<String, byte[]> action) throws IOException {
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, Location> entry : index.subMap(fromKey, true, toKey, false).entrySet()) {
+                action.accept(entry.getKey(), readValue(entry.getValue()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of live keys
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return size of the log file in bytes, including garbage
+     */
+    public long logSize() {
+        lock.readLock().lock();
+        try {
+            return endOfLog;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * A number that goes up with every write and is never the same for two different contents of the log,
+     * also across compactions and restarts: the generation from the header plus the length of the log
+     */
+    public long version() {
+        lock.readLock().lock();
+        try {
+            return generation + endOfLog;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the log so it only contains the latest value of every live key
+     */
+    public void compact() throws IOException {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            Path tmpPath = logPath.resolveSibling(logPath.getFileName() + ".compact");
+            NavigableMap<String, Location> newIndex = new TreeMap<>();
+            long newGeneration = generation + endOfLog;
+            long position = FILE_HEADER_SIZE;
+            try (FileChannel out = FileChannel.open(tmpPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer fileHeader = fileHeader(newGeneration);
+                while (fileHeader.hasRemaining()) {
+                    out.write(fileHeader);
+                }
+                for (Map.Entry<String, Location> entry : index.entrySet()) {
+                    byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                    byte[] value = readValue(entry.getValue());
+                    ByteBuffer record = encode(key, value);
+                    while (record.hasRemaining()) {
+                        out.write(record);
+                    }
+                    newIndex.put(entry.getKey(), new Location(position, key.length, value.length));
+                    position += HEADER_SIZE + key.length + value.length;
+                }
+                out.force(true);
+            }
+            channel.close();
+            Files.move(tmpPath, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index.clear();
+            index.putAll(newIndex);
+            generation = newGeneration;
+            endOfLog = position;
+            liveBytes = position - FILE_HEADER_SIZE;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            channel.close();
+        } finally {
+            closeLock();
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void closeLock() throws IOException {
+        if (writerLock != null && writerLock.isValid()) {
+            writerLock.release();
+        }
+        lockChannel.close();
+    }
+
+    private void checkWritable() throws IOException {
+        if (readOnly) {
+            throw new IOException("Registry log " + logPath + " is being written by another process, it is open read-only");
+        }
+    }
+
+    private static ByteBuffer fileHeader(long generation) {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(0, MAGIC);
+        header.putLong(8, generation);
+        return header;
+    }
+
+    private void append(Map<String, byte[]> entries) throws IOException {
+        checkWritable();
+        List<ByteBuffer> records = new ArrayList<>(entries.size());
+        int length = 0;
+        int remaining = entries.size();
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            ByteBuffer record = encode(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue(), --remaining > 0);
+            records.add(record);
+            length += record.limit();
+        }
+        ByteBuffer batch = ByteBuffer.allocate(length);
+        records.forEach(batch::put);
+        batch.flip();
+        lock.writeLock().lock();
+        try {
+            long offset = endOfLog;
+            while (batch.hasRemaining()) {
+                channel.write(batch, offset + batch.position());
+            }
+            if (syncOnWrite) {
+                channel.force(false);
+            }
+            endOfLog = offset + length;
+            int i = 0;
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                ByteBuffer record = records.get(i++);
+                Location previous;
+                if (entry.getValue() == null) {
+                    previous = index.remove(entry.getKey());
+                } else {
+                    previous = index.put(entry.getKey(), new Location(offset, record.getInt(4) & ~CONTINUED, entry.getValue().length));
+                    liveBytes += record.limit();
+                }
+                if (previous != null) {
+                    liveBytes -= previous.recordSize();
+                }
+                offset += record.limit();
+            }
+            if (endOfLog > MIN_COMPACTION_BYTES && liveBytes * 2 < endOfLog) {
+                compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static ByteBuffer encode(byte[] key, byte[] value) {
+        return encode(key, value, false);
+    }
+
+    private static ByteBuffer encode(byte[] key, byte[] value, boolean continued) {
+        int valueLength = value == null ? TOMBSTONE : value.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + key.length + Math.max(valueLength, 0));
+        record.position(4);
+        record.putInt(continued ? key.length | CONTINUED : key.length);
+        record.putInt(valueLength);
+        record.put(key);
+        if (value != null) {
+            record.put(value);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, record.capacity() - 4);
+        record.putInt(0, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private byte[] readValue(Location location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(location.valueLength());
+        readFully(buffer, location.valueOffset());
+        return buffer.array();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of log " + logPath);
+            }
+        }
+    }
+
+    /**
+     * Replays the whole log to rebuild the index. A torn or corrupt record ends the replay
+     * and everything from the start of its batch onwards is cut off (only by the writer).
+     */
+    private void recover() throws IOException {
+        long size = channel.size();
+        long position = FILE_HEADER_SIZE;
+        ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        if (size >= FILE_HEADER_SIZE) {
+            readFully(fileHeader, 0);
+        }
+        if (size >= FILE_HEADER_SIZE && fileHeader.getInt(0) == MAGIC) {
+            generation = fileHeader.getLong(8);
+        } else if (size >= FILE_HEADER_SIZE) {
+            throw new IOException(logPath + " is not a registry log");
+        } else if (readOnly) {
+            endOfLog = size; // nothing written yet, or the writer is still writing the header
+            return;
+        } else {
+            // New log, or one whose header was never completely written
+            channel.truncate(0);
+            ByteBuffer header = fileHeader(0);
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(false);
+            endOfLog = FILE_HEADER_SIZE;
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        // Records of a batch are only applied once its last record has been read
+        Map<String, Location> batch = new LinkedHashMap<>();
+        long readEnd = position;
+        while (readEnd + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, readEnd);
+            int crc = header.getInt(0);
+            int keyField = header.getInt(4);
+            int keyLength = keyField & ~CONTINUED;
+            int valueLength = header.getInt(8);
+            long recordSize = HEADER_SIZE + (long) keyLength + Math.max(valueLength, 0);
+            if (valueLength < TOMBSTONE || readEnd + recordSize > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate((int) recordSize - HEADER_SIZE);
+            readFully(body, readEnd + HEADER_SIZE);
+            CRC32 check = new CRC32();
+            check.update(header.array(), 4, HEADER_SIZE - 4);
+            check.update(body.array());
+            if ((int) check.getValue() != crc) {
+                break;
+            }
+            String key = new String(body.array(), 0, keyLength, StandardCharsets.UTF_8);
+            batch.put(key, new Location(readEnd, keyLength, valueLength));
+            readEnd += recordSize;
+            if ((keyField & CONTINUED) == 0) {
+                for (Map.Entry<String, Location> entry : batch.entrySet()) {
+                    Location location = entry.getValue();
+                    Location previous;
+                    if (location.valueLength() == TOMBSTONE) {
+                        previous = index.remove(entry.getKey());
+                    } else {
+                        previous = index.put(entry.getKey(), location);
+                        liveBytes += location.recordSize();
+                    }
+                    if (previous != null) {
+                        liveBytes -= previous.recordSize();
+                    }
+                }
+                batch.clear();
+                position = readEnd;
+            }
+        }
+        if (position < size && !readOnly) {
+            System.out.println("Cutting off damaged end of log " + logPath + " at byte " + position);
+            channel.truncate(position);
+        }
+        endOfLog = position;
+    }
+}
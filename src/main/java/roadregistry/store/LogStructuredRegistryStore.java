@@ -0,0 +1,274 @@
+package roadregistry.store;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import roadregistry.Address;
+import roadregistry.PersonRecord;
+import roadregistry.SuspensionStatus;
+
+/**
+ * Registry backend on top of {@link LogStructuredKeyValueStore}.
+ *
+ * Keys are laid out so that the key order of the engine matches the queries we need:
+ *   "p/" + personID                                  -> person fields
+ *   "d/" + personID + NUL + offence day + NUL + seq   -> points
+ * All offences of one person are next to each other and sorted by date, so
+ * findDemeritPoints(personID, from, to) is a range scan instead of a full file scan.
+ * The sequence number keeps two offences on the same day apart.
+ *   "m/feed"                                         -> change feed offset reached (8 bytes)
+ *
+ * Addresses are stored in the encoded form of {@link AddressDictionary}, sharing the "dict"
+ * directory next to the log with the text file store (unless -Droadregistry.addressDictionary=false).
+ *
+ * A store opened while another process writes the same log only reads: its writes return false.
+ *
+ * @author Group 160
+ * @version final
+ */
+public class LogStructuredRegistryStore implements RegistryStore {
+
+    public static final String LOG_FILE_NAME = "registry.log";
+
+    private static final String PERSON_PREFIX = "p/";
+    private static final String DEMERIT_PREFIX = "d/";
+    private static final String FEED_OFFSET_KEY = "m/feed";
+    private static final char SEPARATOR = '\u0000';
+
+    private final LogStructuredKeyValueStore kv;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AddressDictionary dictionary;
+    private final boolean encodeAddresses;
+
+    public LogStructuredRegistryStore(File dataDir) throws IOException {
+        this(dataDir.toPath().resolve(LOG_FILE_NAME), false);
+    }
+
+    public LogStructuredRegistryStore(Path logPath, boolean syncOnWrite) throws IOException {
+        this.kv = new LogStructuredKeyValueStore(logPath, syncOnWrite);
+        File dictionaryDir = logPath.toAbsolutePath().resolveSibling(AddressDictionary.DIR_NAME).toFile();
+        this.encodeAddresses = !"false".equals(System.getProperty(AddressDictionary.PROPERTY));
+        this.dictionary = encodeAddresses || dictionaryDir.exists() ? new AddressDictionary(dictionaryDir) : null;
+        // Continue the offence sequence after the highest one already stored
+        kv.scan(DEMERIT_PREFIX, prefixEnd(DEMERIT_PREFIX), (key, value) -> {
+            long sequence = Long.parseLong(key.substring(key.lastIndexOf(SEPARATOR) + 1), 16);
+            nextSequence.accumulateAndGet(sequence + 1, Math::max);
+        });
+    }
+
+    @Override
+    public PersonRecord findPerson(String personID) {
+        try {
+            byte[] value = kv.get(PERSON_PREFIX + personID);
+            return value == null ? null : decodePerson(value);
+        } catch (IOException e) {
+            System.out.println("Error reading person from log: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public boolean insertPerson(PersonRecord person) {
+        try {
+            kv.put(PERSON_PREFIX + person.personID(), encodePerson(person));
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error saving person to log: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized boolean replacePerson(String oldPersonID, PersonRecord person) {
+        try {
+            if (kv.get(PERSON_PREFIX + oldPersonID) == null) {
+                return false;
+            }
+            // A new ID is written and the old one deleted in one record batch, so a crash keeps exactly one
+            Map<String, byte[]> entries = new LinkedHashMap<>();
+            entries.put(PERSON_PREFIX + person.personID(), encodePerson(person));
+            if (!oldPersonID.equals(person.personID())) {
+                entries.put(PERSON_PREFIX + oldPersonID, null);
+            }
+            kv.putAll(entries);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error updating person in log: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void forEachPerson(Consumer<PersonRecord> action) {
+        try {
+            kv.scan(PERSON_PREFIX, prefixEnd(PERSON_PREFIX), (key, value) -> action.accept(decodePerson(value)));
+        } catch (IOException e) {
+            System.out.println("Error reading people from log: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean insertDemeritPoint(DemeritPoint point) {
+        try {
+            kv.put(demeritKey(point), new byte[] { (byte) point.points() });
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error saving demerit points to log: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean insertDemeritPoints(List<DemeritPoint> points) {
+        return insertDemeritPoints(points, -1);
+    }
+
+    /**
+     * Writes the offences and the feed offset as one append to the log
+     */
+    @Override
+    public boolean insertDemeritPoints(List<DemeritPoint> points, long feedOffset) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (DemeritPoint point : points) {
+            entries.put(demeritKey(point), new byte[] { (byte) point.points() });
+        }
+        if (feedOffset >= 0) {
+            entries.put(FEED_OFFSET_KEY, ByteBuffer.allocate(8).putLong(0, feedOffset).array());
+        }
+        try {
+            kv.putAll(entries);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error saving demerit points to log: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public long feedOffset() {
+        try {
+            byte[] value = kv.get(FEED_OFFSET_KEY);
+            return value == null ? -1 : ByteBuffer.wrap(value).getLong();
+        } catch (IOException e) {
+            System.out.println("Error reading feed offset from log: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    @Override
+    public void setFeedOffset(long offset) {
+        try {
+            kv.put(FEED_OFFSET_KEY, ByteBuffer.allocate(8).putLong(0, offset).array());
+        } catch (IOException e) {
+            System.out.println("Error saving feed offset to log: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public List<DemeritPoint> findDemeritPoints(String personID, LocalDate from, LocalDate to) {
+        String prefix = demeritKeyPrefix(personID);
+        List<DemeritPoint> result = new ArrayList<>();
+        try {
+            // The upper bound is the day after "to", so every sequence number of that day is included
+            kv.scan(prefix + dayKey(from), prefix + dayKey(to) + (char) (SEPARATOR + 1),
+                (key, value) -> result.add(decodeDemeritPoint(key, value)));
+        } catch (IOException e) {
+            System.out.println("Error loading demerit points from log: " + e.getMessage());
+        }
+        return result;
+    }
+
+    @Override
+    public void forEachDemeritPoint(Consumer<DemeritPoint> action) {
+        try {
+            kv.scan(DEMERIT_PREFIX, prefixEnd(DEMERIT_PREFIX), (key, value) -> action.accept(decodeDemeritPoint(key, value)));
+        } catch (IOException e) {
+            System.out.println("Error loading demerit points from log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The log's version: it grows with every append and keeps growing across compactions
+     */
+    @Override
+    public long dataVersion() {
+        return kv.version();
+    }
+
+    /**
+     * Rewrites the log without superseded values
+     */
+    public void compact() throws IOException {
+        kv.compact();
+    }
+
+    @Override
+    public void close() {
+        try {
+            kv.close();
+        } catch (IOException e) {
+            System.out.println("Error closing registry log: " + e.getMessage());
+        }
+    }
+
+    private String demeritKey(DemeritPoint point) {
+        return demeritKeyPrefix(point.personID()) + dayKey(point.offenseDate())
+                + SEPARATOR + String.format("%016x", nextSequence.getAndIncrement());
+    }
+
+    private static String demeritKeyPrefix(String personID) {
+        return DEMERIT_PREFIX + personID + SEPARATOR;
+    }
+
+    /**
+     * Epoch day as 16 hex digits with the sign bit flipped, so string order equals date order
+     * (also for dates before 1970)
+     */
+    private static String dayKey(LocalDate date) {
+        return String.format("%016x", date.toEpochDay() ^ Long.MIN_VALUE);
+    }
+
+    private static String prefixEnd(String prefix) {
+        return prefix.substring(0, prefix.length() - 1) + (char) (prefix.charAt(prefix.length() - 1) + 1);
+    }
+
+    private static DemeritPoint decodeDemeritPoint(String key, byte[] value) {
+        int personEnd = key.indexOf(SEPARATOR, DEMERIT_PREFIX.length());
+        String personID = key.substring(DEMERIT_PREFIX.length(), personEnd);
+        long day = Long.parseUnsignedLong(key.substring(personEnd + 1, personEnd + 17), 16) ^ Long.MIN_VALUE;
+        return new DemeritPoint(personID, LocalDate.ofEpochDay(day), value[0]);
+    }
+
+    private byte[] encodePerson(PersonRecord person) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(person.personID());
+            out.writeUTF(person.firstName());
+            out.writeUTF(person.lastName());
+            out.writeUTF(encodeAddresses && person.location() != null ? dictionary.encode(person.location()) : person.address());
+            out.writeUTF(person.birthdate());
+            out.writeBoolean(person.isSuspended());
+            SuspensionStatus.write(out, person.status());
+        }
+        return bytes.toByteArray();
+    }
+
+    private PersonRecord decodePerson(byte[] value) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+            String personID = in.readUTF();
+            String firstName = in.readUTF();
+            String lastName = in.readUTF();
+            String address = in.readUTF();
+            Address location = dictionary == null ? Address.of(address) : dictionary.decode(address);
+            return new PersonRecord(personID, firstName, lastName, location, in.readUTF(), in.readBoolean(),
+                SuspensionStatus.read(in));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package roadregistry.store;
+
+import java.io.Closeable;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import roadregistry.PersonRecord;
+
+/**
+ * Storage backend for people and their demerit points.
+ * RegistryService only talks to this interface, so the backend can be picked per deployment
+ * (see {@link RegistryStores}) without touching the validation rules.
+ *
+ * @author Group 160
+ * @version final
+ */
+public interface RegistryStore extends Closeable {
+
+    /**
+     * Finds a person by ID
+     * @return the stored person, or null if there is no person with this ID
+     */
+    PersonRecord findPerson(String personID);
+
+    /**
+     * Stores a new person. The caller already checked that the ID is not taken.
+     * @return true if the person was written
+     */
+    boolean insertPerson(PersonRecord person);
+
+    /**
+     * Replaces the person stored under oldPersonID (the ID itself may change)
+     * @return true if a person was found and replaced
+     */
+    boolean replacePerson(String oldPersonID, PersonRecord person);
+
+    /**
+     * Batch form of {@link #replacePerson}: replaces every person in the map (old ID -> new record).
+     * Backends that rewrite a whole file per replace should override this to rewrite it once.
+     * @return true if every person was found and replaced
+     */
+    default boolean replacePeople(Map<String, PersonRecord> people) {
+        boolean all = true;
+        for (Map.Entry<String, PersonRecord> entry : people.entrySet()) {
+            all &= replacePerson(entry.getKey(), entry.getValue());
+        }
+        return all;
+    }
+
+    /**
+     * Visits every stored person once, in no particular order
+     */
+    void forEachPerson(Consumer<PersonRecord> action);
+
+    /**
+     * Stores one offence
+     * @return true if the offence was written
+     */
+    boolean insertDemeritPoint(DemeritPoint point);
+
+    /**
+     * Batch form of {@link #insertDemeritPoint}, stores the offences in list order
+     * @return true if every offence was written
+     */
+    default boolean insertDemeritPoints(List<DemeritPoint> points) {
+        boolean all = true;
+        for (DemeritPoint point : points) {
+            all &= insertDemeritPoint(point);
+        }
+        return all;
+    }
+
+    /**
+     * {@link #insertDemeritPoints(List)} and then {@link #setFeedOffset}. Backends that can should write
+     * both at once; otherwise a crash in between leaves offences past the recorded offset, which
+     * {@link #keepUpToFeedOffset()} drops again.
+     * @return true if every offence was written
+     */
+    default boolean insertDemeritPoints(List<DemeritPoint> points, long feedOffset) {
+        if (!insertDemeritPoints(points)) {
+            return false;
+        }
+        setFeedOffset(feedOffset);
+        return true;
+    }
+
+    /**
+     * Offset in the change feed up to which this store holds every change, as recorded with
+     * {@link #setFeedOffset}, or -1 if none was recorded. A service can apply the feed from here on
+     * to catch up after a crash, and a copy of the store knows where in the feed it stands.
+     */
+    default long feedOffset() {
+        return -1;
+    }
+
+    /**
+     * Records that every change before this feed offset is stored. Default does nothing.
+     */
+    default void setFeedOffset(long offset) {
+    }
+
+    /**
+     * Drops offences stored after the last recorded feed offset (left by a crash, or in a copy taken
+     * while the store was written), so that applying the feed from the offset adds each offence once.
+     * Default drops nothing.
+     * @return the feed offset, as {@link #feedOffset()}
+     */
+    default long keepUpToFeedOffset() {
+        return feedOffset();
+    }
+
+    /**
+     * Range scan over (personID, offenseDate): all offences of one person with from <= date <= to,
+     * ordered by offence date
+     */
+    List<DemeritPoint> findDemeritPoints(String personID, LocalDate from, LocalDate to);
+
+    /**
+     * All offences of one person, ordered by offence date
+     */
+    default List<DemeritPoint> findDemeritPoints(String personID) {
+        return findDemeritPoints(personID, LocalDate.MIN, LocalDate.MAX);
+    }
+
+    /**
+     * Visits every stored offence once, in no particular order
+     */
+    void forEachDemeritPoint(Consumer<DemeritPoint> action);
+
+    /**
+     * A number that changes whenever the stored data changes, including changes made by another process
+     * or by hand. Caches built from the store remember it to notice when they went stale.
+     * It must not be the same before and after a write. Default: always 0 (the store cannot tell).
+     */
+    default long dataVersion() {
+        return 0;
+    }
+
+    /**
+     * Releases files held by the backend. Default does nothing.
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,62 @@
+package roadregistry.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Picks the storage backend for a deployment.
+ *
+ * System properties:
+ *   roadregistry.store   - "file" (default, people.txt and demerit_points.txt) or "kv" (embedded log-structured store)
+ *   roadregistry.dataDir - directory holding the data files, default "data"
+ *
+ * @author Group 160
+ * @version final
+ */
+public final class RegistryStores {
+
+    public static final String STORE_PROPERTY = "roadregistry.store";
+    public static final String DATA_DIR_PROPERTY = "roadregistry.dataDir";
+
+    public static final String FILE = "file";
+    public static final String KV = "kv";
+
+    private static RegistryStore defaultStore;
+
+    private RegistryStores() {
+    }
+
+    /**
+     * Opens a backend of the given kind in dataDir
+     * @param kind "file" or "kv"
+     */
+    public static RegistryStore open(String kind, File dataDir) {
+        switch (kind) {
+            case FILE:
+                return new FileRegistryStore(dataDir);
+            case KV:
+                try {
+                    return new LogStructuredRegistryStore(dataDir);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot open registry log in " + dataDir, e);
+                }
+            default:
+                throw new IllegalArgumentException("Unknown registry store: " + kind);
+        }
+    }
+
+    /**
+     * The store configured by the system properties, opened once per JVM
+     */
+    public static synchronized RegistryStore defaultStore() {
+        if (defaultStore == null) {
+            defaultStore = open(System.getProperty(STORE_PROPERTY, FILE), defaultDataDir());
+        }
+        return defaultStore;
+    }
+
+    public static File defaultDataDir() {
+        return new File(System.getProperty(DATA_DIR_PROPERTY, "data"));
+    }
+}
@@ -0,0 +1,51 @@
+package roadregistry.trace;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import roadregistry.store.RegistryStore;
+
+/**
+ * A fingerprint of everything a store holds, independent of storage order and store kind, so two runs of
+ * the same workload can be compared. Covers the stored fields of every person (including the suspension
+ * flag) and every offence; the precomputed status figures are left out since they depend on the day.
+ *
+ * @author Group 160
+ * @version final
+ */
+public record StateChecksum(int people, long peopleCrc, int demeritPoints, long demeritCrc) {
+
+    public static StateChecksum of(RegistryStore store) {
+        List<String> people = new ArrayList<>();
+        store.forEachPerson(p -> people.add(p.personID() + "|" + p.firstName() + "|" + p.lastName() + "|"
+            + p.address() + "|" + p.birthdate() + "|" + p.isSuspended()));
+        List<String> offences = new ArrayList<>();
+        store.forEachDemeritPoint(d -> offences.add(d.personID() + "|" + d.offenseDate() + "|" + d.points()));
+        return new StateChecksum(people.size(), crc(people), offences.size(), crc(offences));
+    }
+
+    private static long crc(List<String> lines) {
+        Collections.sort(lines);
+        CRC32 crc = new CRC32();
+        for (String line : lines) {
+            crc.update(line.getBytes(StandardCharsets.UTF_8));
+            crc.update('\n');
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * @return people-crc/offences-crc in hex, the form --expect takes
+     */
+    public String hex() {
+        return String.format("%08x-%08x", peopleCrc, demeritCrc);
+    }
+
+    @Override
+    public String toString() {
+        return hex() + " (" + people + " people, " + demeritPoints + " offences)";
+    }
+}
@@ -0,0 +1,182 @@
+package roadregistry.trace;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import roadregistry.PersonRecord;
+
+/**
+ * Records the calls made through {@link roadregistry.Person} (arguments, result, start and duration) into a
+ * trace file that {@link WorkloadReplay} can run again. See {@link WorkloadTrace} for the format.
+ *
+ * Recording is off unless the property roadregistry.trace names a file (or {@link #start} is called). When off,
+ * the hooks cost one volatile read. Records are buffered and written when the recorder is stopped or the JVM exits.
+ *
+ * @author Group 160
+ * @version final
+ */
+public final class WorkloadRecorder implements Closeable {
+
+    public static final String PROPERTY = "roadregistry.trace";
+
+    private static volatile WorkloadRecorder current;
+
+    static {
+        String path = System.getProperty(PROPERTY);
+        if (path != null && !path.isBlank()) {
+            WorkloadRecorder recorder = start(Path.of(path));
+            if (recorder != null) {
+                Runtime.getRuntime().addShutdownHook(new Thread(recorder::close));
+            }
+        }
+    }
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final long startNanos = System.nanoTime();
+    private long lastAtNanos;
+    private long recorded;
+    private boolean closed;
+
+    private WorkloadRecorder(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), 1 << 16));
+        out.writeInt(WorkloadTrace.MAGIC);
+        out.writeByte(WorkloadTrace.FORMAT_VERSION);
+        out.writeLong(System.currentTimeMillis());
+        strings.put(null, 1);
+    }
+
+    /**
+     * Starts recording into the file, replacing a recording already running
+     *
+     * @return the recorder, or null if the file could not be created
+     */
+    public static synchronized WorkloadRecorder start(Path file) {
+        stop();
+        try {
+            current = new WorkloadRecorder(file);
+            return current;
+        } catch (IOException e) {
+            System.out.println("Could not start trace " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stops recording and writes out what is buffered
+     */
+    public static synchronized void stop() {
+        WorkloadRecorder recorder = current;
+        current = null;
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+
+    public static boolean isRecording() {
+        return current != null;
+    }
+
+    /**
+     * @return start time to pass to the record methods once the call returns
+     */
+    public static long begin() {
+        return current == null ? 0 : System.nanoTime();
+    }
+
+    public static void addPerson(long begin, PersonRecord person, boolean result) {
+        WorkloadRecorder recorder = current;
+        if (recorder != null) {
+            recorder.write(WorkloadTrace.Op.ADD_PERSON, begin, result, null, person, null, 0);
+        }
+    }
+
+    public static void updatePersonalDetails(long begin, String oldPersonID, PersonRecord person, boolean result) {
+        WorkloadRecorder recorder = current;
+        if (recorder != null) {
+            recorder.write(WorkloadTrace.Op.UPDATE_PERSONAL_DETAILS, begin, result, oldPersonID, person, null, 0);
+        }
+    }
+
+    public static void addDemeritPoints(long begin, String personID, String offenseDate, int points, boolean result) {
+        WorkloadRecorder recorder = current;
+        if (recorder != null) {
+            recorder.write(WorkloadTrace.Op.ADD_DEMERIT_POINTS, begin, result, personID, null, offenseDate, points);
+        }
+    }
+
+    /**
+     * @return operations recorded so far
+     */
+    public synchronized long recorded() {
+        return recorded;
+    }
+
+    private synchronized void write(WorkloadTrace.Op op, long begin, boolean result, String personID,
+                                    PersonRecord person, String offenseDate, int points) {
+        if (closed || begin == 0) {
+            return; // started before recording was switched on
+        }
+        long duration = System.nanoTime() - begin;
+        long at = begin - startNanos;
+        try {
+            out.writeByte(op.ordinal());
+            WorkloadTrace.writeVarLong(out, WorkloadTrace.zigzagEncode(at - lastAtNanos));
+            WorkloadTrace.writeVarLong(out, duration);
+            WorkloadTrace.writeVarLong(out, Thread.currentThread().getId());
+            out.writeBoolean(result);
+            if (person != null) {
+                if (op == WorkloadTrace.Op.UPDATE_PERSONAL_DETAILS) {
+                    writeString(personID);
+                }
+                writeString(person.personID());
+                writeString(person.firstName());
+                writeString(person.lastName());
+                writeString(person.address());
+                writeString(person.birthdate());
+            } else {
+                writeString(personID);
+                writeString(offenseDate);
+                WorkloadTrace.writeVarLong(out, WorkloadTrace.zigzagEncode(points));
+            }
+            lastAtNanos = at;
+            recorded++;
+        } catch (IOException e) {
+            System.out.println("Trace write failed, recording stopped: " + e.getMessage());
+            closed = true;
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        Integer index = strings.get(value);
+        if (index != null) {
+            WorkloadTrace.writeVarLong(out, index);
+            return;
+        }
+        WorkloadTrace.writeVarLong(out, 0);
+        out.writeUTF(value);
+        strings.put(value, strings.size() + 1);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            System.out.println("Could not close trace: " + e.getMessage());
+        }
+    }
+}
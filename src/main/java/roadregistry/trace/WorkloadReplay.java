@@ -0,0 +1,195 @@
+package roadregistry.trace;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+import roadregistry.RegistryService;
+import roadregistry.store.RegistryStores;
+
+/**
+ * Runs a recorded workload (see {@link WorkloadRecorder}) again against a fresh data directory, and reports
+ * throughput, latency percentiles next to the recorded ones, how many calls now return something else than
+ * when recorded, and a checksum of the final state. A slower run points to a performance regression; a
+ * mismatch or a different checksum for the same trace points to a behaviour change.
+ *
+ * Calls are spread over the worker threads by person, following ID changes, so the calls of one person run
+ * in the recorded order whatever the concurrency. With a speed-up each call waits for its recorded start
+ * time divided by the speed-up; with 0 calls run back to back. "Today" is set back to the recording day.
+ *
+ * Usage: java roadregistry.trace.WorkloadReplay trace [--speedup N] [--concurrency N] [--store file|kv]
+ *        [--data dir] [--expect checksum]
+ *
+ * @author Group 160
+ * @version final
+ */
+public class WorkloadReplay {
+
+    /**
+     * What one replay did
+     *
+     * @param latencies  nanos per call, in trace order
+     * @param mismatches calls that returned something else than when recorded
+     */
+    public record Result(int operations, long elapsedNanos, long[] latencies, int mismatches, StateChecksum checksum) {
+
+        public double throughput() {
+            return operations / (elapsedNanos / 1e9);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Usage: WorkloadReplay trace [--speedup N] [--concurrency N] [--store file|kv] [--data dir] [--expect checksum]");
+            System.exit(2);
+        }
+        double speedup = 0;
+        int concurrency = 1;
+        String store = System.getProperty(RegistryStores.STORE_PROPERTY, RegistryStores.FILE);
+        File dir = null;
+        String expect = null;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--speedup" -> speedup = Double.parseDouble(args[i + 1]);
+                case "--concurrency" -> concurrency = Integer.parseInt(args[i + 1]);
+                case "--store" -> store = args[i + 1];
+                case "--data" -> dir = new File(args[i + 1]);
+                case "--expect" -> expect = args[i + 1];
+                default -> System.out.println("Ignoring unknown option " + args[i]);
+            }
+        }
+        if (dir == null) {
+            dir = Files.createTempDirectory("roadregistry-replay").toFile();
+        } else if (dir.exists() && Objects.requireNonNull(dir.list()).length > 0) {
+            System.out.println("Data directory must be empty: " + dir);
+            System.exit(2);
+        }
+
+        WorkloadTrace trace = WorkloadTrace.read(Path.of(args[0]));
+        System.out.printf("Replaying %d calls on %s (%s store), speed-up %s, %d threads%n", trace.events().size(),
+            dir, store, speedup > 0 ? speedup + "x" : "none", concurrency);
+        Result result;
+        try (RegistryService service = new RegistryService(RegistryStores.open(store, dir), dir)) {
+            result = replay(trace, service, speedup, concurrency);
+        }
+        report(trace, result);
+        if (expect != null && !expect.equalsIgnoreCase(result.checksum().hex())) {
+            System.out.println("Checksum differs from expected " + expect);
+            System.exit(1);
+        }
+        if (result.mismatches() > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Replays the trace against the service, which should start out empty
+     */
+    public static Result replay(WorkloadTrace trace, RegistryService service, double speedup, int concurrency) {
+        List<WorkloadTrace.Event> events = trace.events();
+        service.setClock(Clock.offset(Clock.systemDefaultZone(),
+            Duration.ofMillis(trace.startMillis() - System.currentTimeMillis())));
+
+        // The calls of one person go to one worker; an ID change keeps the worker of the old ID
+        List<List<Integer>> work = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, concurrency); i++) {
+            work.add(new ArrayList<>());
+        }
+        Map<String, Integer> workerOf = new HashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            WorkloadTrace.Event event = events.get(i);
+            int worker = workerOf.computeIfAbsent(String.valueOf(event.personID()),
+                id -> Math.floorMod(id.hashCode(), work.size()));
+            work.get(worker).add(i);
+            if (event.op() == WorkloadTrace.Op.UPDATE_PERSONAL_DETAILS && event.succeeded()) {
+                workerOf.put(String.valueOf(event.person().personID()), worker);
+            }
+        }
+
+        long[] latencies = new long[events.size()];
+        boolean[] mismatched = new boolean[events.size()];
+        long start = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+        for (List<Integer> indexes : work) {
+            Thread thread = new Thread(() -> {
+                for (int i : indexes) {
+                    WorkloadTrace.Event event = events.get(i);
+                    if (speedup > 0) {
+                        long due = start + (long) (event.atNanos() / speedup);
+                        for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    }
+                    long begin = System.nanoTime();
+                    boolean succeeded = execute(service, event);
+                    latencies[i] = System.nanoTime() - begin;
+                    mismatched[i] = succeeded != event.succeeded();
+                }
+            }, "replay-" + threads.size());
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int mismatches = 0;
+        for (int i = 0; i < mismatched.length; i++) {
+            if (mismatched[i]) {
+                if (mismatches++ < 10) {
+                    WorkloadTrace.Event event = events.get(i);
+                    System.out.println("Mismatch: " + event.op() + " " + event.personID() + " recorded "
+                        + event.succeeded() + ", replayed " + !event.succeeded());
+                }
+            }
+        }
+        return new Result(events.size(), elapsed, latencies, mismatches, StateChecksum.of(service.getStore()));
+    }
+
+    private static boolean execute(RegistryService service, WorkloadTrace.Event event) {
+        return switch (event.op()) {
+            case ADD_PERSON -> service.addPerson(event.person());
+            case UPDATE_PERSONAL_DETAILS -> service.updatePersonalDetails(event.personID(), event.person()) != null;
+            case ADD_DEMERIT_POINTS -> RegistryService.SUCCESS.equals(
+                service.addDemeritPoints(event.personID(), event.offenseDate(), event.points()));
+        };
+    }
+
+    private static void report(WorkloadTrace trace, Result result) {
+        List<WorkloadTrace.Event> events = trace.events();
+        System.out.printf("%d calls in %.2f s: %.0f calls/s%n", result.operations(), result.elapsedNanos() / 1e9, result.throughput());
+        System.out.printf("%-24s %8s %12s %12s %12s %12s%n", "latency us", "calls", "p50", "p99", "recorded p50", "recorded p99");
+        for (WorkloadTrace.Op op : WorkloadTrace.Op.values()) {
+            List<Long> replayed = new ArrayList<>();
+            List<Long> recorded = new ArrayList<>();
+            for (int i = 0; i < events.size(); i++) {
+                if (events.get(i).op() == op) {
+                    replayed.add(result.latencies()[i]);
+                    recorded.add(events.get(i).durationNanos());
+                }
+            }
+            if (replayed.isEmpty()) {
+                continue;
+            }
+            Collections.sort(replayed);
+            Collections.sort(recorded);
+            System.out.printf("%-24s %8d %12.1f %12.1f %12.1f %12.1f%n", op, replayed.size(),
+                percentile(replayed, 0.5), percentile(replayed, 0.99), percentile(recorded, 0.5), percentile(recorded, 0.99));
+        }
+        System.out.println("Mismatched results: " + result.mismatches());
+        System.out.println("Final state checksum: " + result.checksum());
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        return sorted.get(Math.min(sorted.size() - 1, (int) (sorted.size() * p))) / 1e3;
+    }
+}
@@ -0,0 +1,163 @@
+package roadregistry.trace;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import roadregistry.PersonRecord;
+
+/**
+ * The trace file format written by {@link WorkloadRecorder}, and its reader.
+ *
+ * Header: magic "RRTR", format version byte, wall clock millis at the start of the trace.
+ * Then one record per operation:
+ *   op byte | start (nanos after the previous record's start, zigzag varint) | duration (varint nanos)
+ *   | thread (varint) | succeeded byte | the operation's arguments as strings (and points as varint)
+ * Strings go through a table built while writing: the first time a string appears it is written in full
+ * (varint 0, then UTF), after that only as varint index + 1; the table starts with null. IDs, addresses
+ * and dates repeat a lot in a real workload, so most arguments take one or two bytes.
+ *
+ * @author Group 160
+ * @version final
+ */
+public final class WorkloadTrace {
+
+    static final int MAGIC = 0x52525452; // "RRTR"
+    static final int FORMAT_VERSION = 1;
+
+    public enum Op {
+        ADD_PERSON, UPDATE_PERSONAL_DETAILS, ADD_DEMERIT_POINTS
+    }
+
+    /**
+     * One recorded call
+     *
+     * @param atNanos     start of the call, nanos after the start of the trace
+     * @param thread      ID of the calling thread, calls of one thread were sequential
+     * @param succeeded   what the call returned (true, "Success")
+     * @param personID    the person the call was for (for updates: the old ID)
+     * @param person      the details passed in, for add and update; null for demerit points
+     * @param offenseDate DD-MM-YYYY as passed in, for demerit points
+     */
+    public record Event(Op op, long atNanos, long durationNanos, long thread, boolean succeeded,
+                        String personID, PersonRecord person, String offenseDate, int points) {
+    }
+
+    private final long startMillis;
+    private final List<Event> events;
+
+    private WorkloadTrace(long startMillis, List<Event> events) {
+        this.startMillis = startMillis;
+        this.events = events;
+    }
+
+    /**
+     * @return wall clock time the recording started at
+     */
+    public long startMillis() {
+        return startMillis;
+    }
+
+    /**
+     * @return the recorded calls, ordered by start time
+     */
+    public List<Event> events() {
+        return events;
+    }
+
+    /**
+     * Reads a whole trace. A record cut off at the end (the recording process died) is ignored.
+     */
+    public static WorkloadTrace read(Path file) throws IOException {
+        List<Event> events = new ArrayList<>();
+        long startMillis;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a workload trace: " + file);
+            }
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported trace version " + version);
+            }
+            startMillis = in.readLong();
+            List<String> strings = new ArrayList<>();
+            long at = 0;
+            while (true) {
+                int opCode = in.read();
+                if (opCode < 0) {
+                    break;
+                }
+                try {
+                    Op op = Op.values()[opCode];
+                    at += zigzagDecode(readVarLong(in));
+                    long duration = readVarLong(in);
+                    long thread = readVarLong(in);
+                    boolean succeeded = in.readBoolean();
+                    switch (op) {
+                        case ADD_PERSON, UPDATE_PERSONAL_DETAILS -> {
+                            String personID = op == Op.UPDATE_PERSONAL_DETAILS ? readString(in, strings) : null;
+                            PersonRecord person = new PersonRecord(readString(in, strings), readString(in, strings),
+                                readString(in, strings), readString(in, strings), readString(in, strings), false);
+                            events.add(new Event(op, at, duration, thread, succeeded,
+                                personID == null ? person.personID() : personID, person, null, 0));
+                        }
+                        case ADD_DEMERIT_POINTS -> events.add(new Event(op, at, duration, thread, succeeded,
+                            readString(in, strings), null, readString(in, strings), (int) zigzagDecode(readVarLong(in))));
+                    }
+                } catch (EOFException | IndexOutOfBoundsException e) {
+                    break;
+                }
+            }
+        }
+        events.sort(Comparator.comparingLong(Event::atNanos));
+        return new WorkloadTrace(startMillis, Collections.unmodifiableList(events));
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+
+    static long zigzagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long zigzagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * The table starts with null, so a null argument is written as index 1
+     */
+    private static String readString(DataInputStream in, List<String> strings) throws IOException {
+        if (strings.isEmpty()) {
+            strings.add(null);
+        }
+        long index = readVarLong(in);
+        if (index == 0) {
+            String value = in.readUTF();
+            strings.add(value);
+            return value;
+        }
+        return strings.get((int) index - 1);
+    }
+}
@@ -0,0 +1,117 @@
+package roadregistry.validation;
+
+import java.util.List;
+
+import roadregistry.PersonValidator;
+
+/**
+ * Validates many personIDs in one call, with the same rules as {@link PersonValidator#isValidPersonID}.
+ *
+ * IDs are packed back to back, 10 bytes each in ISO-8859-1, and the answer is a bitmap: bit i % 64 of word
+ * i / 64 is set when ID i is valid. With the jdk.incubator.vector module present (--add-modules
+ * jdk.incubator.vector) the check runs on SIMD registers, otherwise one ID at a time; the property
+ * roadregistry.simd=false forces the scalar path.
+ *
+ * @author Group 160
+ * @version final
+ */
+public final class BulkPersonIdValidator {
+
+    public static final int ID_LENGTH = 10;
+
+    private static final PersonIdKernel SCALAR = new ScalarPersonIdKernel();
+    private static final PersonIdKernel DEFAULT = loadVectorKernel();
+
+    private BulkPersonIdValidator() {
+    }
+
+    private static PersonIdKernel loadVectorKernel() {
+        if ("false".equals(System.getProperty("roadregistry.simd"))
+            || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            return (PersonIdKernel) Class.forName("roadregistry.validation.VectorPersonIdKernel")
+                .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.out.println("Vector API not usable, validating personIDs one at a time: " + e);
+            return SCALAR;
+        }
+    }
+
+    /**
+     * @return "scalar", or "vector" and the register size in use
+     */
+    public static String implementation() {
+        return DEFAULT.name();
+    }
+
+    /**
+     * @param ids    packed IDs, 10 bytes each
+     * @param offset where the first ID starts
+     * @param count  number of IDs
+     * @return the validity bitmap
+     */
+    public static long[] validate(byte[] ids, int offset, int count) {
+        return validate(DEFAULT, ids, offset, count);
+    }
+
+    /**
+     * Same as {@link #validate(byte[], int, int)} on the scalar path, whatever is available
+     */
+    public static long[] validateScalar(byte[] ids, int offset, int count) {
+        return validate(SCALAR, ids, offset, count);
+    }
+
+    private static long[] validate(PersonIdKernel kernel, byte[] ids, int offset, int count) {
+        if (offset < 0 || count < 0 || offset + (long) count * ID_LENGTH > ids.length) {
+            throw new IndexOutOfBoundsException("Not " + count + " IDs from " + offset + " in " + ids.length + " bytes");
+        }
+        long[] bitmap = new long[(count + 63) >>> 6];
+        kernel.validate(ids, offset, count, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Validates a list of IDs. Null IDs and IDs of another length are invalid.
+     */
+    public static long[] validate(List<String> personIDs) {
+        byte[] packed = new byte[personIDs.size() * ID_LENGTH];
+        int[] wide = null; // IDs with characters past ISO-8859-1, checked one by one
+        int wideCount = 0;
+        for (int i = 0; i < personIDs.size(); i++) {
+            String personID = personIDs.get(i);
+            if (personID == null || personID.length() != ID_LENGTH) {
+                continue; // zero bytes never pass
+            }
+            for (int j = 0; j < ID_LENGTH; j++) {
+                char c = personID.charAt(j);
+                if (c > 0xFF) {
+                    if (wide == null) {
+                        wide = new int[personIDs.size()];
+                    }
+                    wide[wideCount++] = i;
+                    break;
+                }
+                packed[i * ID_LENGTH + j] = (byte) c;
+            }
+        }
+        long[] bitmap = validate(packed, 0, personIDs.size());
+        for (int w = 0; w < wideCount; w++) {
+            int i = wide[w];
+            if (PersonValidator.isValidPersonID(personIDs.get(i))) {
+                bitmap[i >>> 6] |= 1L << i;
+            } else {
+                bitmap[i >>> 6] &= ~(1L << i);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return whether ID i is marked valid in the bitmap
+     */
+    public static boolean isValid(long[] bitmap, int i) {
+        return (bitmap[i >>> 6] & (1L << i)) != 0;
+    }
+}
@@ -0,0 +1,19 @@
+package roadregistry.validation;
+
+/**
+ * Checks personIDs packed as 10 bytes each (ISO-8859-1), the way {@link roadregistry.PersonValidator#isValidPersonID}
+ * would check the same text.
+ *
+ * @author Group 160
+ * @version final
+ */
+interface PersonIdKernel {
+
+    /**
+     * Sets bit i of the bitmap (bit i % 64 of word i / 64) for every valid ID i of the count starting at
+     * ids[offset]; bits of invalid IDs are left alone
+     */
+    void validate(byte[] ids, int offset, int count, long[] bitmap);
+
+    String name();
+}
@@ -0,0 +1,65 @@
+package roadregistry.validation;
+
+/**
+ * One ID at a time, with a 256-entry table of character classes built from the same Character methods the
+ * validator uses, so the result matches it for every byte value.
+ *
+ * @author Group 160
+ * @version final
+ */
+final class ScalarPersonIdKernel implements PersonIdKernel {
+
+    static final byte LEADING_DIGIT = 1;  // '2'..'9'
+    static final byte SPECIAL = 2;        // not a letter or digit
+    static final byte UPPER = 4;          // upper case letter
+
+    static final byte[] CLASSES = new byte[256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            char c = (char) b;
+            if (Character.isDigit(c) && c >= '2' && c <= '9') {
+                CLASSES[b] |= LEADING_DIGIT;
+            }
+            if (!Character.isLetterOrDigit(c)) {
+                CLASSES[b] |= SPECIAL;
+            }
+            if (Character.isUpperCase(c)) {
+                CLASSES[b] |= UPPER;
+            }
+        }
+    }
+
+    @Override
+    public void validate(byte[] ids, int offset, int count, long[] bitmap) {
+        validate(ids, offset, 0, count, bitmap);
+    }
+
+    /**
+     * Checks IDs first..first+count-1 of the batch, which starts at ids[offset]
+     */
+    static void validate(byte[] ids, int offset, int first, int count, long[] bitmap) {
+        for (int i = first; i < first + count; i++) {
+            if (isValid(ids, offset + i * 10)) {
+                bitmap[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    static boolean isValid(byte[] ids, int at) {
+        if ((CLASSES[ids[at] & 0xFF] & CLASSES[ids[at + 1] & 0xFF] & LEADING_DIGIT) == 0
+            || (CLASSES[ids[at + 8] & 0xFF] & CLASSES[ids[at + 9] & 0xFF] & UPPER) == 0) {
+            return false;
+        }
+        int special = 0;
+        for (int j = at + 2; j < at + 8; j++) {
+            special += CLASSES[ids[j] & 0xFF] & SPECIAL;
+        }
+        return special >= 2 * SPECIAL;
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
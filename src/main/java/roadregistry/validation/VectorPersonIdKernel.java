@@ -0,0 +1,117 @@
+package roadregistry.validation;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Checks IDs with the incubating Vector API. Only {@link BulkPersonIdValidator} loads this class, and only when
+ * the jdk.incubator.vector module is present (run with --add-modules jdk.incubator.vector).
+ *
+ * Every byte is classified on SIMD registers into a score: 1 for a special character where one may be,
+ * 16 for a character that breaks the rule of its position (leading digit, closing upper case letter), 0
+ * otherwise. The position of each lane is known because the 10-byte layout repeats every 5 vectors. An ID is
+ * then valid when its 10 scores add up to 2..15, which is one 8-byte and one 2-byte read per ID. Batches
+ * are scored in chunks small enough to stay in L1; a chunk with a byte over 127 goes through the scalar table.
+ * (Mask to bitmap conversion, VectorMask.toLong, is not compiled to SIMD instructions on JDK 17, so it is
+ * avoided.)
+ *
+ * @author Group 160
+ * @version final
+ */
+final class VectorPersonIdKernel implements PersonIdKernel {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED.length() <= 64
+        ? ByteVector.SPECIES_PREFERRED : ByteVector.SPECIES_512;
+    private static final int LANES = SPECIES.length();
+    private static final int CHUNK_IDS = 512; // 5120 bytes, a whole number of 5-vector blocks for 8..64 lanes
+    private static final byte SPECIAL = 1;
+    private static final byte BROKEN = 16;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle SHORTS = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final ByteVector[] specialLanes = new ByteVector[5];
+    private final ByteVector[] digitLanes = new ByteVector[5];
+    private final ByteVector[] upperLanes = new ByteVector[5];
+    private final ByteVector zero = ByteVector.zero(SPECIES);
+
+    VectorPersonIdKernel() {
+        for (int k = 0; k < 5; k++) {
+            byte[] special = new byte[LANES];
+            byte[] digit = new byte[LANES];
+            byte[] upper = new byte[LANES];
+            for (int lane = 0; lane < LANES; lane++) {
+                int position = (k * LANES + lane) % 10;
+                if (position < 2) {
+                    digit[lane] = BROKEN;
+                } else if (position < 8) {
+                    special[lane] = SPECIAL;
+                } else {
+                    upper[lane] = BROKEN;
+                }
+            }
+            specialLanes[k] = ByteVector.fromArray(SPECIES, special, 0);
+            digitLanes[k] = ByteVector.fromArray(SPECIES, digit, 0);
+            upperLanes[k] = ByteVector.fromArray(SPECIES, upper, 0);
+        }
+    }
+
+    @Override
+    public void validate(byte[] ids, int offset, int count, long[] bitmap) {
+        byte[] scores = new byte[CHUNK_IDS * 10 + 8];
+        int chunks = count / CHUNK_IDS;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int first = chunk * CHUNK_IDS;
+            if (score(ids, offset + first * 10, scores)) {
+                ScalarPersonIdKernel.validate(ids, offset, first, CHUNK_IDS, bitmap);
+                continue;
+            }
+            for (int i = 0; i < CHUNK_IDS; i += 64) {
+                long word = 0;
+                for (int j = 0; j < 64; j++) {
+                    int at = (i + j) * 10;
+                    long eight = (long) LONGS.get(scores, at);
+                    int two = (short) SHORTS.get(scores, at + 8);
+                    int sum = (int) ((eight * 0x0101010101010101L) >>> 56) + (two & 0xFF) + ((two >>> 8) & 0xFF);
+                    word |= (sum >= 2 && sum < 16 ? 1L : 0L) << j;
+                }
+                bitmap[(first + i) >>> 6] |= word;
+            }
+        }
+        ScalarPersonIdKernel.validate(ids, offset, chunks * CHUNK_IDS, count - chunks * CHUNK_IDS, bitmap);
+    }
+
+    /**
+     * Scores one chunk of IDs starting at ids[start]
+     *
+     * @return true if a byte over 127 was seen, and the scores can not be used
+     */
+    private boolean score(byte[] ids, int start, byte[] scores) {
+        VectorMask<Byte> nonAscii = SPECIES.maskAll(false);
+        for (int at = 0, k = 0; at < CHUNK_IDS * 10; at += LANES, k = k == 4 ? 0 : k + 1) {
+            ByteVector v = ByteVector.fromArray(SPECIES, ids, start + at);
+            nonAscii = nonAscii.or(v.compare(VectorOperators.LT, (byte) 0));
+            ByteVector folded = v.lanewise(VectorOperators.OR, (byte) 0x20);
+            VectorMask<Byte> letter = folded.compare(VectorOperators.GE, (byte) 'a').and(folded.compare(VectorOperators.LE, (byte) 'z'));
+            VectorMask<Byte> digit = v.compare(VectorOperators.GE, (byte) '0').and(v.compare(VectorOperators.LE, (byte) '9'));
+            VectorMask<Byte> leading = v.compare(VectorOperators.GE, (byte) '2').and(digit);
+            VectorMask<Byte> upper = v.compare(VectorOperators.LE, (byte) 'Z').and(letter);
+            zero.blend(specialLanes[k], letter.or(digit).not())
+                .lanewise(VectorOperators.OR, digitLanes[k].blend(zero, leading))
+                .lanewise(VectorOperators.OR, upperLanes[k].blend(zero, upper))
+                .intoArray(scores, at);
+        }
+        return nonAscii.anyTrue();
+    }
+
+    @Override
+    public String name() {
+        return "vector " + SPECIES.vectorBitSize() + "-bit";
+    }
+}
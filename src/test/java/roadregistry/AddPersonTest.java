@@ -7,6 +7,9 @@ import java.io.File;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 
+import roadregistry.store.FileRegistryStore;
+import roadregistry.store.RegistryStores;
+
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.BeforeAll;
 /**
@@ -20,12 +23,12 @@ import org.junit.jupiter.api.BeforeAll;
  */
 public class AddPersonTest {
 
-    private static final String PEOPLE_FILE = "data/people.txt";
+    private static final File PEOPLE_FILE = new File(RegistryStores.defaultDataDir(), FileRegistryStore.PERSON_FILE_NAME);
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy");
 
     @BeforeAll
     public static void clearPeopleFileBeforeAllTests() {
-        File file = new File("data/people.txt"); // hoặc dùng biến hằng nếu có
+        File file = PEOPLE_FILE;
         if (file.exists()) {
             file.delete();
         }
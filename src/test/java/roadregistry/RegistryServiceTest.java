@@ -0,0 +1,206 @@
+package roadregistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+import roadregistry.store.FileRegistryStore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test cases for RegistryService on its own store (not the shared data directory)
+ * - Tests suspension for drivers under and over 21
+ * - Tests that two offences on the same day are both counted
+ * - Tests that updating details keeps the suspension status
+ * - Tests the bloom filter fast path for new IDs and IDs written behind its back
+ * - Tests that a session adding only offences leaves a bloom filter the next start can use
+ * - Tests the precomputed status and its lazy recomputation
+ * - Tests that the date checks of the operations follow the service clock
+ * - Tests that reading the metrics never rebuilds the bloom filter
+ */
+public class RegistryServiceTest {
+
+    @TempDir
+    File dataDir;
+
+    private FileRegistryStore store;
+    private RegistryService service;
+
+    @BeforeEach
+    public void setUp() {
+        store = new FileRegistryStore(dataDir);
+        service = new RegistryService(store, dataDir);
+    }
+
+    private String birthdateForAge(int years) {
+        return LocalDate.now().minusYears(years).minusMonths(1).format(PersonValidator.DATE_FORMATTER);
+    }
+
+    private String daysAgo(int days) {
+        return LocalDate.now().minusDays(days).format(PersonValidator.DATE_FORMATTER);
+    }
+
+    // test 1: Under 21 with 7 points in two years is suspended
+    @Test
+    public void testUnder21SuspendedAbove6Points() {
+        assertTrue(service.addPerson(new PersonRecord("56!@abCDXY", "Alice", "Nguyen",
+            "12|Old St|Melbourne|Victoria|Australia", birthdateForAge(19), false)));
+
+        assertEquals("Success", service.addDemeritPoints("56!@abCDXY", daysAgo(30), 4));
+        assertFalse(service.findPerson("56!@abCDXY").isSuspended());
+        assertEquals("Success", service.addDemeritPoints("56!@abCDXY", daysAgo(10), 3));
+        assertTrue(service.findPerson("56!@abCDXY").isSuspended());
+    }
+
+    // test 2: Over 21 needs more than 12 points, offences on the same day both count
+    @Test
+    public void testOver21SameDayOffencesCounted() {
+        service.addPerson(new PersonRecord("57##xYQZAB", "John", "Smith",
+            "88|Main Rd|Melbourne|Victoria|Australia", birthdateForAge(40), false));
+
+        service.addDemeritPoints("57##xYQZAB", daysAgo(5), 6);
+        service.addDemeritPoints("57##xYQZAB", daysAgo(5), 6);
+        assertFalse(service.findPerson("57##xYQZAB").isSuspended());
+        service.addDemeritPoints("57##xYQZAB", daysAgo(5), 1);
+        assertTrue(service.findPerson("57##xYQZAB").isSuspended());
+    }
+
+    // test 3: Updating details keeps the stored suspension, whatever the caller passes in
+    @Test
+    public void testUpdateKeepsSuspension() {
+        service.addPerson(new PersonRecord("35!!QQzZAB", "Mary", "Vo",
+            "11|Park Ave|Melbourne|Victoria|Australia", birthdateForAge(19), false));
+        service.addDemeritPoints("35!!QQzZAB", daysAgo(3), 6);
+        service.addDemeritPoints("35!!QQzZAB", daysAgo(2), 6);
+
+        PersonRecord updated = service.updatePersonalDetails("35!!QQzZAB", new PersonRecord("35!!QQzZAB", "Maria", "Vo",
+            "11|Park Ave|Melbourne|Victoria|Australia", birthdateForAge(19), false));
+        assertNotNull(updated);
+        assertTrue(updated.isSuspended());
+        assertEquals("Maria", service.findPerson("35!!QQzZAB").firstName());
+    }
+
+    // test 4: New IDs are answered by the bloom filter, an ID written directly to the store is still found
+    @Test
+    public void testBloomFilterFastPathAndStaleFilter() {
+        service.addPerson(new PersonRecord("56!@abCDXY", "Alice", "Nguyen",
+            "12|Old St|Melbourne|Victoria|Australia", birthdateForAge(30), false));
+        assertTrue(service.addPerson(new PersonRecord("57##xYQZAB", "John", "Smith",
+            "88|Main Rd|Melbourne|Victoria|Australia", birthdateForAge(30), false)));
+        assertTrue(service.getMetrics().count("bloom.negatives") >= 2);
+
+        // Another program appends a person to people.txt
+        store.insertPerson(new PersonRecord("58%%cCWLAB", "Tom", "Lee",
+            "99|Alpha St|Melbourne|Victoria|Australia", "01-01-1990", false));
+        assertTrue(service.personExists("58%%cCWLAB"));
+        assertFalse(service.addPerson(new PersonRecord("58%%cCWLAB", "Tom", "Lee",
+            "99|Alpha St|Melbourne|Victoria|Australia", "01-01-1990", false)));
+
+        service.close();
+        assertTrue(new File(dataDir, RegistryService.BLOOM_FILE_NAME).exists());
+    }
+
+    // test 5: Status comes from the stored figures until an offence leaves the two year window, then is saved by the next write
+    @Test
+    public void testPrecomputedStatusIsRecomputedLazily() {
+        service.addPerson(new PersonRecord("57##xYQZAB", "John", "Smith",
+            "88|Main Rd|Melbourne|Victoria|Australia", birthdateForAge(40), false));
+        service.addDemeritPoints("57##xYQZAB", daysAgo(700), 6);
+        service.addDemeritPoints("57##xYQZAB", daysAgo(100), 5);
+
+        SuspensionStatus status = service.currentStatus("57##xYQZAB");
+        assertEquals(11, status.points());
+        assertEquals(12, status.threshold());
+        assertEquals(LocalDate.now().minusDays(700).plusYears(2).plusDays(1), status.validUntil());
+        assertEquals(status, store.findPerson("57##xYQZAB").status());
+        assertEquals(0, service.getMetrics().count("status.recomputed"));
+
+        // 40 days later the first offence no longer counts
+        service.setClock(Clock.fixed(LocalDate.now().plusDays(40).atStartOfDay(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault()));
+        assertEquals(5, service.currentStatus("57##xYQZAB").points());
+        assertEquals(5, service.currentStatus("57##xYQZAB").points());
+        assertEquals(1, service.getMetrics().count("status.recomputed"));
+        // Saved with the next write, not by the read
+        assertEquals(11, store.findPerson("57##xYQZAB").status().points());
+        service.addPerson(new PersonRecord("58##xYQZAB", "Jane", "Smith",
+            "88|Main Rd|Melbourne|Victoria|Australia", birthdateForAge(40), false));
+        assertEquals(5, store.findPerson("57##xYQZAB").status().points());
+    }
+
+    // test 6: The threshold moves from 6 to 12 on the 21st birthday
+    @Test
+    public void testThresholdChangesAt21() {
+        LocalDate birth = LocalDate.now().minusYears(21).plusDays(10);
+        service.addPerson(new PersonRecord("56!@abCDXY", "Alice", "Nguyen",
+            "12|Old St|Melbourne|Victoria|Australia", birth.format(PersonValidator.DATE_FORMATTER), false));
+        service.addDemeritPoints("56!@abCDXY", daysAgo(1), 6);
+        service.addDemeritPoints("56!@abCDXY", daysAgo(1), 2);
+
+        SuspensionStatus status = service.currentStatus("56!@abCDXY");
+        assertTrue(status.suspended());
+        assertEquals(birth.plusYears(21), status.validUntil());
+
+        service.setClock(Clock.fixed(birth.plusYears(21).atStartOfDay(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault()));
+        assertEquals(12, service.currentStatus("56!@abCDXY").threshold());
+        assertFalse(service.currentStatus("56!@abCDXY").suspended());
+    }
+
+    // test 7: After a session that only adds offences, the next start loads the saved filter instead of rebuilding it
+    @Test
+    public void testFilterSavedAfterOffencesOnly() {
+        service.addPerson(new PersonRecord("57##xYQZAB", "John", "Smith",
+            "88|Main Rd|Melbourne|Victoria|Australia", birthdateForAge(40), false));
+        service.close();
+
+        RegistryService second = new RegistryService(new FileRegistryStore(dataDir), dataDir);
+        assertFalse(second.personExists("58%%cCWLAB"));
+        assertEquals("Success", second.addDemeritPoints("57##xYQZAB", daysAgo(3), 2));
+        second.close();
+
+        RegistryService third = new RegistryService(new FileRegistryStore(dataDir), dataDir);
+        assertFalse(third.personExists("58%%cCWLAB"));
+        assertEquals(0, third.getMetrics().count("bloom.rebuilds"));
+        third.close();
+    }
+
+    // test 8: Future birthdates and offences and the under-18 rule are judged by the service clock, not the system date
+    @Test
+    public void testDateChecksFollowClock() {
+        LocalDate birth = LocalDate.now().minusYears(18).plusDays(5);
+        assertTrue(service.addPerson(new PersonRecord("56!@abCDXY", "Alice", "Nguyen",
+            "12|Old St|Melbourne|Victoria|Australia", birth.format(PersonValidator.DATE_FORMATTER), false)));
+        PersonRecord moved = new PersonRecord("56!@abCDXY", "Alice", "Nguyen",
+            "9|New St|Melbourne|Victoria|Australia", birth.format(PersonValidator.DATE_FORMATTER), false);
+        assertNull(service.updatePersonalDetails("56!@abCDXY", moved));
+
+        // Ten days back a person born five days ago and an offence from yesterday are in the future
+        service.setClock(Clock.fixed(LocalDate.now().minusDays(10).atStartOfDay(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault()));
+        assertFalse(service.addPerson(new PersonRecord("57##xYQZAB", "John", "Smith",
+            "88|Main Rd|Melbourne|Victoria|Australia", daysAgo(5), false)));
+        assertEquals("Failed", service.addDemeritPoints("56!@abCDXY", daysAgo(1), 2));
+
+        // Ten days ahead she is 18 and may change her address
+        service.setClock(Clock.fixed(LocalDate.now().plusDays(10).atStartOfDay(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault()));
+        assertNotNull(service.updatePersonalDetails("56!@abCDXY", moved));
+    }
+
+    // test 9: Reading the metrics after a change behind our back shows the old filter instead of rebuilding it
+    @Test
+    public void testMetricsDoNotRebuildFilter() {
+        assertNull(service.getMetrics().snapshot().get("bloom.rebuilds"));
+        assertEquals(0, service.getMetrics().snapshot().get("bloom.sizeBytes").intValue());
+
+        assertFalse(service.personExists("58%%cCWLAB"));
+        long rebuilds = service.getMetrics().count("bloom.rebuilds");
+        store.insertPerson(new PersonRecord("58%%cCWLAB", "Tom", "Lee",
+            "99|Alpha St|Melbourne|Victoria|Australia", "01-01-1990", false));
+        assertTrue(service.getMetrics().snapshot().get("bloom.sizeBytes").intValue() > 0);
+        assertEquals(rebuilds, service.getMetrics().count("bloom.rebuilds"));
+    }
+}
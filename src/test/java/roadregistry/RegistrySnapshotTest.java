@@ -0,0 +1,199 @@
+package roadregistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import roadregistry.store.DemeritPoint;
+import roadregistry.store.FileRegistryStore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test cases for snapshot reads
+ * - Tests that an open snapshot does not see later writes
+ * - Tests that an ID change is seen all at once
+ * - Tests that changes made directly to the store are loaded
+ * - Tests that old versions are dropped once no snapshot needs them
+ * - Tests that readers see person and offences consistently while a writer adds offences
+ * - Tests that a registry over the in-memory limit is read from the store
+ * - Tests that timelines read from the store are cached and follow own and outside writes
+ */
+public class RegistrySnapshotTest {
+
+    @TempDir
+    File dataDir;
+
+    private FileRegistryStore store;
+    private RegistryService service;
+
+    @BeforeEach
+    public void setUp() {
+        store = new FileRegistryStore(dataDir);
+        service = new RegistryService(store, dataDir);
+    }
+
+    private PersonRecord person(String id, String firstName) {
+        return new PersonRecord(id, firstName, "Nguyen", "12|Old St|Melbourne|Victoria|Australia", "15-06-1990", false);
+    }
+
+    private String daysAgo(int days) {
+        return LocalDate.now().minusDays(days).format(PersonValidator.DATE_FORMATTER);
+    }
+
+    // test 1: A snapshot keeps showing the data as it was when it was opened
+    @Test
+    public void testSnapshotIsolation() {
+        service.addPerson(person("56!@abCDXY", "Alice"));
+        try (RegistrySnapshot before = service.snapshot()) {
+            service.addPerson(person("57##xYQZAB", "John"));
+            service.addDemeritPoints("56!@abCDXY", daysAgo(3), 4);
+
+            assertNull(before.findPerson("57##xYQZAB"));
+            assertTrue(before.findDemeritPoints("56!@abCDXY").isEmpty());
+            try (RegistrySnapshot after = service.snapshot()) {
+                assertTrue(after.version() > before.version());
+                assertNotNull(after.findPerson("57##xYQZAB"));
+                assertEquals(1, after.findDemeritPoints("56!@abCDXY").size());
+                assertEquals(4, after.findPerson("56!@abCDXY").status().points());
+            }
+        }
+    }
+
+    // test 2: Changing the ID removes the old ID and adds the new one in the same version
+    @Test
+    public void testIdChangeIsAtomic() {
+        service.addPerson(person("35!!QQzZAB", "Mary"));
+        try (RegistrySnapshot before = service.snapshot()) {
+            assertNotNull(service.updatePersonalDetails("35!!QQzZAB", person("37!!QQzZAB", "Mary")));
+            assertNotNull(before.findPerson("35!!QQzZAB"));
+            assertNull(before.findPerson("37!!QQzZAB"));
+        }
+        assertNull(service.findPerson("35!!QQzZAB"));
+        assertEquals("37!!QQzZAB", service.findPerson("37!!QQzZAB").personID());
+    }
+
+    // test 3: A person written straight to the store is loaded for new snapshots only
+    @Test
+    public void testOutsideChangesAreLoaded() {
+        service.addPerson(person("56!@abCDXY", "Alice"));
+        try (RegistrySnapshot before = service.snapshot()) {
+            store.insertPerson(person("58%%cCWLAB", "Tom"));
+            store.insertDemeritPoint(new DemeritPoint("56!@abCDXY", LocalDate.now().minusDays(1), 2));
+
+            assertEquals("Tom", service.findPerson("58%%cCWLAB").firstName());
+            assertNull(before.findPerson("58%%cCWLAB"));
+            try (RegistrySnapshot after = service.snapshot()) {
+                assertEquals(1, after.findDemeritPoints("56!@abCDXY").size());
+            }
+        }
+        assertEquals(2, service.getMetrics().count("mvcc.reloads"));
+    }
+
+    // test 4: Old versions stay while a snapshot needs them and are dropped afterwards
+    @Test
+    public void testOldVersionsArePruned() {
+        service.addPerson(person("56!@abCDXY", "Alice"));
+        RegistrySnapshot old = service.snapshot();
+        for (int i = 0; i < 3; i++) {
+            service.updatePersonalDetails("56!@abCDXY", person("56!@abCDXY", "Name" + i));
+        }
+        assertEquals("Alice", old.findPerson("56!@abCDXY").firstName());
+        assertEquals(0, service.getMetrics().count("mvcc.pruned"));
+        old.close();
+
+        service.updatePersonalDetails("56!@abCDXY", person("56!@abCDXY", "Last"));
+        assertTrue(service.getMetrics().count("mvcc.pruned") > 0);
+        assertEquals("Last", service.findPerson("56!@abCDXY").firstName());
+        assertEquals(0, service.getMetrics().snapshot().get("mvcc.openSnapshots").intValue());
+    }
+
+    // test 5: While offences are added, every snapshot shows figures that match its own offences
+    @Test
+    public void testReadersSeeConsistentVersions() throws InterruptedException {
+        service.addPerson(person("57##xYQZAB", "John"));
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<String> mismatch = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (writing.get()) {
+                try (RegistrySnapshot snapshot = service.snapshot()) {
+                    int points = 0;
+                    for (DemeritPoint point : snapshot.findDemeritPoints("57##xYQZAB")) {
+                        points += point.points();
+                    }
+                    int stored = snapshot.findPerson("57##xYQZAB").status().points();
+                    if (points != stored) {
+                        mismatch.set("version " + snapshot.version() + ": " + points + " != " + stored);
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 30; i++) {
+            service.addDemeritPoints("57##xYQZAB", daysAgo(i + 1), 1);
+        }
+        writing.set(false);
+        reader.join();
+        assertNull(mismatch.get());
+        assertEquals(30, service.findPerson("57##xYQZAB").status().points());
+    }
+
+    // test 6: Above the people limit snapshots read the store, which still gives every person and offence
+    @Test
+    public void testStoreBackedAboveLimit() {
+        service.addPerson(person("56!@abCDXY", "Alice"));
+        service.addPerson(person("57##xYQZAB", "John"));
+        service.addPerson(person("58%%cCWLAB", "Tom"));
+        service.close();
+        System.setProperty(VersionedRegistry.MAX_PEOPLE_PROPERTY, "2");
+        try (RegistryService limited = new RegistryService(new FileRegistryStore(dataDir), dataDir)) {
+            assertEquals("Tom", limited.findPerson("58%%cCWLAB").firstName());
+            assertEquals(1, limited.getMetrics().count("mvcc.storeBacked"));
+            assertEquals("Success", limited.addDemeritPoints("57##xYQZAB", daysAgo(5), 3));
+            try (RegistrySnapshot snapshot = limited.snapshot()) {
+                assertEquals(1, snapshot.findDemeritPoints("57##xYQZAB").size());
+                int[] count = new int[1];
+                snapshot.forEachPerson(p -> count[0]++);
+                assertEquals(3, count[0]);
+            }
+            assertEquals(3, limited.currentStatus("57##xYQZAB").points());
+        } finally {
+            System.clearProperty(VersionedRegistry.MAX_PEOPLE_PROPERTY);
+        }
+    }
+
+    // test 7: Above the people limit a timeline is read from the store once, then from the cache until it changes
+    @Test
+    public void testStoreBackedTimelineCache() {
+        service.addPerson(person("56!@abCDXY", "Alice"));
+        service.addPerson(person("57##xYQZAB", "John"));
+        service.addPerson(person("58%%cCWLAB", "Tom"));
+        service.close();
+        System.setProperty(VersionedRegistry.MAX_PEOPLE_PROPERTY, "2");
+        try (RegistryService limited = new RegistryService(new FileRegistryStore(dataDir), dataDir)) {
+            assertEquals("Success", limited.addDemeritPoints("57##xYQZAB", daysAgo(5), 3));
+            assertEquals(1, offenceCount(limited, "57##xYQZAB"));
+            assertEquals(1, offenceCount(limited, "57##xYQZAB"));
+            assertEquals(1, limited.getMetrics().count("mvcc.timelineHits"));
+
+            assertEquals("Success", limited.addDemeritPoints("57##xYQZAB", daysAgo(4), 2));
+            assertEquals(2, offenceCount(limited, "57##xYQZAB"));
+
+            new FileRegistryStore(dataDir).insertDemeritPoint(new DemeritPoint("57##xYQZAB", LocalDate.now().minusDays(3), 1));
+            assertEquals(3, offenceCount(limited, "57##xYQZAB"));
+        } finally {
+            System.clearProperty(VersionedRegistry.MAX_PEOPLE_PROPERTY);
+        }
+    }
+
+    private static int offenceCount(RegistryService service, String personID) {
+        try (RegistrySnapshot snapshot = service.snapshot()) {
+            return snapshot.findDemeritPoints(personID).size();
+        }
+    }
+}
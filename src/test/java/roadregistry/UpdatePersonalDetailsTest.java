@@ -5,6 +5,9 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 
+import roadregistry.store.FileRegistryStore;
+import roadregistry.store.RegistryStores;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -24,7 +27,7 @@ public class UpdatePersonalDetailsTest {
 
     @BeforeAll
     public static void clearPeopleFileOnceBeforeAllTests() {
-        File file = new File("data/people.txt");
+        File file = new File(RegistryStores.defaultDataDir(), FileRegistryStore.PERSON_FILE_NAME);
         if (file.exists()) {
             file.delete();
         }
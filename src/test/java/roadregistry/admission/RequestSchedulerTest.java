@@ -0,0 +1,167 @@
+package roadregistry.admission;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import roadregistry.PersonRecord;
+import roadregistry.PersonValidator;
+import roadregistry.RegistryMetrics;
+import roadregistry.RegistryService;
+import roadregistry.http.RegistryHttpServer;
+import roadregistry.store.FileRegistryStore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test cases for the request scheduler
+ * - Tests that a freed slot goes to a queued lookup before an older queued bulk request
+ * - Tests the per-class concurrency limit
+ * - Tests shedding on a full queue and after the queue timeout, with their metrics
+ * - Tests the bulk feed endpoint and that shed HTTP requests get 503 while lookups are still served
+ */
+public class RequestSchedulerTest {
+
+    @TempDir
+    File dataDir;
+
+    private static Map<RequestClass, RequestScheduler.Limits> limits(int interactive, int update, int bulk, int queue, long timeoutMillis) {
+        return Map.of(RequestClass.INTERACTIVE, new RequestScheduler.Limits(interactive, queue, timeoutMillis),
+            RequestClass.UPDATE, new RequestScheduler.Limits(update, queue, timeoutMillis),
+            RequestClass.BULK, new RequestScheduler.Limits(bulk, queue, timeoutMillis));
+    }
+
+    private static Thread queue(RequestScheduler scheduler, RequestClass type, List<RequestClass> order) {
+        Thread thread = new Thread(() -> {
+            try (RequestScheduler.Permit permit = scheduler.admit(type)) {
+                order.add(permit.getRequestClass());
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitQueued(RegistryMetrics metrics, RequestClass type, int queued) throws InterruptedException {
+        for (int i = 0; i < 200 && metrics.snapshot().get("scheduler." + type.key() + ".queued").intValue() != queued; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(queued, metrics.snapshot().get("scheduler." + type.key() + ".queued").intValue());
+    }
+
+    // test 1: With one slot in total, a lookup queued after a bulk request still goes first
+    @Test
+    public void testHigherClassGoesFirst() throws Exception {
+        RegistryMetrics metrics = new RegistryMetrics();
+        RequestScheduler scheduler = new RequestScheduler(metrics, 1, limits(4, 4, 4, 4, 0));
+        List<RequestClass> order = new CopyOnWriteArrayList<>();
+        RequestScheduler.Permit running = scheduler.admit(RequestClass.BULK);
+
+        Thread bulk = queue(scheduler, RequestClass.BULK, order);
+        awaitQueued(metrics, RequestClass.BULK, 1);
+        Thread lookup = queue(scheduler, RequestClass.INTERACTIVE, order);
+        awaitQueued(metrics, RequestClass.INTERACTIVE, 1);
+
+        running.close();
+        running.close(); // a second close gives nothing back
+        bulk.join(5_000);
+        lookup.join(5_000);
+        assertEquals(List.of(RequestClass.INTERACTIVE, RequestClass.BULK), order);
+        assertEquals(3, metrics.count("scheduler.bulk.admitted") + metrics.count("scheduler.interactive.admitted"));
+        assertEquals(0, metrics.snapshot().get("scheduler.bulk.running").intValue());
+    }
+
+    // test 2: A class at its own limit waits while other classes still start
+    @Test
+    public void testPerClassLimit() throws Exception {
+        RegistryMetrics metrics = new RegistryMetrics();
+        RequestScheduler scheduler = new RequestScheduler(metrics, 8, limits(4, 4, 1, 4, 0));
+        List<RequestClass> order = new CopyOnWriteArrayList<>();
+        RequestScheduler.Permit bulkPermit = scheduler.admit(RequestClass.BULK);
+        Thread second = queue(scheduler, RequestClass.BULK, order);
+        awaitQueued(metrics, RequestClass.BULK, 1);
+
+        try (RequestScheduler.Permit lookup = scheduler.admit(RequestClass.INTERACTIVE);
+             RequestScheduler.Permit update = scheduler.admit(RequestClass.UPDATE)) {
+            assertEquals(0, lookup.waitNanos());
+            assertEquals(0, update.waitNanos());
+        }
+        assertTrue(order.isEmpty());
+        bulkPermit.close();
+        second.join(5_000);
+        assertEquals(List.of(RequestClass.BULK), order);
+    }
+
+    // test 3: A full queue sheds at once, a queued request is shed after its timeout
+    @Test
+    public void testShedAndTimeout() {
+        RegistryMetrics metrics = new RegistryMetrics();
+        RequestScheduler scheduler = new RequestScheduler(metrics, 8, Map.of(
+            RequestClass.UPDATE, new RequestScheduler.Limits(1, 0, 0),
+            RequestClass.BULK, new RequestScheduler.Limits(1, 1, 50)));
+        try (RequestScheduler.Permit update = scheduler.admit(RequestClass.UPDATE);
+             RequestScheduler.Permit bulk = scheduler.admit(RequestClass.BULK)) {
+            RejectedRequestException full = assertThrows(RejectedRequestException.class, () -> scheduler.admit(RequestClass.UPDATE));
+            assertFalse(full.isTimedOut());
+            assertEquals(RequestClass.UPDATE, full.getRequestClass());
+
+            long started = System.nanoTime();
+            RejectedRequestException late = assertThrows(RejectedRequestException.class, () -> scheduler.admit(RequestClass.BULK));
+            assertTrue(late.isTimedOut());
+            assertTrue(System.nanoTime() - started >= 50_000_000L);
+        }
+        assertEquals(1, metrics.count("scheduler.update.shed"));
+        assertEquals(1, metrics.count("scheduler.bulk.timeouts"));
+        assertEquals(0, metrics.snapshot().get("scheduler.bulk.queued").intValue());
+
+        scheduler.close();
+        assertThrows(RejectedRequestException.class, () -> scheduler.admit(RequestClass.INTERACTIVE));
+    }
+
+    // test 4: The bulk endpoint adds a feed; with no bulk capacity it answers 503 and lookups still work
+    @Test
+    public void testHttpBulkFeedAndShedding() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        String today = LocalDate.now().minusDays(1).format(PersonValidator.DATE_FORMATTER);
+        String feed = "{\"personID\":\"56!@abCDXY\",\"offenseDate\":\"" + today + "\",\"points\":2}\n"
+            + "\n{\"personID\":\"56!@abCDXY\",\"offenseDate\":\"" + today + "\",\"points\":3}\n"
+            + "{\"personID\":\"58%%cCWLAB\",\"offenseDate\":\"" + today + "\",\"points\":1}\n";
+        try (RegistryService service = new RegistryService(new FileRegistryStore(dataDir), dataDir)) {
+            assertTrue(service.addPerson(new PersonRecord("56!@abCDXY", "Alice", "Nguyen",
+                "12|Old St|Melbourne|Victoria|Australia", "15-06-1990", false)));
+
+            try (RegistryHttpServer server = new RegistryHttpServer(service, 0, 64, 16, RequestScheduler.fromProperties(service.getMetrics()))) {
+                server.start();
+                HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/demerits"))
+                    .POST(HttpRequest.BodyPublishers.ofString(feed)).build(), HttpResponse.BodyHandlers.ofString());
+                assertEquals(400, response.statusCode()); // the unknown person fails, the others are added
+                assertTrue(response.body().contains("\"added\":2"), response.body());
+                assertEquals(2, service.getStore().findDemeritPoints("56!@abCDXY").size());
+            }
+
+            RequestScheduler noBulk = new RequestScheduler(service.getMetrics(), 8, Map.of(RequestClass.BULK, new RequestScheduler.Limits(0, 0, 0)));
+            try (RegistryHttpServer server = new RegistryHttpServer(service, 0, 64, 16, noBulk)) {
+                server.start();
+                String base = "http://localhost:" + server.getPort();
+                HttpResponse<String> shed = client.send(HttpRequest.newBuilder(URI.create(base + "/demerits"))
+                    .POST(HttpRequest.BodyPublishers.ofString(feed)).build(), HttpResponse.BodyHandlers.ofString());
+                assertEquals(503, shed.statusCode());
+                assertEquals("1", shed.headers().firstValue("Retry-After").orElse(null));
+                assertEquals(200, client.send(HttpRequest.newBuilder(URI.create(base + "/people/"
+                    + RegistryHttpServer.encodePath("56!@abCDXY"))).build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+                String metrics = client.send(HttpRequest.newBuilder(URI.create(base + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString()).body();
+                assertTrue(metrics.contains("\"scheduler.bulk.shed\":1"), metrics);
+            }
+            assertEquals(2, service.getStore().findDemeritPoints("56!@abCDXY").size());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package roadregistry.columnar;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import roadregistry.PersonRecord;
+import roadregistry.store.DemeritPoint;
+import roadregistry.store.RegistryStore;
+import roadregistry.store.RegistryStores;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test cases for the columnar export
+ * - Tests that people and offences read back with their epoch days, city codes, flags and person rows
+ * - Tests that a scan skips the blocks its filter rules out and still finds every matching row
+ * - Tests that a file which is not an export is refused
+ */
+public class ColumnarExportTest {
+
+    @TempDir
+    File tempDir;
+
+    // test 1: Every column reads back as exported, offences point at their person's row
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path file = tempDir.toPath().resolve("registry.rcol");
+        try (RegistryStore store = RegistryStores.open(RegistryStores.FILE, new File(tempDir, "data"))) {
+            store.insertPerson(new PersonRecord("56!@abCDXY", "Alice", "Nguyen", "12|Old St|Melbourne|Victoria|Australia", "15-06-1990", false));
+            store.insertPerson(new PersonRecord("37##xYQZAB", "John", "Smith", "3|High St|Geelong|Victoria|Australia", "01-01-2005", true));
+            store.insertDemeritPoint(new DemeritPoint("56!@abCDXY", LocalDate.of(2024, 3, 1), 4));
+            store.insertDemeritPoint(new DemeritPoint("37##xYQZAB", LocalDate.of(2023, 7, 9), 2));
+
+            ColumnarExport.Summary summary = ColumnarExport.export(store, file);
+            assertEquals(2, summary.people());
+            assertEquals(2, summary.offences());
+            assertEquals(Files.size(file), summary.bytes());
+        }
+
+        try (ColumnarFile columnar = ColumnarFile.open(file)) {
+            assertEquals(List.of("Geelong", "Melbourne"), columnar.cities());
+            List<String> people = new ArrayList<>();
+            columnar.table(ColumnarExport.PEOPLE).scan(ColumnFilter.ALL, row -> people.add(row.getString(ColumnarExport.ID)
+                + " " + LocalDate.ofEpochDay(row.getInt(ColumnarExport.BIRTH_DAY)) + " " + columnar.city(row.getInt(ColumnarExport.CITY))
+                + " " + row.getInt(ColumnarExport.SUSPENDED)), ColumnarExport.ID, ColumnarExport.BIRTH_DAY, ColumnarExport.CITY, ColumnarExport.SUSPENDED);
+            assertEquals(List.of("37##xYQZAB 2005-01-01 Geelong 1", "56!@abCDXY 1990-06-15 Melbourne 0"), people);
+
+            List<String> offences = new ArrayList<>();
+            columnar.table(ColumnarExport.OFFENCES).scan(ColumnFilter.ALL, row -> offences.add(row.getInt(ColumnarExport.PERSON)
+                + " " + LocalDate.ofEpochDay(row.getInt(ColumnarExport.DAY)) + " " + row.getInt(ColumnarExport.POINTS)),
+                ColumnarExport.PERSON, ColumnarExport.DAY, ColumnarExport.POINTS);
+            assertEquals(List.of("0 2023-07-09 2", "1 2024-03-01 4"), offences);
+        }
+    }
+
+    // test 2: A day range only reads the blocks that can hold it, and matches a full count
+    @Test
+    public void testScanSkipsBlocks() throws IOException {
+        Path file = tempDir.toPath().resolve("registry.rcol");
+        LocalDate base = LocalDate.of(2022, 1, 1);
+        try (RegistryStore store = RegistryStores.open(RegistryStores.KV, new File(tempDir, "data"))) {
+            store.insertPerson(new PersonRecord("56!@abCDXY", "Alice", "Nguyen", "12|Old St|Melbourne|Victoria|Australia", "15-06-1990", false));
+            List<DemeritPoint> offences = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                offences.add(new DemeritPoint("56!@abCDXY", base.plusDays((i * 7L) % 1000), 1 + i % 6));
+            }
+            offences.add(new DemeritPoint("99##xYQZAB", base, 3)); // nobody stored under this ID
+            store.insertDemeritPoints(offences);
+            ColumnarExport.export(store, file, 100);
+        }
+
+        long from = base.plusDays(500).toEpochDay();
+        long to = base.plusDays(599).toEpochDay();
+        try (ColumnarFile columnar = ColumnarFile.open(file)) {
+            ColumnarFile.Table table = columnar.table(ColumnarExport.OFFENCES);
+            assertEquals(11, table.blockCount());
+            long[] points = new long[2];
+            ColumnarFile.ScanStats full = table.scan(ColumnFilter.ALL, row -> {
+                if (row.getInt(ColumnarExport.DAY) >= from && row.getInt(ColumnarExport.DAY) <= to) {
+                    points[0] += row.getInt(ColumnarExport.POINTS);
+                }
+            }, ColumnarExport.DAY, ColumnarExport.POINTS);
+            ColumnarFile.ScanStats filtered = table.scan(ColumnFilter.between(ColumnarExport.DAY, from, to),
+                row -> points[1] += row.getInt(ColumnarExport.POINTS), ColumnarExport.POINTS);
+
+            assertEquals(points[0], points[1]);
+            assertEquals(100, filtered.rowsMatched());
+            assertTrue(filtered.blocksRead() <= 2, filtered.toString());
+            assertEquals(11, filtered.blocksRead() + filtered.blocksSkipped());
+            assertTrue(filtered.bytesRead() * 4 < full.bytesRead(), filtered + " vs " + full);
+
+            long[] orphans = new long[1];
+            table.scan(ColumnFilter.atMost(ColumnarExport.DAY, base.toEpochDay()), row -> {
+                if (row.getInt(ColumnarExport.PERSON) == ColumnarExport.MISSING) {
+                    orphans[0]++;
+                }
+            }, ColumnarExport.PERSON);
+            assertEquals(1, orphans[0]);
+        }
+    }
+
+    // test 3: Anything that is not an export is refused when opened
+    @Test
+    public void testRejectsOtherFiles() throws IOException {
+        Path file = tempDir.toPath().resolve("people.txt");
+        Files.writeString(file, "56!@abCDXY###Alice###Nguyen###12|Old St|Melbourne|Victoria|Australia###15-06-1990###false\n");
+        assertThrows(IOException.class, () -> ColumnarFile.open(file));
+    }
+}
@@ -0,0 +1,176 @@
+package roadregistry.feed;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.List;
+
+import roadregistry.PersonRecord;
+import roadregistry.PersonValidator;
+import roadregistry.RegistryService;
+import roadregistry.store.DemeritPoint;
+import roadregistry.store.FileRegistryStore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test cases for the change feed
+ * - Tests that the registry operations publish their events in order
+ * - Tests that a subscription continues from its committed offset
+ * - Tests that a torn event at the end of the feed is not delivered
+ * - Tests that only one writer can open the feed
+ * - Tests that changes in the feed but not in the store are applied once on start
+ * - Tests that offences written after the recorded offset are dropped and applied again once
+ */
+public class ChangeFeedTest {
+
+    @TempDir
+    File dataDir;
+
+    private static final PersonRecord ALICE = new PersonRecord("35!!QQzZAB", "Alice", "Nguyen",
+        "12|Old St|Melbourne|Victoria|Australia", "01-01-2006", false);
+
+    private String daysAgo(int days) {
+        return LocalDate.now().minusDays(days).format(PersonValidator.DATE_FORMATTER);
+    }
+
+    // test 1: add, update, points and the suspension flip all show up, in order, with their data
+    @Test
+    public void testOperationsPublishEvents() throws Exception {
+        try (RegistryService service = new RegistryService(new FileRegistryStore(dataDir), dataDir)) {
+            service.addPerson(ALICE);
+            service.updatePersonalDetails("35!!QQzZAB", new PersonRecord("37!!QQzZAB", "Alice", "Nguyen",
+                "12|Old St|Melbourne|Victoria|Australia", "01-01-2006", false));
+            service.addDemeritPoints("37!!QQzZAB", daysAgo(20), 4);
+            service.addDemeritPoints("37!!QQzZAB", daysAgo(10), 4);
+            service.addPerson(new PersonRecord("37!!QQzZAB", "Bob", "Tran",
+                "12|Old St|Melbourne|Victoria|Australia", "01-01-1990", false)); // duplicate ID, must not be published
+            service.addDemeritPoints("99!!QQzZAB", daysAgo(10), 4); // unknown person
+
+            Subscription subscription = service.getChangeFeed().subscribe("insurance");
+            List<RegistryEvent> events = subscription.poll(100, 0);
+            assertEquals(5, events.size());
+            assertEquals(RegistryEvent.Type.PERSON_ADDED, events.get(0).type());
+            assertEquals("Alice", events.get(0).person().firstName());
+            assertEquals(RegistryEvent.Type.PERSON_UPDATED, events.get(1).type());
+            assertEquals("35!!QQzZAB", events.get(1).previousPersonID());
+            assertEquals("37!!QQzZAB", events.get(1).personID());
+            assertEquals(RegistryEvent.Type.DEMERIT_POINTS_ADDED, events.get(2).type());
+            assertEquals(4, events.get(2).points());
+            assertEquals(LocalDate.now().minusDays(20), events.get(2).offenseDate());
+            assertEquals(RegistryEvent.Type.DEMERIT_POINTS_ADDED, events.get(3).type());
+            assertEquals(RegistryEvent.Type.SUSPENSION_CHANGED, events.get(4).type());
+            assertTrue(events.get(4).person().isSuspended());
+            for (int i = 1; i < events.size(); i++) {
+                assertEquals(events.get(i - 1).nextOffset(), events.get(i).offset());
+            }
+        }
+    }
+
+    // test 2: A consumer that committed only gets the events after its offset, also from another process
+    @Test
+    public void testSubscriptionResumesFromCommittedOffset() throws Exception {
+        try (RegistryService service = new RegistryService(new FileRegistryStore(dataDir), dataDir)) {
+            service.addPerson(ALICE);
+            Subscription first = service.getChangeFeed().subscribe("enforcement");
+            assertEquals(1, first.poll(100, 0).size());
+            first.commit();
+
+            service.addDemeritPoints("35!!QQzZAB", daysAgo(3), 2);
+        }
+        File feedFile = new File(dataDir, ChangeFeed.FILE_NAME);
+        try (Subscription again = Subscription.open(feedFile.toPath(), "enforcement")) {
+            assertTrue(again.lagBytes() > 0);
+            List<RegistryEvent> events = again.poll(100, 0);
+            assertEquals(1, events.size());
+            assertEquals(0, again.lagBytes());
+            assertEquals(RegistryEvent.Type.DEMERIT_POINTS_ADDED, events.get(0).type());
+            assertTrue(again.poll(100, 100).isEmpty());
+        }
+    }
+
+    // test 3: A half written event is not delivered and is cut off when the writer reopens the feed
+    @Test
+    public void testTornEventIsIgnored() throws IOException {
+        File feedFile = new File(dataDir, ChangeFeed.FILE_NAME);
+        try (ChangeFeed feed = new ChangeFeed(feedFile.toPath())) {
+            feed.appendAll(List.of(RegistryEvent.personAdded(ALICE)));
+            feed.appendAll(List.of(RegistryEvent.demeritPointsAdded("35!!QQzZAB", LocalDate.of(2024, 1, 1), 3)));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(feedFile, "rw")) {
+            file.setLength(file.length() - 2);
+        }
+        try (ChangeFeedReader reader = new ChangeFeedReader(feedFile.toPath())) {
+            assertEquals(1, reader.read(0, 10).size());
+        }
+        try (ChangeFeed feed = new ChangeFeed(feedFile.toPath())) {
+            assertEquals(feedFile.length(), feed.endOffset());
+            feed.appendAll(List.of(RegistryEvent.demeritPointsAdded("35!!QQzZAB", LocalDate.of(2024, 1, 1), 3)));
+            assertEquals(2, feed.read(0, 10).size());
+        }
+    }
+
+    // test 4: A second writer is refused while the feed is open and does not cut anything off
+    @Test
+    public void testSecondWriterIsRefused() throws IOException {
+        File feedFile = new File(dataDir, ChangeFeed.FILE_NAME);
+        try (ChangeFeed feed = new ChangeFeed(feedFile.toPath())) {
+            feed.appendAll(List.of(RegistryEvent.personAdded(ALICE)));
+            try (RandomAccessFile file = new RandomAccessFile(feedFile, "rw")) {
+                file.seek(file.length());
+                file.write(new byte[] {0, 0, 0, 9}); // looks like an event being written
+            }
+            long length = feedFile.length();
+            assertThrows(IOException.class, () -> new ChangeFeed(feedFile.toPath()));
+            assertEquals(length, feedFile.length());
+        }
+    }
+
+    // test 5: Events that reached the feed before a crash, but not the store, are applied on start, and only once
+    @Test
+    public void testUnstoredChangesAppliedOnStart() throws IOException {
+        try (RegistryService service = new RegistryService(new FileRegistryStore(dataDir), dataDir)) {
+            service.addPerson(ALICE);
+        }
+        try (ChangeFeed feed = new ChangeFeed(new File(dataDir, ChangeFeed.FILE_NAME).toPath())) {
+            feed.appendAll(List.of(RegistryEvent.demeritPointsAdded("35!!QQzZAB", LocalDate.now().minusDays(5), 3),
+                RegistryEvent.personUpdated("35!!QQzZAB", new PersonRecord("35!!QQzZAB", "Alice", "Nguyen",
+                    "9|New St|Melbourne|Victoria|Australia", "01-01-2006", false))));
+        }
+        for (int i = 0; i < 2; i++) {
+            try (RegistryService service = new RegistryService(new FileRegistryStore(dataDir), dataDir)) {
+                FileRegistryStore store = new FileRegistryStore(dataDir);
+                assertEquals(1, store.findDemeritPoints("35!!QQzZAB").size());
+                assertEquals("9|New St|Melbourne|Victoria|Australia", store.findPerson("35!!QQzZAB").address());
+                assertEquals(3, service.currentStatus("35!!QQzZAB").points());
+            }
+        }
+    }
+
+    // test 6: Offences that reached demerit_points.txt but not feed.offset before a crash are stored once after a restart
+    @Test
+    public void testOffencesPastRecordedOffsetAppliedOnce() throws IOException {
+        LocalDate day = LocalDate.now().minusDays(5);
+        try (RegistryService service = new RegistryService(new FileRegistryStore(dataDir), dataDir)) {
+            service.addPerson(ALICE);
+            assertEquals("Success", service.addDemeritPoints("35!!QQzZAB", day.format(PersonValidator.DATE_FORMATTER), 2));
+        }
+        // The crash: the offence is in the feed and in the file, the offset after it was never recorded
+        try (ChangeFeed feed = new ChangeFeed(new File(dataDir, ChangeFeed.FILE_NAME).toPath())) {
+            feed.appendAll(List.of(RegistryEvent.demeritPointsAdded("35!!QQzZAB", day, 3)));
+        }
+        new FileRegistryStore(dataDir).insertDemeritPoints(List.of(new DemeritPoint("35!!QQzZAB", day, 3)));
+
+        try (RegistryService service = new RegistryService(new FileRegistryStore(dataDir), dataDir)) {
+            assertEquals(5, service.currentStatus("35!!QQzZAB").points());
+        }
+        List<String> lines = Files.readAllLines(new File(dataDir, FileRegistryStore.DEMERIT_FILE_NAME).toPath());
+        assertEquals(2, lines.size());
+        assertTrue(lines.stream().allMatch(line -> line.split("\\|").length == 3));
+    }
+}
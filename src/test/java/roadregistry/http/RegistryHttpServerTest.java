@@ -0,0 +1,198 @@
+package roadregistry.http;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import roadregistry.PersonRecord;
+import roadregistry.PersonValidator;
+import roadregistry.RegistryService;
+import roadregistry.store.DemeritPoint;
+import roadregistry.store.FileRegistryStore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test cases for the HTTP/JSON service
+ * - Tests add, lookup, update and demerit endpoints with their status codes
+ * - Tests that concurrent demerit requests are batched and all counted
+ * - Tests that requests over the in-flight limit are shed with 503
+ * - Tests the JSON helper and percent-encoded IDs
+ * - Tests the loopback default and offences submitted after the batcher closed
+ * - Tests that requests waiting for a pool thread count against the in-flight limit
+ */
+public class RegistryHttpServerTest {
+
+    @TempDir
+    File dataDir;
+
+    private RegistryService service;
+    private RegistryHttpServer server;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        service = new RegistryService(new FileRegistryStore(dataDir), dataDir);
+        server = new RegistryHttpServer(service, 0, 64, 16);
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+        service.close();
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path));
+        request.method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body));
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String personPath(String personID) {
+        return "/people/" + RegistryHttpServer.encodePath(personID);
+    }
+
+    private String person(String personID, String firstName, String birthdate) {
+        return Json.write(Map.of("personID", personID, "firstName", firstName, "lastName", "Nguyen",
+            "address", "12|Old St|Melbourne|Victoria|Australia", "birthdate", birthdate));
+    }
+
+    private String daysAgo(int days) {
+        return LocalDate.now().minusDays(days).format(PersonValidator.DATE_FORMATTER);
+    }
+
+    // test 1: Add, duplicate add, lookup, update and unknown ID
+    @Test
+    public void testPersonEndpoints() throws Exception {
+        assertEquals(201, send("POST", "/people", person("56!@abCDXY", "Alice", "15-06-1990")).statusCode());
+        assertEquals(400, send("POST", "/people", person("56!@abCDXY", "Alice", "15-06-1990")).statusCode());
+        assertEquals(400, send("POST", "/people", "{not json").statusCode());
+
+        HttpResponse<String> found = send("GET", personPath("56!@abCDXY"), null);
+        assertEquals(200, found.statusCode());
+        Map<String, Object> json = Json.parseObject(found.body());
+        assertEquals("Alice", json.get("firstName"));
+        assertEquals("12|Old St|Melbourne|Victoria|Australia", json.get("address"));
+        assertEquals(12L, json.get("threshold"));
+
+        HttpResponse<String> updated = send("PUT", personPath("56!@abCDXY"), person("56!@abCDXY", "Alicia", "15-06-1990"));
+        assertEquals(200, updated.statusCode());
+        assertEquals("Alicia", service.findPerson("56!@abCDXY").firstName());
+
+        assertEquals(404, send("GET", personPath("57##xYQZAB"), null).statusCode());
+        assertEquals(405, send("DELETE", personPath("56!@abCDXY"), null).statusCode());
+    }
+
+    // test 2: Demerit points through HTTP, including invalid ones, and concurrent requests all counted
+    @Test
+    public void testDemeritPointsAreBatched() throws Exception {
+        send("POST", "/people", person("57##xYQZAB", "John", "01-01-1980"));
+        assertEquals(400, send("POST", personPath("57##xYQZAB") + "/demerits", "{\"offenseDate\":\"" + daysAgo(1) + "\",\"points\":7}").statusCode());
+        assertEquals(400, send("POST", personPath("58%%cCWLAB") + "/demerits", "{\"offenseDate\":\"" + daysAgo(1) + "\",\"points\":1}").statusCode());
+
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 13; i++) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + personPath("57##xYQZAB") + "/demerits"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"offenseDate\":\"" + daysAgo(i + 1) + "\",\"points\":1}")).build();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals(200, response.get().statusCode());
+        }
+        assertEquals(13, service.getStore().findDemeritPoints("57##xYQZAB").size());
+        assertTrue(service.findPerson("57##xYQZAB").isSuspended());
+        assertTrue(service.getMetrics().count("http.demeritBatches") <= 15);
+    }
+
+    // test 3: With no request allowed in flight every request is shed with 503
+    @Test
+    public void testBackpressureSheds() throws Exception {
+        try (RegistryHttpServer full = new RegistryHttpServer(service, 0, 0, 16)) {
+            full.start();
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(
+                URI.create("http://localhost:" + full.getPort() + "/people/x")).GET().build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(503, response.statusCode());
+            assertEquals("1", response.headers().firstValue("Retry-After").orElse(null));
+            assertEquals(1, service.getMetrics().count("http.rejected"));
+        }
+    }
+
+    // test 4: JSON escapes and percent-encoded IDs survive a round trip; the batch path gives one result per offence
+    @Test
+    public void testJsonPathEncodingAndBatchResults() {
+        Map<String, Object> parsed = Json.parseObject(Json.write(Map.of("text", "a \"quoted\"\n\\ value")));
+        assertEquals("a \"quoted\"\n\\ value", parsed.get("text"));
+        assertEquals("56!@ab+D%Y", RegistryHttpServer.decodePath(RegistryHttpServer.encodePath("56!@ab+D%Y")));
+        assertThrows(IllegalArgumentException.class, () -> Json.parseObject("{\"a\":[1]}"));
+
+        service.addPerson(new PersonRecord("35!!QQzZAB", "Mary", "Vo",
+            "11|Park Ave|Melbourne|Victoria|Australia", "01-01-2007", false));
+        List<String> results = service.addDemeritPoints(List.of(
+            new DemeritPoint("35!!QQzZAB", LocalDate.now().minusDays(3), 6),
+            new DemeritPoint("35!!QQzZAB", LocalDate.now().minusDays(2), 9),
+            new DemeritPoint("35!!QQzZAB", LocalDate.now().minusDays(1), 1)));
+        assertEquals(List.of(RegistryService.SUCCESS, RegistryService.FAILED, RegistryService.SUCCESS), results);
+        assertTrue(service.findPerson("35!!QQzZAB").isSuspended());
+    }
+
+    // test 5: The server only listens locally by default, and an offence submitted after close still gets an answer
+    @Test
+    public void testLoopbackDefaultAndBatcherClose() throws Exception {
+        assertTrue(server.getAddress().getAddress().isLoopbackAddress());
+
+        DemeritBatcher batcher = new DemeritBatcher(service, 8);
+        batcher.close();
+        CompletableFuture<String> late = batcher.submit(new DemeritPoint("35!!QQzZAB", LocalDate.now().minusDays(1), 2));
+        assertEquals(RegistryService.FAILED, late.get(1, TimeUnit.SECONDS));
+    }
+
+    // test 6: With the only pool thread busy and one request waiting for it, the next request is answered 503 at once
+    @Test
+    public void testWaitingRequestsCountAsInFlight() throws Exception {
+        System.setProperty("roadregistry.http.threads", "1");
+        try (RegistryHttpServer pooled = new RegistryHttpServer(service, 0, 2, 16)) {
+            System.clearProperty("roadregistry.http.threads");
+            pooled.start();
+            URI lookup = URI.create("http://localhost:" + pooled.getPort() + personPath("56!@abCDXY"));
+            CompletableFuture<HttpResponse<String>> waiting;
+            try (Socket stalled = new Socket(InetAddress.getLoopbackAddress(), pooled.getPort())) {
+                // Holds the pool thread: the body it announces never arrives
+                OutputStream out = stalled.getOutputStream();
+                out.write("POST /people HTTP/1.1\r\nHost: localhost\r\nContent-Length: 100\r\n\r\n{".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                waiting = client.sendAsync(HttpRequest.newBuilder(lookup).GET().build(), HttpResponse.BodyHandlers.ofString());
+                for (int i = 0; i < 100 && service.getMetrics().snapshot().get("http.inFlight").intValue() < 2; i++) {
+                    Thread.sleep(50);
+                }
+
+                HttpResponse<String> shed = client.send(HttpRequest.newBuilder(lookup).timeout(Duration.ofSeconds(5)).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+                assertEquals(503, shed.statusCode());
+                assertFalse(waiting.isDone());
+            }
+            assertEquals(404, waiting.get(5, TimeUnit.SECONDS).statusCode());
+        } finally {
+            System.clearProperty("roadregistry.http.threads");
+        }
+    }
+}
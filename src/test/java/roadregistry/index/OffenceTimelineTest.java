@@ -0,0 +1,95 @@
+package roadregistry.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import roadregistry.PersonRecord;
+import roadregistry.PersonValidator;
+import roadregistry.RegistryService;
+import roadregistry.SuspensionRules;
+import roadregistry.SuspensionStatus;
+import roadregistry.store.DemeritPoint;
+import roadregistry.store.FileRegistryStore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test cases for the as-of status queries
+ * - Tests that the timeline gives the same figures as SuspensionRules.compute on any day
+ * - Tests range queries including offences on the same day
+ * - Tests RegistryService.statusOn for past days and the age band change
+ */
+public class OffenceTimelineTest {
+
+    @TempDir
+    File dataDir;
+
+    // test 1: Random histories give the same status as the linear computation, on every day asked
+    @Test
+    public void testMatchesLinearComputation() {
+        Random random = new Random(160);
+        for (int person = 0; person < 50; person++) {
+            LocalDate birth = person % 5 == 0 ? LocalDate.of(2004, 2, 29) : LocalDate.of(1985 + random.nextInt(25), 1 + random.nextInt(12), 1 + random.nextInt(28));
+            List<DemeritPoint> offences = new ArrayList<>();
+            OffenceTimeline timeline = OffenceTimeline.empty();
+            for (int i = 0; i < 40; i++) {
+                DemeritPoint offence = new DemeritPoint("56!@abCDXY", LocalDate.of(2018, 1, 1).plusDays(random.nextInt(3000)), 1 + random.nextInt(6));
+                offences.add(offence);
+                timeline = timeline.with(List.of(offence));
+            }
+            for (int day = 0; day < 60; day++) {
+                LocalDate on = LocalDate.of(2017, 6, 1).plusDays(random.nextInt(4000));
+                assertEquals(SuspensionRules.compute(birth, offences, on), timeline.statusOn(birth, on), "on " + on);
+            }
+        }
+    }
+
+    // test 2: Range queries, same-day offences and the empty timeline
+    @Test
+    public void testRangeQueries() {
+        LocalDate day = LocalDate.of(2024, 3, 10);
+        OffenceTimeline timeline = OffenceTimeline.of(List.of(
+            new DemeritPoint("57##xYQZAB", day.plusDays(30), 2),
+            new DemeritPoint("57##xYQZAB", day, 3),
+            new DemeritPoint("57##xYQZAB", day, 4)));
+
+        assertEquals(3, timeline.size());
+        assertEquals(7, timeline.pointsBetween(day, day));
+        assertEquals(9, timeline.pointsBetween(LocalDate.MIN, LocalDate.MAX));
+        assertEquals(0, timeline.pointsBetween(day.plusDays(1), day.plusDays(29)));
+        assertEquals(List.of(new DemeritPoint("57##xYQZAB", day.plusDays(30), 2)), timeline.between(day.plusDays(1), day.plusYears(1)));
+        assertEquals(3, timeline.points().get(0).points());
+        assertEquals(0, OffenceTimeline.empty().pointsBetween(LocalDate.MIN, LocalDate.MAX));
+    }
+
+    // test 3: A driver suspended in the past is not suspended today, and the age band follows the day asked
+    @Test
+    public void testStatusOnPastDays() {
+        RegistryService service = new RegistryService(new FileRegistryStore(dataDir), dataDir);
+        LocalDate birth = LocalDate.now().minusYears(25);
+        service.addPerson(new PersonRecord("56!@abCDXY", "Alice", "Nguyen",
+            "12|Old St|Melbourne|Victoria|Australia", birth.format(PersonValidator.DATE_FORMATTER), false));
+        LocalDate offence = birth.plusYears(20);
+        for (int i = 0; i < 2; i++) {
+            service.addDemeritPoints(List.of(new DemeritPoint("56!@abCDXY", offence.plusDays(i), 4)));
+        }
+
+        SuspensionStatus then = service.statusOn("56!@abCDXY", offence.plusDays(1));
+        assertEquals(8, then.points());
+        assertEquals("under 21", then.ageBand());
+        assertTrue(then.suspended());
+
+        SuspensionStatus atTwentyOne = service.statusOn("56!@abCDXY", birth.plusYears(21));
+        assertEquals(12, atTwentyOne.threshold());
+        assertFalse(atTwentyOne.suspended());
+        assertEquals(0, service.statusOn("56!@abCDXY", LocalDate.now()).points());
+        assertNull(service.statusOn("57##xYQZAB", LocalDate.now()));
+        service.close();
+    }
+}
@@ -0,0 +1,73 @@
+package roadregistry.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test cases for the personID bloom filter
+ * - Tests that added IDs are always reported as possibly present
+ * - Tests that the false positive rate stays near the configured rate
+ * - Tests saving and loading with the data version
+ */
+public class PersonIdBloomFilterTest {
+
+    @TempDir
+    Path dir;
+
+    private static String id(int n) {
+        return String.format("%d%d#!%04d%c%c", 2 + n % 8, 2 + n / 8 % 8, n / 64 % 10_000, 'A' + n / 640_000 % 26, 'A' + n % 26);
+    }
+
+    // test 1: No false negatives
+    @Test
+    public void testAddedIDsAreFound() {
+        PersonIdBloomFilter filter = new PersonIdBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(id(i));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain(id(i)));
+        }
+    }
+
+    // test 2: About 1% of absent IDs are false positives when sized for 1%
+    @Test
+    public void testFalsePositiveRateNearTarget() {
+        PersonIdBloomFilter filter = new PersonIdBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(id(i));
+        }
+        int falsePositives = 0;
+        for (int i = 10_000; i < 110_000; i++) {
+            if (filter.mightContain(id(i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2_000, "false positives: " + falsePositives);
+        assertEquals(0.01, filter.expectedFalsePositiveRate(), 0.005);
+    }
+
+    // test 3: Saved filter loads back with the same answers and data version, garbage files are ignored
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        PersonIdBloomFilter filter = new PersonIdBloomFilter(1_000, 0.05);
+        filter.put("56!@abCDXY");
+        filter.save(dir.resolve("people.bloom"), 1234L);
+
+        PersonIdBloomFilter.Saved saved = PersonIdBloomFilter.load(dir.resolve("people.bloom"));
+        assertNotNull(saved);
+        assertEquals(1234L, saved.dataVersion());
+        assertTrue(saved.filter().mightContain("56!@abCDXY"));
+        assertEquals(0.05, saved.filter().getFalsePositiveRate());
+
+        Files.writeString(dir.resolve("broken.bloom"), "not a filter");
+        assertNull(PersonIdBloomFilter.load(dir.resolve("broken.bloom")));
+        assertNull(PersonIdBloomFilter.load(dir.resolve("missing.bloom")));
+    }
+}
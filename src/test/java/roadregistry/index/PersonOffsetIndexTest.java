@@ -0,0 +1,206 @@
+package roadregistry.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import roadregistry.PersonRecord;
+import roadregistry.store.FileRegistryStore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test cases for the off-heap personID to offset index
+ * - Tests lookups while the table grows, the first offset winning, and IDs that cannot be indexed
+ * - Tests that a cleanly closed index file is reused and one still open elsewhere is not
+ * - Tests text store lookups through the index after inserts, ID changes and edits by another program
+ * - Tests that a miss is not trusted after another program's same-size rewrite that kept the file's version
+ * - Tests lookups from many threads at once
+ * - Tests that rewriting the people file reuses the mapped index instead of recreating it
+ */
+public class PersonOffsetIndexTest {
+
+    @TempDir
+    File tempDir;
+
+    private static String id(int n) {
+        return String.format("%02d#!%04dXY", 22 + n % 70, n / 70);
+    }
+
+    // test 1: Every ID is found after several doublings; absent and non-indexable IDs are not
+    @Test
+    public void testGrowAndLookup() throws IOException {
+        PersonOffsetIndex index = PersonOffsetIndex.inMemory(0);
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(index.putIfAbsent(id(i), i * 100L));
+        }
+        assertFalse(index.putIfAbsent(id(7), 1));
+        assertEquals(5000, index.size());
+        assertTrue(index.capacity() >= 5000 / 0.7);
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i * 100L, index.get(id(i)));
+        }
+        assertEquals(-1, index.get("99#!9999ZZ"));
+        assertEquals(-1, index.get("56!@abCDX"));
+        assertFalse(PersonOffsetIndex.isIndexable("56!@abCDX\u00e9"));
+        assertThrows(IllegalArgumentException.class, () -> index.putIfAbsent("short", 0));
+    }
+
+    // test 2: A cleanly closed file comes back with its entries and version; one still open is not reused
+    @Test
+    public void testFileReuse() throws IOException {
+        Path file = tempDir.toPath().resolve("people.idx");
+        PersonOffsetIndex index = PersonOffsetIndex.open(file, 10);
+        assertEquals(-1, index.dataVersion());
+        for (int i = 0; i < 2000; i++) {
+            index.putIfAbsent(id(i), i);
+        }
+        index.setDataVersion(42);
+        index.close();
+
+        PersonOffsetIndex reopened = PersonOffsetIndex.open(file, 10);
+        assertEquals(42, reopened.dataVersion());
+        assertEquals(2000, reopened.size());
+        assertEquals(1999, reopened.get(id(1999)));
+
+        PersonOffsetIndex second = PersonOffsetIndex.open(file, 10); // the first one has not been closed
+        assertEquals(-1, second.dataVersion());
+        assertEquals(0, second.size());
+        assertEquals(1999, reopened.get(id(1999)));
+        second.close();
+        reopened.close();
+    }
+
+    // test 3: The text store finds people through the index, also after the file was changed behind its back
+    @Test
+    public void testTextStoreLookups() throws IOException {
+        File dataDir = new File(tempDir, "data");
+        FileRegistryStore store = new FileRegistryStore(dataDir, false);
+        for (int i = 0; i < 300; i++) {
+            assertTrue(store.insertPerson(new PersonRecord(id(i), "First" + i, "Nguyen",
+                "12|Old St|Melbourne|Victoria|Australia", "15-06-1990", false)));
+        }
+        assertTrue(store.insertPerson(new PersonRecord("56!@abCDX", "Nine", "Chars",
+            "12|Old St|Melbourne|Victoria|Australia", "15-06-1990", false)));
+        assertEquals("First150", store.findPerson(id(150)).firstName());
+        assertEquals("Nine", store.findPerson("56!@abCDX").firstName());
+        assertNull(store.findPerson("99#!9999ZZ"));
+
+        assertTrue(store.replacePerson(id(10), new PersonRecord("77!!renaME", "Renamed", "Nguyen",
+            "12|Old St|Melbourne|Victoria|Australia", "15-06-1990", false)));
+        assertNull(store.findPerson(id(10)));
+        assertEquals("Renamed", store.findPerson("77!!renaME").firstName());
+        assertTrue(store.insertPerson(new PersonRecord(id(300), "Last", "Nguyen",
+            "12|Old St|Melbourne|Victoria|Australia", "15-06-1990", false)));
+        assertEquals("Last", store.findPerson(id(300)).firstName());
+
+        // Another program reorders the file and adds a line
+        Path people = new File(dataDir, FileRegistryStore.PERSON_FILE_NAME).toPath();
+        List<String> lines = new ArrayList<>(Files.readAllLines(people, StandardCharsets.UTF_8));
+        Collections.reverse(lines);
+        lines.add("88!!handAD###Hand###Added###1|Main St|Melbourne|Victoria|Australia###01-01-1980###false");
+        Files.write(people, lines, StandardCharsets.UTF_8);
+        assertEquals("First150", store.findPerson(id(150)).firstName());
+        assertEquals("Hand", store.findPerson("88!!handAD").firstName());
+        store.close();
+
+        FileRegistryStore reopened = new FileRegistryStore(dataDir, false);
+        assertEquals("First299", reopened.findPerson(id(299)).firstName());
+        assertEquals("Renamed", reopened.findPerson("77!!renaME").firstName());
+        reopened.close();
+    }
+
+    // test 4: Rewritten in place by another program with the same size and modification time, the file is scanned
+    // rather than the miss trusted (a miss right after the store's own write is trusted)
+    @Test
+    public void testSameSizeRewriteIsNotMissed() throws IOException {
+        File dataDir = new File(tempDir, "data");
+        FileRegistryStore writer = new FileRegistryStore(dataDir, false);
+        assertTrue(writer.insertPerson(new PersonRecord(id(1), "First", "Nguyen",
+            "12|Old St|Melbourne|Victoria|Australia", "15-06-1990", false)));
+        assertNull(writer.findPerson(id(2)));
+        writer.close();
+        FileRegistryStore store = new FileRegistryStore(dataDir, false);
+        assertNull(store.findPerson(id(2)));
+
+        Path people = new File(dataDir, FileRegistryStore.PERSON_FILE_NAME).toPath();
+        FileTime modified = Files.getLastModifiedTime(people);
+        try (RandomAccessFile file = new RandomAccessFile(people.toFile(), "rw")) {
+            file.write(id(2).getBytes(StandardCharsets.US_ASCII));
+        }
+        Files.setLastModifiedTime(people, modified);
+        assertEquals("First", store.findPerson(id(2)).firstName());
+        assertNull(store.findPerson(id(1)));
+        store.close();
+    }
+
+    // test 5: Lookups from several threads all find their people
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        File dataDir = new File(tempDir, "data");
+        FileRegistryStore store = new FileRegistryStore(dataDir, false);
+        for (int i = 0; i < 500; i++) {
+            store.insertPerson(new PersonRecord(id(i), "First" + i, "Nguyen",
+                "12|Old St|Melbourne|Victoria|Australia", "15-06-1990", false));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> found = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int first = t;
+                found.add(pool.submit(() -> {
+                    int count = 0;
+                    for (int i = first; i < 500; i += 8) {
+                        count += ("First" + i).equals(store.findPerson(id(i)).firstName()) ? 1 : 0;
+                    }
+                    return count;
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> count : found) {
+                total += count.get();
+            }
+            assertEquals(500, total);
+        } finally {
+            pool.shutdown();
+            store.close();
+        }
+    }
+
+    // test 6: Changing people rewrites the file but clears the index in place, at the same size
+    @Test
+    public void testRewriteReusesIndexFile() throws IOException {
+        File dataDir = new File(tempDir, "data");
+        FileRegistryStore store = new FileRegistryStore(dataDir, false);
+        for (int i = 0; i < 500; i++) {
+            store.insertPerson(new PersonRecord(id(i), "First" + i, "Nguyen",
+                "12|Old St|Melbourne|Victoria|Australia", "15-06-1990", false));
+        }
+        Path index = new File(dataDir, FileRegistryStore.INDEX_FILE_NAME).toPath();
+        Object fileKey = Files.readAttributes(index, BasicFileAttributes.class).fileKey();
+        long length = Files.size(index);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(store.replacePerson(id(i), new PersonRecord(id(i), "Changed" + i, "Nguyen",
+                "12|Old St|Melbourne|Victoria|Australia", "15-06-1990", false)));
+            assertEquals("Changed" + i, store.findPerson(id(i)).firstName());
+        }
+        assertEquals("First499", store.findPerson(id(499)).firstName());
+        assertEquals(fileKey, Files.readAttributes(index, BasicFileAttributes.class).fileKey());
+        assertEquals(length, Files.size(index));
+        store.close();
+    }
+}
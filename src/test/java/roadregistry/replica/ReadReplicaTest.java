@@ -0,0 +1,235 @@
+package roadregistry.replica;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+
+import roadregistry.PersonRecord;
+import roadregistry.PersonValidator;
+import roadregistry.RegistryService;
+import roadregistry.feed.ChangeFeed;
+import roadregistry.http.RegistryHttpServer;
+import roadregistry.store.AddressDictionary;
+import roadregistry.store.DemeritPoint;
+import roadregistry.store.FileRegistryStore;
+import roadregistry.store.LogStructuredRegistryStore;
+import roadregistry.store.RegistryStores;
+import roadregistry.trace.StateChecksum;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test cases for read replicas
+ * - Tests that a replica copies the primary and then follows its adds, ID changes and suspensions
+ * - Tests resuming from the offset kept in the replica's store, and copying again when the copy is gone
+ * - Tests the follower thread behind a read-only HTTP server
+ * - Tests a copy taken while the primary was writing a batch of offences
+ * - Tests that a key-value replica applying person changes does not reload its snapshots
+ * - Tests that a change the replica could not write is applied again, not skipped
+ */
+public class ReadReplicaTest {
+
+    @TempDir
+    File tempDir;
+
+    private static PersonRecord person(String personID, String firstName) {
+        return new PersonRecord(personID, firstName, "Nguyen", "12|Old St|Melbourne|Victoria|Australia", "15-06-1990", false);
+    }
+
+    private static DemeritPoint offence(String personID, int daysAgo, int points) {
+        return new DemeritPoint(personID, LocalDate.now().minusDays(daysAgo), points);
+    }
+
+    // test 1: The copy has what was there before, and later changes arrive through the feed
+    @Test
+    public void testCopiesAndFollows() throws Exception {
+        File primaryDir = new File(tempDir, "primary");
+        File replicaDir = new File(tempDir, "replica");
+        try (RegistryService primary = new RegistryService(RegistryStores.open(RegistryStores.FILE, primaryDir), primaryDir)) {
+            assertTrue(primary.addPerson(person("56!@abCDXY", "Alice")));
+            assertTrue(primary.addPerson(person("37##xYQZAB", "John")));
+            primary.addDemeritPoints(List.of(offence("56!@abCDXY", 30, 2)));
+
+            try (ReadReplica replica = new ReadReplica(primaryDir, replicaDir)) {
+                assertEquals("Alice", replica.findPerson("56!@abCDXY").firstName());
+                assertEquals(0, replica.catchUp());
+
+                assertTrue(primary.addPerson(person("58%%cCWLAB", "Tom")));
+                assertNotNull(primary.updatePersonalDetails("37##xYQZAB", person("39##xYQZAB", "John")));
+                primary.addDemeritPoints(List.of(offence("56!@abCDXY", 20, 6), offence("56!@abCDXY", 10, 6)));
+                assertTrue(replica.lagBytes() > 0);
+
+                assertEquals(5, replica.catchUp()); // add, update, two offences, suspension
+                assertEquals(0, replica.lagBytes());
+                assertEquals(0, replica.lagMillis());
+                assertNull(replica.findPerson("37##xYQZAB"));
+                assertEquals("John", replica.findPerson("39##xYQZAB").firstName());
+                assertTrue(replica.findPerson("56!@abCDXY").isSuspended());
+                assertEquals(3, replica.findDemeritPoints("56!@abCDXY").size());
+                assertEquals(14, replica.statusOn("56!@abCDXY", LocalDate.now()).points());
+                assertEquals(StateChecksum.of(primary.getStore()), StateChecksum.of(replica.getService().getStore()));
+            }
+        }
+    }
+
+    // test 2: A restart resumes from the offset in the replica's store; without a copy it copies again
+    @Test
+    public void testResumeAndCopyAgain() throws Exception {
+        File primaryDir = new File(tempDir, "primary");
+        File replicaDir = new File(tempDir, "replica");
+        try (RegistryService primary = new RegistryService(RegistryStores.open(RegistryStores.KV, primaryDir), primaryDir)) {
+            assertTrue(primary.addPerson(person("56!@abCDXY", "Alice")));
+            new ReadReplica(primaryDir, replicaDir).close();
+
+            assertTrue(primary.addPerson(person("37##xYQZAB", "John")));
+            primary.addDemeritPoints(List.of(offence("37##xYQZAB", 5, 3)));
+            try (ReadReplica replica = new ReadReplica(primaryDir, replicaDir)) {
+                assertEquals(1, replica.getService().getMetrics().count("replica.resumed"));
+                assertEquals(2, replica.catchUp());
+                assertEquals(StateChecksum.of(primary.getStore()), StateChecksum.of(replica.getService().getStore()));
+            }
+
+            Files.delete(new File(replicaDir, LogStructuredRegistryStore.LOG_FILE_NAME).toPath());
+            primary.addDemeritPoints(List.of(offence("56!@abCDXY", 5, 1)));
+            try (ReadReplica replica = new ReadReplica(primaryDir, replicaDir)) {
+                assertEquals(1, replica.getService().getMetrics().count("replica.copied"));
+                assertEquals(0, replica.catchUp());
+                assertEquals(StateChecksum.of(primary.getStore()), StateChecksum.of(replica.getService().getStore()));
+            }
+        }
+    }
+
+    // test 3: The follower thread keeps an HTTP replica current; writes to it are refused
+    @Test
+    public void testReadOnlyHttpReplica() throws Exception {
+        File primaryDir = new File(tempDir, "primary");
+        File replicaDir = new File(tempDir, "replica");
+        HttpClient client = HttpClient.newHttpClient();
+        try (RegistryService primary = new RegistryService(RegistryStores.open(RegistryStores.FILE, primaryDir), primaryDir);
+             ReadReplica replica = new ReadReplica(primaryDir, replicaDir)) {
+            replica.start();
+            RegistryHttpServer server = new RegistryHttpServer(replica.getService(), 0);
+            server.setReadOnly(true);
+            server.start();
+            try {
+                String base = "http://localhost:" + server.getPort();
+                String path = base + "/people/" + RegistryHttpServer.encodePath("56!@abCDXY");
+                assertTrue(primary.addPerson(person("56!@abCDXY", "Alice")));
+
+                int status = 404;
+                for (int i = 0; i < 100 && status != 200; i++) {
+                    Thread.sleep(50);
+                    status = client.send(HttpRequest.newBuilder(URI.create(path)).build(), HttpResponse.BodyHandlers.ofString()).statusCode();
+                }
+                assertEquals(200, status);
+                HttpResponse<String> write = client.send(HttpRequest.newBuilder(URI.create(base + "/people"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{}")).build(), HttpResponse.BodyHandlers.ofString());
+                assertEquals(405, write.statusCode());
+                String metrics = client.send(HttpRequest.newBuilder(URI.create(base + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString()).body();
+                assertTrue(metrics.contains("\"replica.lagBytes\""), metrics);
+            } finally {
+                server.close();
+            }
+        }
+    }
+
+    // test 4: A copy that caught half a batch of offences drops it and gets the whole batch from the feed
+    @Test
+    public void testCopyDuringOffenceBatch() throws Exception {
+        File primaryDir = new File(tempDir, "primary");
+        File frozenDir = new File(tempDir, "frozen");
+        File replicaDir = new File(tempDir, "replica");
+        try (RegistryService primary = new RegistryService(RegistryStores.open(RegistryStores.FILE, primaryDir), primaryDir)) {
+            assertTrue(primary.addPerson(person("56!@abCDXY", "Alice")));
+            primary.addDemeritPoints(List.of(offence("56!@abCDXY", 30, 2)));
+            // The primary's files as they were before the next batch
+            Files.createDirectories(new File(frozenDir, AddressDictionary.DIR_NAME).toPath());
+            for (File file : primaryDir.listFiles(File::isFile)) {
+                Files.copy(file.toPath(), new File(frozenDir, file.getName()).toPath());
+            }
+            for (File file : new File(primaryDir, AddressDictionary.DIR_NAME).listFiles()) {
+                Files.copy(file.toPath(), new File(new File(frozenDir, AddressDictionary.DIR_NAME), file.getName()).toPath());
+            }
+            primary.addDemeritPoints(List.of(offence("56!@abCDXY", 20, 3), offence("56!@abCDXY", 10, 4)));
+            assertNotNull(primary.updatePersonalDetails("56!@abCDXY", person("56!@abCDXY", "Alicia")));
+
+            // ...with the feed already holding that batch and the first of its offences half way to disk
+            Files.copy(new File(primaryDir, ChangeFeed.FILE_NAME).toPath(), new File(frozenDir, ChangeFeed.FILE_NAME).toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+            String torn = "56!@abCDXY|" + LocalDate.now().minusDays(20).format(PersonValidator.DATE_FORMATTER) + "|3\n56!@";
+            Files.write(new File(frozenDir, FileRegistryStore.DEMERIT_FILE_NAME).toPath(), torn.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+            try (ReadReplica replica = new ReadReplica(frozenDir, replicaDir)) {
+                assertEquals(1, replica.findDemeritPoints("56!@abCDXY").size());
+                assertEquals(3, replica.catchUp()); // the batch's two offences and the update
+                assertEquals(3, replica.findDemeritPoints("56!@abCDXY").size());
+                assertEquals("Alicia", replica.findPerson("56!@abCDXY").firstName());
+                assertEquals(StateChecksum.of(primary.getStore()), StateChecksum.of(replica.getService().getStore()));
+            }
+            try (ReadReplica replica = new ReadReplica(frozenDir, replicaDir)) {
+                assertEquals(1, replica.getService().getMetrics().count("replica.resumed"));
+                assertEquals(0, replica.catchUp());
+                assertEquals(3, replica.findDemeritPoints("56!@abCDXY").size());
+            }
+        }
+    }
+
+    // test 5: Recording the feed offset is part of each write, so the replica's own writes never look like outside changes
+    @Test
+    public void testKeyValueReplicaKeepsSnapshots() throws Exception {
+        File primaryDir = new File(tempDir, "primary");
+        File replicaDir = new File(tempDir, "replica");
+        try (RegistryService primary = new RegistryService(RegistryStores.open(RegistryStores.KV, primaryDir), primaryDir);
+             ReadReplica replica = new ReadReplica(primaryDir, replicaDir)) {
+            assertNull(replica.findPerson("56!@abCDXY"));
+            long reloads = replica.getService().getMetrics().count("mvcc.reloads");
+            String[] ids = { "56!@abCDXY", "37##xYQZAB", "58%%cCWLAB", "39##xYQZAB" };
+            for (String id : ids) {
+                assertTrue(primary.addPerson(person(id, "Alice")));
+                assertEquals(1, replica.catchUp());
+                assertEquals("Alice", replica.findPerson(id).firstName());
+            }
+            assertEquals(reloads, replica.getService().getMetrics().count("mvcc.reloads"));
+        }
+    }
+
+    // test 6: When the replica's store refuses a batch the position stays, and the next catch up applies it
+    @Test
+    public void testFailedApplyIsRetried() throws Exception {
+        File primaryDir = new File(tempDir, "primary");
+        File replicaDir = new File(tempDir, "replica");
+        try (RegistryService primary = new RegistryService(RegistryStores.open(RegistryStores.FILE, primaryDir), primaryDir);
+             ReadReplica replica = new ReadReplica(primaryDir, replicaDir)) {
+            assertTrue(primary.addPerson(person("56!@abCDXY", "Alice")));
+            assertEquals(1, replica.catchUp());
+            long position = replica.position();
+
+            primary.addDemeritPoints(List.of(offence("56!@abCDXY", 20, 3), offence("56!@abCDXY", 10, 4)));
+            // A directory where the offences file should be makes every append to it fail
+            File demerits = new File(replicaDir, FileRegistryStore.DEMERIT_FILE_NAME);
+            Files.deleteIfExists(demerits.toPath());
+            Files.createDirectory(demerits.toPath());
+            assertThrows(IOException.class, replica::catchUp);
+            assertEquals(position, replica.position());
+
+            Files.delete(demerits.toPath());
+            assertEquals(2, replica.catchUp());
+            assertEquals(2, replica.findDemeritPoints("56!@abCDXY").size());
+            assertEquals(StateChecksum.of(primary.getStore()), StateChecksum.of(replica.getService().getStore()));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package roadregistry.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import roadregistry.Address;
+import roadregistry.PersonRecord;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test cases for dictionary encoded addresses
+ * - Tests encoding, decoding and interning of address parts
+ * - Tests that codes survive reopening the dictionaries
+ * - Tests that people.txt holds encoded addresses and old plain lines are still read
+ * - Tests the log-structured store with encoded addresses
+ * - Tests two dictionaries appending to the same files
+ * - Tests that unknown codes fail and a cut off line is completed
+ */
+public class AddressDictionaryTest {
+
+    @TempDir
+    File dataDir;
+
+    // test 1: Encoded address decodes to the same parts, which are shared between addresses
+    @Test
+    public void testEncodeDecodeAndIntern() throws IOException {
+        AddressDictionary dictionary = new AddressDictionary(new File(dataDir, AddressDictionary.DIR_NAME));
+        String encoded = dictionary.encode(Address.of("32|Highland Street|Melbourne|Victoria|Australia"));
+        assertEquals("@32|0|0|0|0", encoded);
+        assertEquals("@7|1|0|0|0", dictionary.encode(Address.of("7|Old St|Melbourne|Victoria|Australia")));
+
+        Address first = dictionary.decode(encoded);
+        Address second = Address.of(new String("12|Highland Street|Melbourne|Victoria|Australia".toCharArray()));
+        assertEquals("32|Highland Street|Melbourne|Victoria|Australia", first.text());
+        assertSame(first.getStreet(), second.getStreet());
+        assertSame(first.getState(), second.getState());
+        assertEquals(2, dictionary.sizes().get("streets"));
+    }
+
+    // test 2: Reopened dictionaries give the same codes and keep appending after them
+    @Test
+    public void testCodesSurviveReopen() throws IOException {
+        File dir = new File(dataDir, AddressDictionary.DIR_NAME);
+        AddressDictionary dictionary = new AddressDictionary(dir);
+        dictionary.encode(Address.of("1|Alpha St|Geelong|Victoria|Australia"));
+        dictionary.encode(Address.of("2|Beta Rd|Melbourne|Victoria|Australia"));
+
+        AddressDictionary reopened = new AddressDictionary(dir);
+        assertEquals("@2|1|1|0|0", reopened.encode(Address.of("2|Beta Rd|Melbourne|Victoria|Australia")));
+        assertEquals("@3|2|0|0|0", reopened.encode(Address.of("3|Gamma Ave|Geelong|Victoria|Australia")));
+        assertEquals("3|Gamma Ave|Geelong|Victoria|Australia", new AddressDictionary(dir).decode("@3|2|0|0|0").text());
+    }
+
+    // test 3: people.txt stores the encoded form, plain lines from older files are still read
+    @Test
+    public void testFileStoreEncodesAndReadsPlainLines() throws IOException {
+        FileRegistryStore store = new FileRegistryStore(dataDir, true);
+        store.insertPerson(new PersonRecord("56!@abCDXY", "Alice", "Nguyen",
+            "12|Old St|Melbourne|Victoria|Australia", "15-06-1990", false));
+        Files.write(new File(dataDir, FileRegistryStore.PERSON_FILE_NAME).toPath(),
+            List.of("57##xYQZAB###John###Smith###88|Main Rd|Melbourne|Victoria|Australia###01-01-1980###false"),
+            StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        String line = Files.readAllLines(new File(dataDir, FileRegistryStore.PERSON_FILE_NAME).toPath()).get(0);
+        assertTrue(line.contains("###@12|0|0|0|0###"));
+        assertEquals("12|Old St|Melbourne|Victoria|Australia", store.findPerson("56!@abCDXY").address());
+        assertEquals("88|Main Rd|Melbourne|Victoria|Australia", store.findPerson("57##xYQZAB").address());
+
+        // A store that writes plain text still reads the encoded line
+        assertEquals("12|Old St|Melbourne|Victoria|Australia",
+            new FileRegistryStore(dataDir, false).findPerson("56!@abCDXY").address());
+    }
+
+    // test 4: The log-structured store shares the dictionaries and gives the same addresses back
+    @Test
+    public void testLogStructuredStoreEncodesAddresses() throws IOException {
+        try (LogStructuredRegistryStore store = new LogStructuredRegistryStore(dataDir)) {
+            store.insertPerson(new PersonRecord("56!@abCDXY", "Alice", "Nguyen",
+                "12|Old St|Melbourne|Victoria|Australia", "15-06-1990", false));
+        }
+        try (LogStructuredRegistryStore store = new LogStructuredRegistryStore(dataDir)) {
+            PersonRecord found = store.findPerson("56!@abCDXY");
+            assertEquals(Address.of("12|Old St|Melbourne|Victoria|Australia"), found.location());
+        }
+        assertTrue(new File(dataDir, AddressDictionary.DIR_NAME + "/streets.txt").exists());
+    }
+
+    // test 5: Two dictionaries on the same files (as in two processes) see each other's values and never reuse a code
+    @Test
+    public void testSharedDictionaries() throws IOException {
+        File dir = new File(dataDir, AddressDictionary.DIR_NAME);
+        AddressDictionary first = new AddressDictionary(dir);
+        AddressDictionary second = new AddressDictionary(dir);
+        assertEquals("@1|0|0|0|0", first.encode(Address.of("1|Alpha St|Geelong|Victoria|Australia")));
+        assertEquals("1|Alpha St|Geelong|Victoria|Australia", second.decode("@1|0|0|0|0").text());
+        assertEquals("@2|1|0|0|0", second.encode(Address.of("2|Beta Rd|Geelong|Victoria|Australia")));
+        assertEquals("@3|0|0|0|0", second.encode(Address.of("3|Alpha St|Geelong|Victoria|Australia")));
+        assertEquals("@4|2|0|0|0", first.encode(Address.of("4|Gamma Ave|Geelong|Victoria|Australia")));
+        assertEquals("2|Beta Rd|Geelong|Victoria|Australia", first.decode("@2|1|0|0|0").text());
+    }
+
+    // test 6: An unknown code is an error, and a line left without its line break takes up a code of its own
+    @Test
+    public void testUnknownCodeAndCutOffLine() throws IOException {
+        File dir = new File(dataDir, AddressDictionary.DIR_NAME);
+        AddressDictionary dictionary = new AddressDictionary(dir);
+        dictionary.encode(Address.of("1|Alpha St|Geelong|Victoria|Australia"));
+        assertThrows(UncheckedIOException.class, () -> dictionary.decode("@1|5|0|0|0"));
+        assertThrows(UncheckedIOException.class, () -> dictionary.decode("@1|0|0"));
+
+        Files.write(new File(dir, "streets.txt").toPath(), "Half Wr".getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.APPEND);
+        assertEquals("@2|2|0|0|0", dictionary.encode(Address.of("2|Beta Rd|Geelong|Victoria|Australia")));
+        AddressDictionary reopened = new AddressDictionary(dir);
+        assertEquals("2|Beta Rd|Geelong|Victoria|Australia", reopened.decode("@2|2|0|0|0").text());
+        assertEquals(3, reopened.sizes().get("streets"));
+    }
+}
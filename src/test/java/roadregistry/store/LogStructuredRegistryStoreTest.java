@@ -0,0 +1,178 @@
+package roadregistry.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.LocalDate;
+import java.util.List;
+
+import roadregistry.PersonRecord;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test cases for the embedded log-structured backend
+ * - Tests person insert, lookup and replace (including ID change)
+ * - Tests the (personID, offenceDate) range scan
+ * - Tests that data survives reopening and compaction
+ * - Tests that a torn record at the end of the log is cut off
+ * - Tests that a second opener only reads and leaves the end of the log alone
+ * - Tests that the data version never repeats, also across compaction and reopening
+ * - Tests that an ID change torn half way leaves the person under the old ID only
+ */
+public class LogStructuredRegistryStoreTest {
+
+    @TempDir
+    File dataDir;
+
+    private PersonRecord person(String id, String firstName) {
+        return new PersonRecord(id, firstName, "Nguyen", "12|Old St|Melbourne|Victoria|Australia", "15-06-1990", false);
+    }
+
+    // test 1: Inserted person can be found again, unknown ID gives null
+    @Test
+    public void testInsertAndFindPerson() throws IOException {
+        try (LogStructuredRegistryStore store = new LogStructuredRegistryStore(dataDir)) {
+            assertTrue(store.insertPerson(person("56!@abCDXY", "Alice")));
+
+            PersonRecord found = store.findPerson("56!@abCDXY");
+            assertNotNull(found);
+            assertEquals("Alice", found.firstName());
+            assertEquals("12|Old St|Melbourne|Victoria|Australia", found.address());
+            assertNull(store.findPerson("57##xYQZAB"));
+        }
+    }
+
+    // test 2: Replacing with a new ID moves the person, replacing a missing person fails
+    @Test
+    public void testReplacePersonWithNewID() throws IOException {
+        try (LogStructuredRegistryStore store = new LogStructuredRegistryStore(dataDir)) {
+            store.insertPerson(person("35!!QQzZAB", "Mary"));
+
+            assertTrue(store.replacePerson("35!!QQzZAB", person("77@@GGHHJK", "Maria")));
+            assertNull(store.findPerson("35!!QQzZAB"));
+            assertEquals("Maria", store.findPerson("77@@GGHHJK").firstName());
+            assertFalse(store.replacePerson("35!!QQzZAB", person("79@@GGHHJK", "Nobody")));
+        }
+    }
+
+    // test 3: Range scan only returns offences of that person inside the date range, sorted by date
+    @Test
+    public void testDemeritPointRangeScan() throws IOException {
+        try (LogStructuredRegistryStore store = new LogStructuredRegistryStore(dataDir)) {
+            store.insertDemeritPoint(new DemeritPoint("56!@abCDXY", LocalDate.of(2024, 3, 1), 2));
+            store.insertDemeritPoint(new DemeritPoint("56!@abCDXY", LocalDate.of(2022, 1, 1), 4));
+            store.insertDemeritPoint(new DemeritPoint("56!@abCDXY", LocalDate.of(2024, 3, 1), 3));
+            store.insertDemeritPoint(new DemeritPoint("56!@abCDXY", LocalDate.of(1965, 5, 5), 1));
+            store.insertDemeritPoint(new DemeritPoint("57##xYQZAB", LocalDate.of(2024, 3, 1), 6));
+
+            List<DemeritPoint> range = store.findDemeritPoints("56!@abCDXY", LocalDate.of(2022, 1, 1), LocalDate.of(2024, 3, 1));
+            assertEquals(3, range.size());
+            assertEquals(LocalDate.of(2022, 1, 1), range.get(0).offenseDate());
+            assertEquals(5, range.get(1).points() + range.get(2).points());
+
+            List<DemeritPoint> all = store.findDemeritPoints("56!@abCDXY");
+            assertEquals(4, all.size());
+            assertEquals(LocalDate.of(1965, 5, 5), all.get(0).offenseDate());
+        }
+    }
+
+    // test 4: Everything is still there after reopening and after compaction
+    @Test
+    public void testReopenAndCompact() throws IOException {
+        try (LogStructuredRegistryStore store = new LogStructuredRegistryStore(dataDir)) {
+            store.insertPerson(person("35!!QQzZAB", "Mary"));
+            store.replacePerson("35!!QQzZAB", person("35!!QQzZAB", "Maria"));
+            store.insertDemeritPoint(new DemeritPoint("35!!QQzZAB", LocalDate.of(2024, 1, 1), 3));
+        }
+        try (LogStructuredRegistryStore store = new LogStructuredRegistryStore(dataDir)) {
+            store.compact();
+            store.insertDemeritPoint(new DemeritPoint("35!!QQzZAB", LocalDate.of(2024, 1, 1), 2));
+            assertEquals("Maria", store.findPerson("35!!QQzZAB").firstName());
+            assertEquals(2, store.findDemeritPoints("35!!QQzZAB").size());
+        }
+    }
+
+    // test 5: A half written record at the end of the log is dropped, earlier records survive
+    @Test
+    public void testTornRecordIsCutOff() throws IOException {
+        try (LogStructuredRegistryStore store = new LogStructuredRegistryStore(dataDir)) {
+            store.insertPerson(person("56!@abCDXY", "Alice"));
+            store.insertPerson(person("57##xYQZAB", "John"));
+        }
+        File log = new File(dataDir, LogStructuredRegistryStore.LOG_FILE_NAME);
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        try (LogStructuredRegistryStore store = new LogStructuredRegistryStore(dataDir)) {
+            assertNotNull(store.findPerson("56!@abCDXY"));
+            assertNull(store.findPerson("57##xYQZAB"));
+            assertTrue(store.insertPerson(person("57##xYQZAB", "John")));
+        }
+        try (LogStructuredRegistryStore store = new LogStructuredRegistryStore(dataDir)) {
+            assertNotNull(store.findPerson("57##xYQZAB"));
+        }
+    }
+
+    // test 6: While the log is open for writing, another opener only reads and does not cut a record being written
+    @Test
+    public void testSecondOpenerIsReadOnly() throws IOException {
+        File log = new File(dataDir, LogStructuredRegistryStore.LOG_FILE_NAME);
+        try (LogStructuredRegistryStore writer = new LogStructuredRegistryStore(dataDir)) {
+            writer.insertPerson(person("56!@abCDXY", "Alice"));
+            try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+                file.setLength(file.length() + 5); // looks like a record still being written
+            }
+            long length = log.length();
+            try (LogStructuredRegistryStore reader = new LogStructuredRegistryStore(dataDir)) {
+                assertEquals("Alice", reader.findPerson("56!@abCDXY").firstName());
+                assertFalse(reader.insertPerson(person("57##xYQZAB", "John")));
+            }
+            assertEquals(length, log.length());
+        }
+    }
+
+    // test 7: Compaction shrinks the log but the data version keeps going up
+    @Test
+    public void testDataVersionNeverRepeats() throws IOException {
+        long before;
+        long compacted;
+        try (LogStructuredRegistryStore store = new LogStructuredRegistryStore(dataDir)) {
+            store.insertPerson(person("56!@abCDXY", "Alice"));
+            for (int i = 0; i < 50; i++) {
+                store.replacePerson("56!@abCDXY", person("56!@abCDXY", "Alice" + i));
+            }
+            before = store.dataVersion();
+            store.compact();
+            compacted = store.dataVersion();
+            assertTrue(compacted > before);
+            store.insertPerson(person("57##xYQZAB", "John"));
+            assertTrue(store.dataVersion() > compacted);
+            compacted = store.dataVersion();
+        }
+        try (LogStructuredRegistryStore store = new LogStructuredRegistryStore(dataDir)) {
+            assertEquals(compacted, store.dataVersion());
+            assertEquals("Alice49", store.findPerson("56!@abCDXY").firstName());
+        }
+    }
+
+    // test 8: A crash half way through an ID change keeps the person under the old ID, not under both
+    @Test
+    public void testTornIDChangeKeepsOldID() throws IOException {
+        File log = new File(dataDir, LogStructuredRegistryStore.LOG_FILE_NAME);
+        try (LogStructuredRegistryStore store = new LogStructuredRegistryStore(dataDir)) {
+            store.insertPerson(person("35!!QQzZAB", "Mary"));
+            assertTrue(store.replacePerson("35!!QQzZAB", person("77@@GGHHJK", "Maria")));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.setLength(file.length() - 3); // the delete of the old ID is torn
+        }
+        try (LogStructuredRegistryStore store = new LogStructuredRegistryStore(dataDir)) {
+            assertEquals("Mary", store.findPerson("35!!QQzZAB").firstName());
+            assertNull(store.findPerson("77@@GGHHJK"));
+        }
+    }
+}
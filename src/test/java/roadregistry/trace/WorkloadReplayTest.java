@@ -0,0 +1,132 @@
+package roadregistry.trace;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import roadregistry.Person;
+import roadregistry.RegistryService;
+import roadregistry.store.FileRegistryStore;
+import roadregistry.store.LogStructuredRegistryStore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test cases for recording and replaying workloads
+ * - Tests that calls made through Person are recorded with their arguments and results
+ * - Tests that replays give the recorded results and the same final state, sequential and concurrent
+ * - Tests that a trace cut off in the middle of a record can still be read
+ */
+public class WorkloadReplayTest {
+
+    @TempDir
+    File tempDir;
+
+    // New IDs on every run, so the recorded results do not depend on what the shared data directory holds
+    private final String suffix = randomLetters(new Random(System.nanoTime()));
+    private final String firstID = "35$$" + suffix + "QA";
+    private final String secondID = "37%%" + suffix + "QB";
+    private final String renamedID = "39&&" + suffix + "QC";
+
+    @AfterEach
+    public void tearDown() {
+        WorkloadRecorder.stop();
+    }
+
+    // test 1: Every Person call is recorded, in order, with what it returned
+    @Test
+    public void testRecordsPersonCalls() throws Exception {
+        Path trace = record();
+        List<WorkloadTrace.Event> events = WorkloadTrace.read(trace).events();
+
+        assertEquals(7, events.size());
+        assertEquals(WorkloadTrace.Op.ADD_PERSON, events.get(0).op());
+        assertEquals("Alpha St", events.get(0).person().location().getStreet());
+        assertEquals("01-01-2024", events.get(1).offenseDate());
+        assertEquals(3, events.get(1).points());
+        assertFalse(events.get(2).succeeded()); // bad date
+        assertEquals(secondID, events.get(4).personID());
+        assertEquals(renamedID, events.get(4).person().personID());
+        assertFalse(events.get(6).succeeded()); // duplicate
+        boolean[] results = new boolean[events.size()];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = events.get(i).succeeded();
+            assertTrue(events.get(i).durationNanos() > 0);
+            assertTrue(i == 0 || events.get(i).atNanos() >= events.get(i - 1).atNanos());
+        }
+        assertArrayEquals(new boolean[] { true, true, false, true, true, true, false }, results);
+    }
+
+    // test 2: Sequential and concurrent replays on different stores match the recording and each other
+    @Test
+    public void testReplayReproducesState() throws Exception {
+        WorkloadTrace trace = WorkloadTrace.read(record());
+        File first = new File(tempDir, "first");
+        File second = new File(tempDir, "second");
+
+        WorkloadReplay.Result sequential;
+        try (RegistryService service = new RegistryService(new FileRegistryStore(first), first)) {
+            sequential = WorkloadReplay.replay(trace, service, 0, 1);
+        }
+        WorkloadReplay.Result concurrent;
+        try (RegistryService service = new RegistryService(new LogStructuredRegistryStore(second), second)) {
+            concurrent = WorkloadReplay.replay(trace, service, 1000, 4);
+        }
+
+        assertEquals(0, sequential.mismatches());
+        assertEquals(0, concurrent.mismatches());
+        assertEquals(2, sequential.checksum().people());
+        assertEquals(2, sequential.checksum().demeritPoints());
+        assertEquals(sequential.checksum(), concurrent.checksum());
+        assertEquals(7, sequential.operations());
+        assertTrue(Arrays.stream(sequential.latencies()).allMatch(nanos -> nanos > 0));
+    }
+
+    // test 3: A recording that stopped half way through a record keeps the complete records
+    @Test
+    public void testTruncatedTrace() throws Exception {
+        Path trace = record();
+        byte[] bytes = Files.readAllBytes(trace);
+        Path cut = tempDir.toPath().resolve("cut.trace");
+        Files.write(cut, Arrays.copyOf(bytes, bytes.length - 3));
+
+        assertEquals(6, WorkloadTrace.read(cut).events().size());
+        Files.write(cut, new byte[] { 1, 2, 3, 4, 5 });
+        assertThrows(java.io.IOException.class, () -> WorkloadTrace.read(cut));
+    }
+
+    private Path record() {
+        Path trace = tempDir.toPath().resolve("workload.trace");
+        assertNotNull(WorkloadRecorder.start(trace));
+
+        Person first = new Person(firstID, "Tom", "Lee", "99|Alpha St|Melbourne|Victoria|Australia", "01-01-1990");
+        assertTrue(first.addPerson());
+        assertEquals("Success", first.addDemeritPoints("01-01-2024", 3));
+        assertEquals("Failed", first.addDemeritPoints("2024-01-01", 3));
+
+        Person second = new Person(secondID, "John", "Smith", "88|Main Rd|Melbourne|Victoria|Australia", "02-02-1996");
+        assertTrue(second.addPerson());
+        second.setPersonID(renamedID);
+        assertTrue(second.updatePersonalDetails(secondID));
+        assertEquals("Success", second.addDemeritPoints("05-03-2024", 2));
+        assertFalse(first.addPerson());
+
+        WorkloadRecorder.stop();
+        return trace;
+    }
+
+    private static String randomLetters(Random random) {
+        StringBuilder letters = new StringBuilder();
+        for (int i = 0; i < 4; i++) {
+            letters.append((char) ('a' + random.nextInt(26)));
+        }
+        return letters.toString();
+    }
+}
@@ -0,0 +1,98 @@
+package roadregistry.validation;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import roadregistry.PersonValidator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test cases for the bulk personID validator
+ * - Tests that the bulk and scalar paths agree with isValidPersonID on random and near-valid IDs
+ * - Tests IDs with Latin-1 and wider characters, nulls and wrong lengths
+ * - Tests offsets, batch sizes that are not a whole number of vector blocks, and bounds
+ */
+public class BulkPersonIdValidatorTest {
+
+    private static final String ASCII = "0123456789ABCXYZabcxyz!@#$%&_*|[`{ ";
+    private static final String LATIN1 = ASCII + "\u00C0\u00C9\u00DF\u00E9\u00B5\u00D7\u00F7\u00AA";
+
+    // test 1: Random IDs built from the characters that matter give the same answer as isValidPersonID
+    @Test
+    public void testMatchesPersonValidator() {
+        Random random = new Random(160);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            String alphabet = i < 15_000 ? ASCII : LATIN1;
+            ids.add(i % 3 == 0 ? nearValid(random, alphabet) : randomID(random, alphabet));
+        }
+        byte[] packed = String.join("", ids).getBytes(StandardCharsets.ISO_8859_1);
+
+        long[] bulk = BulkPersonIdValidator.validate(packed, 0, ids.size());
+        long[] scalar = BulkPersonIdValidator.validateScalar(packed, 0, ids.size());
+        int valid = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            boolean expected = PersonValidator.isValidPersonID(ids.get(i));
+            assertEquals(expected, BulkPersonIdValidator.isValid(bulk, i), ids.get(i));
+            assertEquals(expected, BulkPersonIdValidator.isValid(scalar, i), ids.get(i));
+            valid += expected ? 1 : 0;
+        }
+        assertTrue(valid > 1000, "too few valid IDs to be a test: " + valid);
+        assertNotNull(BulkPersonIdValidator.implementation());
+    }
+
+    // test 2: Lists with nulls, wrong lengths and characters past Latin-1
+    @Test
+    public void testStringList() {
+        List<String> ids = Arrays.asList("56!@abCDXY", null, "56!@abCDX", "56!@abCDXYZ", "56!@abCD\u0416\u0416",
+            "56!@abCDxy", "56\u0416@abCDXY", "56\u0416\u0416abCDXY", "56!@abCD\u00C0\u00C9", "16!@abCDXY");
+        long[] bitmap = BulkPersonIdValidator.validate(ids);
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(PersonValidator.isValidPersonID(ids.get(i)), BulkPersonIdValidator.isValid(bitmap, i), String.valueOf(ids.get(i)));
+        }
+        assertTrue(BulkPersonIdValidator.isValid(bitmap, 4));  // Cyrillic capitals are upper case letters
+        assertFalse(BulkPersonIdValidator.isValid(bitmap, 7)); // and not special characters
+    }
+
+    // test 3: Every batch size up to a few blocks, from an offset, and out of range batches
+    @Test
+    public void testOffsetsAndTails() {
+        Random random = new Random(21);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 1100; i++) {
+            ids.add(nearValid(random, ASCII));
+        }
+        byte[] packed = ("xyz" + String.join("", ids)).getBytes(StandardCharsets.ISO_8859_1);
+        for (int count = 0; count <= ids.size(); count += count < 130 ? 1 : 97) {
+            long[] bitmap = BulkPersonIdValidator.validate(packed, 3, count);
+            assertEquals((count + 63) / 64, bitmap.length);
+            for (int i = 0; i < count; i++) {
+                assertEquals(PersonValidator.isValidPersonID(ids.get(i)), BulkPersonIdValidator.isValid(bitmap, i));
+            }
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> BulkPersonIdValidator.validate(packed, 4, 1100));
+    }
+
+    private static String randomID(Random random, String alphabet) {
+        StringBuilder id = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            id.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return id.toString();
+    }
+
+    // Valid ID with one or two random changes
+    private static String nearValid(Random random, String alphabet) {
+        char[] id = "56!@abCDXY".toCharArray();
+        for (int i = random.nextInt(3); i > 0; i--) {
+            id[random.nextInt(10)] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return new String(id);
+    }
+}